@@ -0,0 +1,42 @@
+package com.invoiceapp;
+
+import com.invoiceapp.entity.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+//in-memory invoices for the JMH benchmarks, with their items loaded
+final class BenchmarkInvoices {
+
+    private BenchmarkInvoices() {}
+
+    static Invoice invoice(int items, boolean paid, Currency currency) {
+        User user = new User(1L, "user@bench.local", "pass", Role.USER, true);
+        Client client = new Client(1L, "Bench Client", "client@bench.local", "123", user);
+        Invoice inv = new Invoice();
+        inv.setId(1L);
+        inv.setUser(user);
+        inv.setClient(client);
+        inv.setInvoiceNumber("INV-0001");
+        inv.setStatus(paid ? InvoiceStatus.PAID : InvoiceStatus.SENT);
+        inv.setIssueDate(LocalDate.of(2025, 1, 1));
+        inv.setDueDate(LocalDate.of(2025, 1, 31));
+        inv.setPaymentDate(paid ? LocalDate.of(2025, 1, 20) : null);
+        inv.setTransactionId(paid ? "TX-0001" : null);
+        inv.setCurrency(currency);
+        inv.setFromName("Bench Ltd");
+        inv.setBankName("Bench Bank");
+        inv.setIban("GE00BB0000000000000000");
+        inv.setToName("Bench Client");
+        for (int i = 0; i < items; i++) {
+            InvoiceItem item = new InvoiceItem();
+            item.setId((long) i + 1);
+            item.setInvoice(inv);
+            item.setDescription("Usage line " + i);
+            item.setQuantity(i % 10 + 1);
+            item.setUnitPrice(BigDecimal.valueOf(1250 + i, 2));
+            inv.getItems().add(item);
+        }
+        return inv;
+    }
+}
@@ -0,0 +1,148 @@
+package com.invoiceapp;
+
+import com.invoiceapp.dto.invoice.BulkSendResult;
+import com.invoiceapp.entity.*;
+import com.invoiceapp.event.InvoiceSendQueuedEvent;
+import com.invoiceapp.repository.*;
+import com.invoiceapp.security.UserProvider;
+import com.invoiceapp.service.*;
+import com.invoiceapp.util.InvoiceMapper;
+import com.invoiceapp.util.InvoiceNumberGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * End-to-end time of a bulk send of 1,000 drafts: sendAll, then the real PDF rendering on the
+ * invoice send pool (into an empty PDF cache) and the emails queued in batches, by pool size
+ * (0 = one thread per core, as configured by default). The database and the outbox are in-memory
+ * stand-ins, so this measures the application side only.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BulkSendBenchmark {
+
+    private static final int INVOICES = 1_000;
+    private static final int ITEMS_PER_INVOICE = 10;
+
+    @Param({"1", "0"})
+    int threads;
+
+    private Map<Long, Invoice> db;
+    private AtomicInteger queuedEmails;
+    private ThreadPoolTaskExecutor executor;
+    private InvoiceService service;
+
+    //fresh drafts, an empty PDF cache and a new pool for every shot
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        User user = new User(1L, "user@bench.local", "pass", Role.USER, true);
+        Client client = new Client(1L, "Bench Client", "client@bench.local", "123", user);
+        db = new ConcurrentHashMap<>();
+        for (long id = 1; id <= INVOICES; id++) {
+            Invoice inv = new Invoice();
+            inv.setId(id);
+            inv.setUser(user);
+            inv.setClient(client);
+            inv.setCurrency(Currency.USD);
+            inv.setDueDate(LocalDate.now().plusDays(30));
+            for (int i = 0; i < ITEMS_PER_INVOICE; i++) {
+                InvoiceItem item = new InvoiceItem();
+                item.setInvoice(inv);
+                item.setDescription("Consulting, line " + i);
+                item.setQuantity(i + 1);
+                item.setUnitPrice(BigDecimal.valueOf(125));
+                inv.getItems().add(item);
+            }
+            db.put(id, inv);
+        }
+
+        InvoiceRepository invoiceRepo = mock(InvoiceRepository.class);
+        when(invoiceRepo.findAllById(anyIterable())).thenAnswer(a -> byIds(a.getArgument(0)));
+        when(invoiceRepo.findWithItemsByIdIn(anyCollection())).thenAnswer(a -> byIds(a.getArgument(0)));
+        when(invoiceRepo.claimSend(anyLong(), any(), any())).thenReturn(1);
+        when(invoiceRepo.findMaxInvoiceNumberForUser(any())).thenReturn(Optional.empty());
+        queuedEmails = new AtomicInteger();
+        EmailService emailService = mock(EmailService.class);
+        doAnswer(a -> queuedEmails.incrementAndGet()).when(emailService).sendInvoice(any(), any(), any(), any(), any());
+        TransactionTemplate tx = mock(TransactionTemplate.class);
+        when(tx.execute(any())).thenAnswer(a -> a.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        doAnswer(a -> {
+            a.<Consumer<Object>>getArgument(0).accept(null);
+            return null;
+        }).when(tx).executeWithoutResult(any());
+
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(INVOICES);
+        executor.initialize();
+
+        InvoiceSendWorker[] worker = new InvoiceSendWorker[1];
+        ApplicationEventPublisher events = event -> {
+            if (event instanceof InvoiceSendQueuedEvent queued) {
+                worker[0].onSendQueued(queued);
+            }
+        };
+        InvoicePdfCache pdfCache = new InvoicePdfCache(new InvoicePdfService(mock(InvoiceItemRepository.class), 1000, 500),
+                Files.createTempDirectory("pdf-cache"), DataSize.ofMegabytes(256), new SimpleMeterRegistry());
+        worker[0] = new InvoiceSendWorker(invoiceRepo, pdfCache, emailService,
+                mock(InvoiceRollupService.class), mock(MetricSnapshotBuffer.class), mock(DunningSchedule.class),
+                events, tx, executor, Duration.ofMinutes(5), 100, 20, new SimpleMeterRegistry());
+        service = new InvoiceService(invoiceRepo, mock(ClientRepository.class),
+                mock(MetricSnapshotBuffer.class),
+                new InvoiceNumberGenerator(invoiceRepo), mock(UserProvider.class), mock(InvoiceMapper.class),
+                mock(UserRepository.class), mock(InvoiceRollupService.class), mock(DunningSchedule.class), events);
+    }
+
+    //timed until the last email is queued, not just until sendAll returns
+    @Benchmark
+    public BulkSendResult sendAll() throws InterruptedException {
+        BulkSendResult result = service.sendAll(new ArrayList<>(db.keySet()));
+        executor.getThreadPoolExecutor().shutdown();
+        if (!executor.getThreadPoolExecutor().awaitTermination(5, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("Bulk send did not finish within 5 minutes");
+        }
+        return result;
+    }
+
+    //a run that lost invoices on the way measured the wrong thing
+    @TearDown(Level.Iteration)
+    public void check() {
+        if (queuedEmails.get() != INVOICES || db.values().stream().anyMatch(inv -> inv.getStatus() != InvoiceStatus.SENT)) {
+            throw new IllegalStateException("Bulk send queued " + queuedEmails.get() + " of " + INVOICES + " emails");
+        }
+    }
+
+    private List<Invoice> byIds(Iterable<Long> ids) {
+        List<Invoice> found = new ArrayList<>();
+        ids.forEach(id -> found.add(db.get(id)));
+        return found;
+    }
+}
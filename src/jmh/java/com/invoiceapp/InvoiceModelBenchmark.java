@@ -0,0 +1,88 @@
+package com.invoiceapp;
+
+import com.invoiceapp.dto.invoice.InvoiceItemRequest;
+import com.invoiceapp.dto.invoice.InvoiceRequest;
+import com.invoiceapp.dto.invoice.InvoiceResponse;
+import com.invoiceapp.entity.Currency;
+import com.invoiceapp.entity.Invoice;
+import com.invoiceapp.entity.InvoiceStatus;
+import com.invoiceapp.repository.*;
+import com.invoiceapp.security.UserProvider;
+import com.invoiceapp.service.DunningSchedule;
+import com.invoiceapp.service.InvoiceRollupService;
+import com.invoiceapp.service.InvoiceService;
+import com.invoiceapp.service.MetricSnapshotBuffer;
+import com.invoiceapp.util.InvoiceMapper;
+import com.invoiceapp.util.InvoiceNumberGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * The in-memory invoice paths around every page view and edit: mapping to the DTO, summing the
+ * total, and InvoiceService.update reconciling the submitted items with the stored ones. The
+ * repositories are stub-only mocks (no invocation history), so update measures the service alone.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InvoiceModelBenchmark {
+
+    @Param({"1", "100", "10000"})
+    int items;
+
+    private Invoice invoice;
+    private InvoiceService invoiceService;
+    private InvoiceRequest unchangedForm;
+
+    @Setup
+    public void setUp() {
+        invoice = BenchmarkInvoices.invoice(items, false, Currency.USD);
+        invoice.setStatus(InvoiceStatus.DRAFT);
+
+        InvoiceRepository invoiceRepo = mock(InvoiceRepository.class, withSettings().stubOnly());
+        when(invoiceRepo.findById(invoice.getId())).thenReturn(Optional.of(invoice));
+        ClientRepository clientRepo = mock(ClientRepository.class, withSettings().stubOnly());
+        when(clientRepo.findById(invoice.getClient().getId())).thenReturn(Optional.of(invoice.getClient()));
+        UserProvider userProvider = mock(UserProvider.class, withSettings().stubOnly());
+        when(userProvider.getCurrentUser()).thenReturn(invoice.getUser());
+        invoiceService = new InvoiceService(invoiceRepo, clientRepo,
+                mock(MetricSnapshotBuffer.class, withSettings().stubOnly()),
+                new InvoiceNumberGenerator(invoiceRepo), userProvider,
+                mock(InvoiceMapper.class, withSettings().stubOnly()),
+                mock(UserRepository.class, withSettings().stubOnly()),
+                mock(InvoiceRollupService.class, withSettings().stubOnly()),
+                mock(DunningSchedule.class, withSettings().stubOnly()),
+                event -> {});
+
+        //the usual edit: every line comes back as it was, so each call does the same work
+        unchangedForm = new InvoiceRequest(invoice.getClient().getId(),
+                invoice.getItems().stream()
+                        .map(it -> new InvoiceItemRequest(it.getDescription(), it.getQuantity(), it.getUnitPrice()))
+                        .toList(),
+                invoice.getDueDate(), invoice.getCurrency(), invoice.getToName(),
+                invoice.getFromName(), invoice.getBankName(), invoice.getIban());
+    }
+
+    @Benchmark
+    public InvoiceResponse toDto() {
+        return InvoiceMapper.toDto(invoice);
+    }
+
+    @Benchmark
+    public BigDecimal getTotal() {
+        return invoice.getTotal();
+    }
+
+    @Benchmark
+    public InvoiceResponse update() {
+        return invoiceService.update(invoice.getId(), unchangedForm);
+    }
+}
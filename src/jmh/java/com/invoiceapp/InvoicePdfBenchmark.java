@@ -0,0 +1,51 @@
+package com.invoiceapp;
+
+import com.invoiceapp.entity.Currency;
+import com.invoiceapp.entity.Invoice;
+import com.invoiceapp.service.InvoicePdfService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of rendering one invoice and one receipt PDF, by item count, with and without the PAID
+ * watermark, and by currency. Each render allocates its own document, so the time and the
+ * allocation rate (-prof gc) are both per document.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InvoicePdfBenchmark {
+
+    @Param({"1", "100", "10000"})
+    int items;
+
+    @Param({"false", "true"})
+    boolean paid;
+
+    @Param({"USD", "GEL"})
+    Currency currency;
+
+    private InvoicePdfService pdfService;
+    private Invoice invoice;
+
+    @Setup
+    public void setUp() {
+        //the items are loaded, so the item repository is never asked
+        pdfService = new InvoicePdfService(null, Integer.MAX_VALUE, 500);
+        invoice = BenchmarkInvoices.invoice(items, paid, currency);
+    }
+
+    @Benchmark
+    public byte[] generate() {
+        return pdfService.generate(invoice);
+    }
+
+    @Benchmark
+    public byte[] generateReceipt() {
+        return pdfService.generateReceipt(invoice);
+    }
+}
@@ -0,0 +1,90 @@
+package com.invoiceapp.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Slf4j
+@Configuration
+//executors for request-scoped fan-out work
+public class AsyncConfig {
+
+    //bounded pool for the dashboard's independent queries; a full queue runs the task on the request
+    //thread instead of failing, so overload degrades to the old sequential behaviour
+    @Bean(name = "dashboardExecutor")
+    public ThreadPoolTaskExecutor dashboardExecutor(
+            @Value("${invoiceapp.dashboard.executor.threads:8}") int threads,
+            @Value("${invoiceapp.dashboard.executor.queue:100}") int queue) {
+        log.info("Creating dashboard executor with {} threads and a queue of {}", threads, queue);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queue);
+        executor.setThreadNamePrefix("dashboard-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        return executor;
+    }
+
+    //writers for the live dashboard streams (SSE pushes and heartbeats), apart from the page loads of the
+    //dashboard executor. A full queue rejects the task (AbortPolicy) and the stream service skips that
+    //write, so a slow client never pushes work back onto the scheduler or a committing thread
+    @Bean(name = "dashboardStreamExecutor")
+    public ThreadPoolTaskExecutor dashboardStreamExecutor(
+            @Value("${invoiceapp.dashboard.stream.threads:4}") int threads,
+            @Value("${invoiceapp.dashboard.stream.queue:1000}") int queue) {
+        log.info("Creating dashboard stream executor with {} threads and a queue of {}", threads, queue);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queue);
+        executor.setThreadNamePrefix("dashboard-stream-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        return executor;
+    }
+
+    //workers that drain the email outbox. A full queue rejects the task (AbortPolicy) so the dispatcher
+    //knows to leave the email PENDING for its poll; nothing ever runs SMTP on the committing thread
+    @Bean(name = "mailExecutor")
+    public ThreadPoolTaskExecutor mailExecutor(
+            @Value("${invoiceapp.mail.outbox.threads:4}") int threads,
+            @Value("${invoiceapp.mail.outbox.queue:500}") int queue) {
+        log.info("Creating mail executor with {} threads and a queue of {}", threads, queue);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queue);
+        executor.setThreadNamePrefix("mail-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    //workers that render and queue invoice sends; caps concurrent sends at the pool size whatever
+    //the number of request threads. Rendering is CPU-bound, so 0 threads means one per core. When the
+    //queue is full the invoices stay SENDING and the send worker's poll picks them up
+    @Bean(name = "invoiceSendExecutor")
+    public ThreadPoolTaskExecutor invoiceSendExecutor(
+            @Value("${invoiceapp.invoice.send.threads:0}") int configuredThreads,
+            @Value("${invoiceapp.invoice.send.queue:200}") int queue) {
+        int threads = configuredThreads > 0 ? configuredThreads : Runtime.getRuntime().availableProcessors();
+        log.info("Creating invoice send executor with {} threads and a queue of {}", threads, queue);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queue);
+        executor.setThreadNamePrefix("invoice-send-");
+        executor.setRejectedExecutionHandler((task, pool) ->
+                log.warn("Invoice send queue full, leaving the invoice to the next send poll"));
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+}
@@ -1,21 +1,34 @@
 package com.invoiceapp.config;
 
-import com.invoiceapp.entity.Invoice;
-import com.invoiceapp.entity.InvoiceMetric;
+import com.invoiceapp.dto.invoice.OverdueInvoiceRow;
+import com.invoiceapp.dto.misc.RollupDelta;
 import com.invoiceapp.entity.InvoiceStatus;
-import com.invoiceapp.entity.User;
+import com.invoiceapp.entity.JobCheckpoint;
+import com.invoiceapp.event.InvoiceChangedEvent;
 import com.invoiceapp.repository.InvoiceMetricRepository;
 import com.invoiceapp.repository.InvoiceRepository;
+import com.invoiceapp.repository.JobCheckpointRepository;
 import com.invoiceapp.service.EmailService;
+import com.invoiceapp.service.InvoiceRollupService;
+import com.invoiceapp.service.JobLockService;
+import com.invoiceapp.service.NotificationDigest;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.domain.Limit;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDate;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Configuration
@@ -23,70 +36,156 @@ import java.util.List;
 @RequiredArgsConstructor
 public class SchedulerConfig {
 
+    static final String OVERDUE_JOB = "overdue-sweep";
+    static final String ISSUER_DIGEST_TOPIC = "Client overdue invoices";
 
     private final InvoiceRepository invoiceRepository;
     private final InvoiceMetricRepository metricRepository;
     private final EmailService emailService;
+    private final InvoiceRollupService rollupService;
+    private final ApplicationEventPublisher events;
+    private final JobCheckpointRepository checkpointRepository;
+    private final TransactionTemplate tx;
+    private final MeterRegistry meterRegistry;
+    private final JobLockService jobLocks;
+    private final NotificationDigest digest;
+
+    @Value("${invoiceapp.overdue.chunk-size:200}")
+    private int chunkSize = 200;
+
+    // set when a sweep ended early on a backed-up outbox; the resume poll picks it up from the checkpoint
+    private volatile boolean resumePending;
+
+    private record Chunk(int size, long lastId) {}
 
     // cron for overdue invoices.
+    // Walks SENT invoices past due in id order, one short transaction per chunk; the checkpoint
+    // commits with each chunk, so a crashed run resumes after the last committed id.
+    // Each chunk is moved with set-based statements over its id range; only the digest lines are read per invoice.
+    // Reminders are written to the email outbox in the chunk's transaction and delivered after it commits.
+    // Every instance fires the cron; only the one holding the job lock sweeps.
+    // A backed-up outbox ends the run instead of holding the scheduler thread; it resumes from the checkpoint.
     @Scheduled(cron = "${invoiceapp.overdue.cron}")
-    @Transactional
     public void processOverdueInvoices() {
-        LocalDate today = LocalDate.now();
-        List<Invoice> toProcess = invoiceRepository.findSentAndDueOnOrBefore(InvoiceStatus.SENT, today);
+        jobLocks.runExclusively(OVERDUE_JOB, this::sweepOverdue);
+    }
 
-        if (toProcess.isEmpty()) {
-            log.info("Overdue sweep: none to process at {}", today);
+    // picks up a sweep that stopped for the email outbox, once the mail workers have caught up
+    @Scheduled(fixedDelayString = "${invoiceapp.overdue.resume-ms:60000}")
+    public void resumeOverdueSweep() {
+        if (!resumePending || emailService.isBackedUp()) {
             return;
         }
+        log.info("Overdue sweep: email outbox caught up, resuming from the checkpoint");
+        processOverdueInvoices();
+    }
+
+    private void sweepOverdue(JobLockService.Lease lease) {
+        resumePending = false;
+        LocalDate today = LocalDate.now();
+        JobCheckpoint start = checkpointRepository.findById(OVERDUE_JOB)
+                .filter(cp -> today.equals(cp.getRunDate()))
+                .orElse(null);
+        long afterId = start != null ? start.getLastId() : 0L;
+        if (afterId > 0) {
+            log.info("Overdue sweep: resuming today's run after invoice id {}", afterId);
+        }
 
-        log.info("Overdue sweep: {} invoice(s) become OVERDUE", toProcess.size());
-        for (Invoice inv : toProcess) {
-            // 1) mark overdue + snapshot
-            inv.setStatus(InvoiceStatus.OVERDUE);
-            metricRepository.save(new InvoiceMetric(today, InvoiceStatus.OVERDUE, inv.getTotal()));
+        Timer chunkTimer = Timer.builder("overdue.sweep.chunk")
+                .description("time to transition and notify one chunk of overdue invoices")
+                .register(meterRegistry);
+        int chunks = 0;
+        long processed = 0;
+        while (true) {
+            // a lost lease means another node may take over from the checkpoint: stop between chunks
+            if (!lease.isHeld()) {
+                log.warn("Overdue sweep: lost the job lock after {} chunk(s), stopping", chunks);
+                break;
+            }
+            // the outbox is full: stop here and let the mail workers catch up before the next chunk
+            if (emailService.isBackedUp()) {
+                log.info("Overdue sweep: email outbox backed up after {} chunk(s), resuming later", chunks);
+                resumePending = true;
+                break;
+            }
+            long began = System.nanoTime();
+            long cursor = afterId;
+            Chunk chunk = tx.execute(status -> processChunk(today, cursor));
+            if (chunk == null || chunk.size() == 0) {
+                break;
+            }
+            long took = System.nanoTime() - began;
+            chunkTimer.record(took, TimeUnit.NANOSECONDS);
 
-            // 2) email the client
-            sendReminderToClient(inv);
+            chunks++;
+            processed += chunk.size();
+            afterId = chunk.lastId();
+            log.info("Overdue sweep: chunk {} with {} invoice(s) up to id {} in {} ms",
+                    chunks, chunk.size(), afterId, TimeUnit.NANOSECONDS.toMillis(took));
+            if (chunk.size() < chunkSize) {
+                break;
+            }
+        }
+
+        // issuers get their digest when the sweep ends rather than after the digest window
+        digest.flushTopic(ISSUER_DIGEST_TOPIC);
 
-            // 3) email the issuer
-            sendReminderToIssuer(inv);
+        if (processed == 0) {
+            log.info("Overdue sweep: none to process at {}", today);
+        } else {
+            log.info("Overdue sweep: {} invoice(s) became OVERDUE in {} chunk(s)", processed, chunks);
         }
     }
 
+    //one chunk: mark overdue + rollup + snapshot + issuer digest lines, and advance the checkpoint in the same
+    //transaction; client reminders come from the dunning schedule (DunningService)
+    private Chunk processChunk(LocalDate today, long afterId) {
+        List<OverdueInvoiceRow> rows = invoiceRepository.findDueBeforeAfterId(
+                InvoiceStatus.SENT, today, afterId, Limit.of(chunkSize));
+        if (rows.isEmpty()) {
+            return new Chunk(0, afterId);
+        }
+        long lastId = rows.get(rows.size() - 1).id();
 
-    //Send overdye reminder to client
-    private void sendReminderToClient(Invoice invoice) {
-        String subject = "Overdue Invoice " + invoice.getInvoiceNumber();
-        String body = String.format(
-                "Dear %s,<br><br>Your invoice <strong>%s</strong> due %s for <strong>%s</strong> is now overdue."
-                        + " Please pay as soon as possible.<br><br>Thank you.",
-                invoice.getClient().getName(),
-                invoice.getInvoiceNumber(),
-                invoice.getDueDate(),
-                invoice.getTotal()
-        );
-        emailService.sendHtml(invoice.getClient().getEmail(), subject, body);
-        log.info("Sent overdue reminder email to client {} for invoice {}", invoice.getClient().getEmail(), invoice.getInvoiceNumber());
+        // 1) mark overdue + rollup + snapshot, set-based over the chunk's id range. The insert-select runs
+        //    first, so on MySQL it also share-locks the rows that are about to flip until the chunk commits
+        metricRepository.snapshotDueBefore(InvoiceStatus.SENT, InvoiceStatus.OVERDUE, today, afterId, lastId);
+        List<RollupDelta> deltas = invoiceRepository.rollupDeltasDueBefore(InvoiceStatus.SENT, today, afterId, lastId);
+        int moved = invoiceRepository.transitionDueBefore(InvoiceStatus.SENT, InvoiceStatus.OVERDUE, today, afterId, lastId);
 
+        // move the same groups from SENT to OVERDUE in the rollup, and tell each affected user once
+        Set<Long> users = new HashSet<>();
+        for (RollupDelta d : deltas) {
+            rollupService.remove(d);
+            rollupService.add(new RollupDelta(d.userId(), d.day(), InvoiceStatus.OVERDUE, d.currency(), d.count(), d.amount()));
+            users.add(d.userId());
+        }
+        users.forEach(id -> events.publishEvent(new InvoiceChangedEvent(id, null, InvoiceStatus.OVERDUE)));
+
+        // 2) tell the issuer, one digest per issuer for the whole sweep
+        rows.forEach(this::notifyIssuer);
+
+        JobCheckpoint checkpoint = checkpointRepository.findById(OVERDUE_JOB)
+                .filter(cp -> today.equals(cp.getRunDate()))
+                .orElseGet(() -> new JobCheckpoint(OVERDUE_JOB, today));
+        checkpoint.advance(lastId, rows.size());
+        checkpointRepository.save(checkpoint);
+        log.debug("Overdue sweep: {} of {} invoice(s) up to id {} moved to OVERDUE", moved, rows.size(), lastId);
+        return new Chunk(rows.size(), lastId);
     }
 
-    //Send overdye reminder to the user
-    private void sendReminderToIssuer(Invoice invoice) {
-        User user = invoice.getUser();
-        String who = user.getEmail();
-        String subject = "Client Overdue Invoice " + invoice.getInvoiceNumber();
-        String body = String.format(
-                "Hello %s,<br><br>Your client <strong>%s</strong> has an overdue invoice <strong>%s</strong> "
-                        + "due on %s for <strong>%s</strong>.<br><br>Regards,",
-                who,
-                invoice.getClient().getName(),
-                invoice.getInvoiceNumber(),
-                invoice.getDueDate(),
-                invoice.getTotal()
-        );
-        emailService.sendHtml(user.getEmail(), subject, body);
-        log.info("Sent overdue reminder email to issuer {} for invoice {}", user.getEmail(), invoice.getInvoiceNumber());
 
+    //Overdue line for the issuer's digest
+    private void notifyIssuer(OverdueInvoiceRow invoice) {
+        String line = String.format(
+                "Your client <strong>%s</strong> has an overdue invoice <strong>%s</strong> "
+                        + "due on %s for <strong>%s</strong>.",
+                invoice.clientName(),
+                invoice.invoiceNumber(),
+                invoice.dueDate(),
+                invoice.total()
+        );
+        digest.add(invoice.userEmail(), ISSUER_DIGEST_TOPIC, line);
+        log.info("Added invoice {} to the overdue digest of issuer {}", invoice.invoiceNumber(), invoice.userEmail());
     }
 }
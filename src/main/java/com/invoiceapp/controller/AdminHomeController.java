@@ -1,17 +1,22 @@
 package com.invoiceapp.controller;
 
 import com.invoiceapp.dto.misc.DashboardStats;
+import com.invoiceapp.entity.Currency;
 import com.invoiceapp.dto.invoice.InvoiceResponse;
 import com.invoiceapp.entity.Role;
 import com.invoiceapp.entity.User;
 import com.invoiceapp.security.UserProvider;
 import com.invoiceapp.service.DashboardService;
+import com.invoiceapp.service.FxRateService;
 import com.invoiceapp.service.InvoiceService;
 import com.invoiceapp.service.UserService;
 import jakarta.servlet.http.HttpSession;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -20,10 +25,17 @@ import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 @Slf4j
 @Controller
 @RequestMapping("/admin")
@@ -33,6 +45,13 @@ public class AdminHomeController {
     private final DashboardService dashboardService;
     private final InvoiceService invoiceService;
     private final UserService userService;
+    private final FxRateService fxRateService;
+    @Qualifier("dashboardExecutor")
+    private final Executor dashboardExecutor;
+    @Value("${invoiceapp.dashboard.timeout:5s}")
+    private final Duration dashboardTimeout;
+    @Value("${invoiceapp.fx.base:USD}")
+    private final Currency defaultBase;
 
 
     @GetMapping
@@ -52,6 +71,7 @@ public class AdminHomeController {
             @RequestParam("to")
             @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
             Optional<LocalDate> toDate,
+            @RequestParam("base") Optional<Currency> base,
             HttpSession session,
             Model model
     ) {
@@ -78,21 +98,48 @@ public class AdminHomeController {
         log.info("Viewing dashboard for target user: {}", target.getEmail());
 
 
-        // compute stats & recent invoices
-        DashboardStats stats   = dashboardService.getStatsFor(target, start, end);
-        List<InvoiceResponse> recent = invoiceService.getRecentInvoices(target.getEmail(), 5);
+        // stats, recent invoices and the user list are independent: load them in parallel,
+        // each in its own read-only transaction, bounded by one timeout for the whole page
+        boolean admin = me.getRole() == Role.ADMIN;
+        CompletableFuture<DashboardStats> stats = CompletableFuture.supplyAsync(
+                () -> dashboardService.getStatsFor(target, start, end), dashboardExecutor);
+        CompletableFuture<List<InvoiceResponse>> recent = CompletableFuture.supplyAsync(
+                () -> invoiceService.getRecentInvoices(target.getEmail(), 5), dashboardExecutor);
+        CompletableFuture<List<User>> users = admin
+                ? CompletableFuture.supplyAsync(userService::findAllUsers, dashboardExecutor)
+                : CompletableFuture.completedFuture(List.of());
+        await(CompletableFuture.allOf(stats, recent, users), target);
 
-        // populate model
-        model.addAttribute("stats", stats);
-        model.addAttribute("recentInvoices", recent);
+        // populate model; consolidation converts the per-currency sums only, so its cost is fixed
+        Currency baseCurrency = base.orElse(defaultBase);
+        model.addAttribute("stats", stats.join());
+        model.addAttribute("consolidated", fxRateService.consolidate(stats.join(), baseCurrency));
+        model.addAttribute("currencies", Currency.values());
+        model.addAttribute("recentInvoices", recent.join());
         model.addAttribute("from", start);
         model.addAttribute("to", end);
 
-        if (me.getRole() == Role.ADMIN) {
-            model.addAttribute("users", userService.findAllUsers());
+        if (admin) {
+            model.addAttribute("users", users.join());
             model.addAttribute("selectedUserId",target.getId());
         }
         log.info("Dashboard data populated for user: {}", target.getEmail());
         return "admin/dashboard";
     }
+
+    //waits for the fan-out; failures surface as the original exception, a timeout as 503
+    private void await(CompletableFuture<Void> all, User target) {
+        try {
+            all.orTimeout(dashboardTimeout.toMillis(), TimeUnit.MILLISECONDS).join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof TimeoutException) {
+                log.error("Dashboard for user {} not loaded within {}", target.getEmail(), dashboardTimeout);
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Dashboard is taking too long, please retry.");
+            }
+            if (ex.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw ex;
+        }
+    }
 }
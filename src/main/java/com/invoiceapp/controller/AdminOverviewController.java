@@ -0,0 +1,79 @@
+package com.invoiceapp.controller;
+
+import com.invoiceapp.dto.misc.UserOverviewRow;
+import com.invoiceapp.entity.Currency;
+import com.invoiceapp.service.AdminOverviewService;
+import com.invoiceapp.service.FxRateService;
+import com.invoiceapp.service.FxRates;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+@Slf4j
+@Controller
+@RequestMapping("/admin/overview")
+@RequiredArgsConstructor
+public class AdminOverviewController {
+
+    private final AdminOverviewService overviewService;
+    private final FxRateService fxRateService;
+    @Value("${invoiceapp.fx.base:USD}")
+    private final Currency defaultBase;
+
+    @GetMapping
+    @PreAuthorize("hasRole('ADMIN')")
+    public String overview(
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<LocalDate> fromDate,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<LocalDate> toDate,
+            @RequestParam("base") Optional<Currency> baseCurrency,
+            @RequestParam(defaultValue = "revenue") String sort,
+            @RequestParam(defaultValue = "desc") String dir,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "25") int size,
+            Model model
+    ) {
+        // year to date unless told otherwise
+        LocalDate to = toDate.orElse(LocalDate.now());
+        LocalDate from = fromDate.orElse(to.withDayOfYear(1));
+        Currency base = baseCurrency.orElse(defaultBase);
+        String sortBy = AdminOverviewService.SORTABLE.contains(sort) ? sort : "revenue";
+        Sort.Direction direction = "asc".equalsIgnoreCase(dir) ? Sort.Direction.ASC : Sort.Direction.DESC;
+        int pageSize = Math.max(1, Math.min(size, 200));
+        log.info("Admin overview requested: {} to {}, base {}, sort {} {}, page {}", from, to, base, sortBy, direction, page);
+
+        Page<UserOverviewRow> pg = overviewService.overview(from, to, base,
+                PageRequest.of(Math.max(page, 0), pageSize, Sort.by(direction, sortBy)));
+
+        FxRates rates = fxRateService.current();
+        List<Currency> missingRates = Arrays.stream(Currency.values())
+                .filter(c -> c != base && (!rates.has(c) || !rates.has(base)))
+                .toList();
+
+        model.addAttribute("rows", pg.getContent());
+        model.addAttribute("page", pg);
+        model.addAttribute("from", from);
+        model.addAttribute("to", to);
+        model.addAttribute("base", base);
+        model.addAttribute("currencies", Currency.values());
+        model.addAttribute("sort", sortBy);
+        model.addAttribute("dir", direction.name().toLowerCase());
+        model.addAttribute("size", pageSize);
+        model.addAttribute("missingRates", missingRates);
+        return "admin/overview";
+    }
+}
@@ -0,0 +1,81 @@
+package com.invoiceapp.controller;
+
+import com.invoiceapp.dto.misc.AgingRow;
+import com.invoiceapp.entity.Role;
+import com.invoiceapp.entity.User;
+import com.invoiceapp.security.UserProvider;
+import com.invoiceapp.service.AgingReportService;
+import com.invoiceapp.service.UserService;
+import jakarta.servlet.http.HttpSession;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+@Slf4j
+@Controller
+@RequestMapping("/admin/reports/aging")
+@RequiredArgsConstructor
+public class AgingReportController {
+
+    private final AgingReportService agingService;
+    private final UserProvider userProvider;
+    private final UserService userService;
+
+    @PreAuthorize("hasAnyRole('USER','ADMIN')")
+    @GetMapping
+    public String page(
+            @RequestParam("asOf") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<LocalDate> asOfDate,
+            HttpSession session,
+            Model model
+    ) {
+        LocalDate asOf = asOfDate.orElse(LocalDate.now());
+        User target = target(session);
+        log.info("Aging report page for user {} as of {}", target.getEmail(), asOf);
+
+        List<AgingRow> rows = agingService.report(target, asOf);
+        model.addAttribute("rows", rows);
+        model.addAttribute("totals", AgingReportService.totalsByCurrency(rows).values());
+        model.addAttribute("asOf", asOf);
+        return "admin/aging-report";
+    }
+
+    @PreAuthorize("hasAnyRole('USER','ADMIN')")
+    @GetMapping("/export.csv")
+    public ResponseEntity<StreamingResponseBody> csv(
+            @RequestParam("asOf") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<LocalDate> asOfDate,
+            HttpSession session
+    ) {
+        LocalDate asOf = asOfDate.orElse(LocalDate.now());
+        User target = target(session);
+        log.info("Aging report CSV for user {} as of {}", target.getEmail(), asOf);
+
+        //written on the async thread inside the service's read-only transaction
+        StreamingResponseBody body = out -> agingService.writeCsv(target, asOf, out);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"aging-" + asOf + ".csv\"")
+                .contentType(new MediaType("text", "csv"))
+                .body(body);
+    }
+
+    //admins see the user picked in the session, everybody else sees themselves
+    private User target(HttpSession session) {
+        User me = userProvider.getCurrentUser();
+        Long sessionId = (Long) session.getAttribute("viewAsUserId");
+        return (me.getRole() == Role.ADMIN && sessionId != null)
+                ? userService.findById(sessionId) : me;
+    }
+}
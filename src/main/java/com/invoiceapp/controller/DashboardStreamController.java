@@ -0,0 +1,58 @@
+package com.invoiceapp.controller;
+
+import com.invoiceapp.entity.Role;
+import com.invoiceapp.entity.User;
+import com.invoiceapp.service.DashboardStreamService;
+import com.invoiceapp.service.UserService;
+import jakarta.servlet.http.HttpSession;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+@Slf4j
+@RestController
+@RequestMapping("/admin/dashboard")
+@RequiredArgsConstructor
+public class DashboardStreamController {
+
+    private final DashboardStreamService streamService;
+    private final UserService userService;
+
+    //live updates for the dashboard page; same range defaults and view-as user as the page itself
+    @PreAuthorize("hasAnyRole('USER','ADMIN')")
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(
+            @AuthenticationPrincipal UserDetails ud,
+            @RequestParam("from")
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+            Optional<LocalDate> fromDate,
+            @RequestParam("to")
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+            Optional<LocalDate> toDate,
+            HttpSession session
+    ) {
+        LocalDate start = fromDate.orElse(LocalDate.now().withDayOfMonth(1));
+        LocalDate end   = toDate.orElse(LocalDate.now());
+
+        User me = userService.findByEmail(ud.getUsername());
+        Long sid = (Long) session.getAttribute("viewAsUserId");
+        User target = (me.getRole() == Role.ADMIN && sid != null)
+                ? userService.findById(sid)
+                : me;
+
+        log.info("User {} subscribing to dashboard updates of {}", me.getEmail(), target.getEmail());
+        return streamService.subscribe(target, start, end);
+    }
+}
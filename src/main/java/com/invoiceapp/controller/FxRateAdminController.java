@@ -0,0 +1,58 @@
+package com.invoiceapp.controller;
+
+import com.invoiceapp.entity.Currency;
+import com.invoiceapp.service.FxRateService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.support.RedirectAttributes;
+
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.Map;
+
+@Slf4j
+@Controller
+@RequestMapping("/admin/fx-rates")
+@RequiredArgsConstructor
+public class FxRateAdminController {
+
+    private final FxRateService fxRateService;
+
+    @GetMapping
+    @PreAuthorize("hasRole('ADMIN')")
+    public String form(Model model) {
+        log.info("Showing fx rate form");
+        model.addAttribute("rates", fxRateService.current().usdPerUnit());
+        model.addAttribute("asOf", fxRateService.current().asOf());
+        model.addAttribute("currencies", Currency.values());
+        return "admin/fx-rates";
+    }
+
+    //form fields are named after the currency (EUR=1.08); blank fields are left unchanged
+    @PostMapping
+    @PreAuthorize("hasRole('ADMIN')")
+    public String update(@RequestParam Map<String, String> params, RedirectAttributes ra) {
+        Map<Currency, BigDecimal> rates = new EnumMap<>(Currency.class);
+        try {
+            for (Currency c : Currency.values()) {
+                String v = params.get(c.name());
+                if (v != null && !v.isBlank()) {
+                    rates.put(c, new BigDecimal(v.trim()));
+                }
+            }
+            fxRateService.update(rates);
+            ra.addFlashAttribute("success", "FX rates updated.");
+        } catch (IllegalArgumentException ex) { // NumberFormatException included
+            log.warn("Rejected fx rate update: {}", ex.getMessage());
+            ra.addFlashAttribute("error", "Invalid rate: " + ex.getMessage());
+        }
+        return "redirect:/admin/fx-rates";
+    }
+}
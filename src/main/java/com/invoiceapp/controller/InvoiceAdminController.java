@@ -5,18 +5,18 @@ import com.invoiceapp.entity.Invoice;
 import com.invoiceapp.entity.InvoiceStatus;
 import com.invoiceapp.entity.Role;
 import com.invoiceapp.entity.User;
-import com.invoiceapp.repository.InvoiceRepository;
 import com.invoiceapp.security.UserProvider;
 import com.invoiceapp.service.ClientService;
-import com.invoiceapp.service.InvoicePdfService;
+import com.invoiceapp.service.InvoicePdfCache;
 import com.invoiceapp.service.InvoiceService;
 import com.invoiceapp.service.UserService;
 import com.invoiceapp.util.InvoiceMapper;
-import jakarta.persistence.EntityNotFoundException;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
 import org.springframework.data.domain.Page;
 import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
@@ -29,8 +29,13 @@ import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Controller
@@ -42,8 +47,7 @@ public class InvoiceAdminController {
     private final ClientService  clientService;
     private final UserProvider userProvider;
     private final UserService userService;
-    private final InvoicePdfService pdfService;
-    private final InvoiceRepository invoiceRepository;
+    private final InvoicePdfCache pdfCache;
 
     @PreAuthorize("hasAnyRole('USER','ADMIN')")
     @GetMapping
@@ -55,10 +59,6 @@ public class InvoiceAdminController {
     ) {
         log.info("Fetching invoice list with status: {} for page: {} and size: 12", status.orElse(null), page);
 
-        // flip overdue
-        invoiceService.markOverdue();
-
-
         User me = userProvider.getCurrentUser();
         Long sessionId = (Long) session.getAttribute("viewAsUserId");
         User target = (me.getRole()==Role.ADMIN && sessionId !=null)
@@ -84,10 +84,47 @@ public class InvoiceAdminController {
                        RedirectAttributes redirectAttributes) {
         log.info("Sending invoice with ID: {}", id);
         invoiceService.send(id);
-        redirectAttributes.addFlashAttribute("success","Invoice sent!");
+        redirectAttributes.addFlashAttribute("success","Invoice is being sent");
         return "redirect:/admin/invoices";
     }
 
+    //month-end billing: send every selected draft in one go
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping("/send-bulk")
+    public String sendBulk(@RequestParam(name = "ids", required = false) List<Long> ids,
+                           RedirectAttributes redirectAttributes) {
+        if (ids == null || ids.isEmpty()) {
+            redirectAttributes.addFlashAttribute("errorToast", "Select the invoices to send.");
+            return "redirect:/admin/invoices";
+        }
+        log.info("Bulk sending {} invoice(s)", ids.size());
+        BulkSendResult result = invoiceService.sendAll(ids);
+        String message = result.queued().size() + " invoice(s) are being sent.";
+        if (!result.skipped().isEmpty()) {
+            message += " Skipped: " + result.skipped().entrySet().stream()
+                    .map(e -> "#" + e.getKey() + " " + e.getValue())
+                    .collect(Collectors.joining(", "));
+        }
+        redirectAttributes.addFlashAttribute(result.queued().isEmpty() ? "errorToast" : "successToast", message);
+        return "redirect:/admin/invoices";
+    }
+
+    //progress of a bulk send: counts per stage and the failures with their reason
+    @PreAuthorize("hasAnyRole('USER','ADMIN')")
+    @GetMapping("/send-progress")
+    @ResponseBody
+    public BulkSendProgress sendProgress(@RequestParam List<Long> ids) {
+        return invoiceService.sendProgress(ids);
+    }
+
+    //polled by the invoice list while a send is in progress
+    @PreAuthorize("hasAnyRole('USER','ADMIN')")
+    @GetMapping("/{id}/status")
+    @ResponseBody
+    public InvoiceStatusResponse status(@PathVariable Long id) {
+        return invoiceService.sendStatus(id);
+    }
+
     @PreAuthorize("hasRole('ADMIN')")
     @GetMapping("/{id}/record-payment")
     public String paymentForm(@PathVariable Long id, Model model) {
@@ -234,12 +271,7 @@ public class InvoiceAdminController {
             RedirectAttributes redirectAttributes
     ) {
         try {
-            Invoice invoice = invoiceRepository.findById(id)
-                    .orElseThrow(() -> new EntityNotFoundException("Invoice not found"));
-            if (invoice.getStatus() != InvoiceStatus.DRAFT) {
-                throw new IllegalStateException("Only draft invoices can be deleted.");
-            }
-            invoiceRepository.delete(invoice);
+            invoiceService.deleteDraft(id);
             redirectAttributes.addFlashAttribute("successToast", "Invoice deleted.");
         } catch (IllegalStateException e) {
             redirectAttributes.addFlashAttribute("errorToast", e.getMessage());
@@ -257,31 +289,51 @@ public class InvoiceAdminController {
     }
 
 
-    //Download pdf invoice
+    //Download pdf invoice, streamed from the PDF cache (range requests included); a miss is sent as it renders
     @GetMapping("/{id}/pdf")
-    public ResponseEntity<byte[]> downloadInvoicePdf(@PathVariable Long id) {
+    public ResponseEntity<Resource> downloadInvoicePdf(@PathVariable Long id, HttpServletResponse response) throws IOException {
         log.info("Downloading PDF for invoice with ID: {}", id);
-        byte[] pdf = pdfService.generate(invoiceService.getEntity(id));
+        Invoice inv = invoiceService.getEntity(id);
+        String disposition = "attachment; filename=\"invoice-" + id + ".pdf\"";
+        Optional<Resource> pdf = pdfCache.invoiceDownload(inv);
+        if (pdf.isEmpty()) {
+            streamPdf(response, disposition, out -> pdfCache.writeInvoice(inv, out));
+            return null;
+        }
         return ResponseEntity.ok()
                 .contentType(MediaType.APPLICATION_PDF)
-                .header(HttpHeaders.CONTENT_DISPOSITION,
-                        "attachment; filename=\"invoice-" + id + ".pdf\"")
-                .body(pdf);
+                .header(HttpHeaders.CONTENT_DISPOSITION, disposition)
+                .body(pdf.get());
     }
 
     //Download receipt pdf
     @GetMapping("/{id}/receipt")
-    public ResponseEntity<byte[]> downloadReceipt(@PathVariable Long id) {
+    public ResponseEntity<Resource> downloadReceipt(@PathVariable Long id, HttpServletResponse response) throws IOException {
         Invoice inv = invoiceService.getEntity(id);
         log.info("Downloading receipt PDF for invoice with ID: {} and transaction ID: {}", id, inv.getTransactionId());
-        byte[] pdf = pdfService.generateReceipt(inv);
+        String disposition = ContentDisposition.attachment()
+                .filename("receipt-"+inv.getTransactionId()+".pdf")
+                .build().toString();
+        Optional<Resource> pdf = pdfCache.receiptDownload(inv);
+        if (pdf.isEmpty()) {
+            streamPdf(response, disposition, out -> pdfCache.writeReceipt(inv, out));
+            return null;
+        }
         return ResponseEntity.ok()
                 .contentType(MediaType.APPLICATION_PDF)
-                .header(HttpHeaders.CONTENT_DISPOSITION,
-                        ContentDisposition.attachment()
-                                .filename("receipt-"+inv.getTransactionId()+".pdf")
-                                .build().toString())
-                .body(pdf);
+                .header(HttpHeaders.CONTENT_DISPOSITION, disposition)
+                .body(pdf.get());
+    }
+
+    //a PDF that is not cached yet: written to the response while it renders (and into the cache on the
+    //way), without a length since it is not known up front. Returning a null entity tells MVC the
+    //response is already written
+    private static void streamPdf(HttpServletResponse response, String disposition,
+                                  Consumer<OutputStream> write) throws IOException {
+        response.setContentType(MediaType.APPLICATION_PDF_VALUE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, disposition);
+        write.accept(response.getOutputStream());
+        response.flushBuffer();
     }
 
 }
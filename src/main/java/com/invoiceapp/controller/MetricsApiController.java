@@ -0,0 +1,47 @@
+package com.invoiceapp.controller;
+
+import com.invoiceapp.dto.misc.MetricTrend;
+import com.invoiceapp.dto.misc.TrendUnit;
+import com.invoiceapp.service.MetricTrendService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Optional;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/v1/metrics")
+@RequiredArgsConstructor
+public class MetricsApiController {
+
+    private final MetricTrendService trendService;
+
+    //metric snapshots are not per user, so the trend is an admin view
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/trend")
+    public ResponseEntity<?> trend(
+            @RequestParam(defaultValue = "DAY") TrendUnit unit,
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<LocalDate> fromDate,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<LocalDate> toDate
+    ) {
+        LocalDate to = toDate.orElse(LocalDate.now());
+        LocalDate from = fromDate.orElse(to.minusDays(89));
+        log.info("Trend requested: unit {} from {} to {}", unit, from, to);
+        try {
+            MetricTrend trend = trendService.trend(unit, from, to);
+            return ResponseEntity.ok(trend);
+        } catch (IllegalArgumentException ex) {
+            log.warn("Rejected trend request: {}", ex.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", ex.getMessage()));
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package com.invoiceapp.controller;
 
 import com.invoiceapp.entity.Invoice;
+import com.invoiceapp.event.InvoiceChangedEvent;
 import com.invoiceapp.repository.InvoiceRepository;
-import com.invoiceapp.service.EmailService;
+import com.invoiceapp.service.NotificationDigest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -21,7 +23,8 @@ import java.time.LocalDateTime;
 public class PaymentConfirmationController {
 
     private final InvoiceRepository invoiceRepo;
-    private final EmailService emailService;
+    private final NotificationDigest notificationDigest;
+    private final ApplicationEventPublisher events;
 
 
     //confirm payment link
@@ -44,20 +47,24 @@ public class PaymentConfirmationController {
         }
 
         inv.setPaymentIntentAt(LocalDateTime.now());
+        //the client says they paid, so the dunning schedule stops reminding them
+        inv.setNextReminderAt(null);
+        invoiceRepo.save(inv);
+        //lets an open dashboard of the owner show the click right away
+        events.publishEvent(new InvoiceChangedEvent(inv.getUser().getId(), inv.getId(), inv.getStatus()));
         log.info("Payment intent recorded for invoice: {}. Client: {} ({})",
                 inv.getInvoiceNumber(), inv.getClient().getName(), inv.getClient().getEmail());
 
-        emailService.simpleNotify(
+        //the owner gets one digest for all clicks within the digest window
+        notificationDigest.add(
                 "owner@invoiceapp.local",
                 "Client clicked payment link",
-                """
-                Client %s (%s) clicked the payment link for invoice %s.
-                """
+                "Client %s (%s) clicked the payment link for invoice %s."
                         .formatted(inv.getClient().getName(),
                                 inv.getClient().getEmail(),
                                 inv.getInvoiceNumber())
         );
-        log.info("Sent email notification to owner about client %s clicking payment link for invoice %s",
+        log.info("Added payment link click of client {} for invoice {} to the owner's digest",
                 inv.getClient().getName(), inv.getInvoiceNumber());
 
         return ResponseEntity.ok("""
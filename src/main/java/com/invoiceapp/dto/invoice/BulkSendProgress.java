@@ -0,0 +1,11 @@
+package com.invoiceapp.dto.invoice;
+
+import java.util.List;
+
+//where a bulk send stands: invoices still sending, sent, failed (with the reason per invoice)
+public record BulkSendProgress(
+        long sending,
+        long sent,
+        long failed,
+        List<InvoiceStatusResponse> failures
+) {}
@@ -0,0 +1,10 @@
+package com.invoiceapp.dto.invoice;
+
+import java.util.List;
+import java.util.Map;
+
+//outcome of a bulk send request: the invoices queued for sending, and why the others were not
+public record BulkSendResult(
+        List<Long> queued,
+        Map<Long, String> skipped
+) {}
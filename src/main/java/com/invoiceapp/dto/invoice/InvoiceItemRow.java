@@ -0,0 +1,21 @@
+package com.invoiceapp.dto.invoice;
+
+import com.invoiceapp.entity.InvoiceItem;
+
+import java.math.BigDecimal;
+
+//one printed line of an invoice; read in pages for large invoices, so it is not a managed entity
+public record InvoiceItemRow(
+        Long id,
+        String description,
+        Integer quantity,
+        BigDecimal unitPrice
+) {
+    public static InvoiceItemRow of(InvoiceItem item) {
+        return new InvoiceItemRow(item.getId(), item.getDescription(), item.getQuantity(), item.getUnitPrice());
+    }
+
+    public BigDecimal amount() {
+        return unitPrice.multiply(BigDecimal.valueOf(quantity));
+    }
+}
@@ -0,0 +1,11 @@
+package com.invoiceapp.dto.invoice;
+
+import com.invoiceapp.entity.InvoiceStatus;
+
+//status of a single invoice, polled by the invoice list while a send is in progress
+public record InvoiceStatusResponse(
+        Long id,
+        String invoiceNumber,
+        InvoiceStatus status,
+        String sendError
+) {}
@@ -0,0 +1,14 @@
+package com.invoiceapp.dto.invoice;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+//what the overdue sweep needs of an invoice for the issuer's digest line; read per chunk instead of the entity
+public record OverdueInvoiceRow(
+        Long id,
+        String userEmail,
+        String clientName,
+        String invoiceNumber,
+        LocalDate dueDate,
+        BigDecimal total
+) {}
@@ -0,0 +1,21 @@
+package com.invoiceapp.dto.misc;
+
+import com.invoiceapp.entity.Currency;
+
+import java.math.BigDecimal;
+
+//open receivables of one client in one currency, split by days past due
+public record AgingRow(
+        Long clientId,
+        String clientName,
+        Currency currency,
+        Long invoiceCount,
+        BigDecimal days0to30,
+        BigDecimal days31to60,
+        BigDecimal days61to90,
+        BigDecimal days90plus
+) {
+    public BigDecimal total() {
+        return days0to30.add(days31to60).add(days61to90).add(days90plus);
+    }
+}
@@ -0,0 +1,20 @@
+package com.invoiceapp.dto.misc;
+
+import com.invoiceapp.entity.Currency;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Set;
+
+//revenue and outstanding converted into one base currency; currencies without a rate are left out and listed
+public record ConsolidatedTotals(
+        Currency base,
+        BigDecimal revenue,
+        BigDecimal outstanding,
+        Set<Currency> missingRates,
+        LocalDateTime ratesAsOf
+) {
+    public boolean complete() {
+        return missingRates.isEmpty();
+    }
+}
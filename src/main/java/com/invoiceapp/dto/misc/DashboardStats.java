@@ -13,6 +13,7 @@ public class DashboardStats {
     private final long sent;
     private final long overdue;
     private final long paid;
+    private final long sendFailed;
 
     private final BigDecimal revenue;
     private final BigDecimal outstanding;
@@ -26,6 +27,7 @@ public class DashboardStats {
             long sent,
             long overdue,
             long paid,
+            long sendFailed,
             BigDecimal revenue,
             BigDecimal outstanding,
             Map<String, BigDecimal> revenueByCurrency,
@@ -36,6 +38,7 @@ public class DashboardStats {
         this.sent = sent;
         this.overdue = overdue;
         this.paid = paid;
+        this.sendFailed = sendFailed;
         this.revenue = revenue;
         this.outstanding = outstanding;
         this.revenueByCurrency = revenueByCurrency;
@@ -0,0 +1,55 @@
+package com.invoiceapp.dto.misc;
+
+import com.invoiceapp.entity.InvoiceStatus;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+//what changed on a user's dashboard after an invoice change: only fields whose value differs are
+//present in changes, per-currency maps only carry the currencies that moved
+public record DashboardStatsDelta(Long invoiceId, InvoiceStatus status, Map<String, Object> changes) {
+
+    public static DashboardStatsDelta between(Long invoiceId, InvoiceStatus status,
+                                              DashboardStats before, DashboardStats after) {
+        Map<String, Object> changes = new LinkedHashMap<>();
+        if (before.getTotalInvoices() != after.getTotalInvoices()) changes.put("totalInvoices", after.getTotalInvoices());
+        if (before.getDraft() != after.getDraft())       changes.put("draft", after.getDraft());
+        if (before.getSent() != after.getSent())         changes.put("sent", after.getSent());
+        if (before.getOverdue() != after.getOverdue())   changes.put("overdue", after.getOverdue());
+        if (before.getPaid() != after.getPaid())         changes.put("paid", after.getPaid());
+        if (before.getSendFailed() != after.getSendFailed()) changes.put("sendFailed", after.getSendFailed());
+        if (differs(before.getRevenue(), after.getRevenue()))         changes.put("revenue", after.getRevenue());
+        if (differs(before.getOutstanding(), after.getOutstanding())) changes.put("outstanding", after.getOutstanding());
+
+        Map<String, BigDecimal> rev = changed(before.getRevenueByCurrency(), after.getRevenueByCurrency());
+        if (!rev.isEmpty()) changes.put("revenueByCurrency", rev);
+        Map<String, BigDecimal> out = changed(before.getOutstandingByCurrency(), after.getOutstandingByCurrency());
+        if (!out.isEmpty()) changes.put("outstandingByCurrency", out);
+
+        return new DashboardStatsDelta(invoiceId, status, changes);
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    private static Map<String, BigDecimal> changed(Map<String, BigDecimal> before, Map<String, BigDecimal> after) {
+        Map<String, BigDecimal> diff = new LinkedHashMap<>();
+        after.forEach((currency, amount) -> {
+            if (differs(before.get(currency), amount)) {
+                diff.put(currency, amount);
+            }
+        });
+        return diff;
+    }
+
+    //scale-insensitive, 10.0 and 10.00 are the same amount
+    private static boolean differs(BigDecimal a, BigDecimal b) {
+        if (a == null || b == null) {
+            return !Objects.equals(a, b);
+        }
+        return a.compareTo(b) != 0;
+    }
+}
@@ -0,0 +1,12 @@
+package com.invoiceapp.dto.misc;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+//one (bucket start, status) row of a trend query, read straight from the native result set
+public interface MetricBucket {
+    LocalDate getBucket();
+    String getStatus();
+    Long getCnt();
+    BigDecimal getTotal();
+}
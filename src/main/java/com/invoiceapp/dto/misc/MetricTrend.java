@@ -0,0 +1,22 @@
+package com.invoiceapp.dto.misc;
+
+import com.invoiceapp.entity.InvoiceStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column-oriented trend payload: {@code buckets} holds the start date of every bucket in the range
+ * (gaps included), and each status series holds one count and one amount per bucket at the same index.
+ */
+public record MetricTrend(
+        TrendUnit unit,
+        LocalDate from,
+        LocalDate to,
+        List<LocalDate> buckets,
+        Map<InvoiceStatus, Series> series
+) {
+    public record Series(long[] count, BigDecimal[] amount) {}
+}
@@ -0,0 +1,17 @@
+package com.invoiceapp.dto.misc;
+
+import com.invoiceapp.entity.Currency;
+import com.invoiceapp.entity.InvoiceStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+//invoices grouped by rollup key, used to move many invoices in or out of the daily rollup at once
+public record RollupDelta(
+        Long userId,
+        LocalDate day,
+        InvoiceStatus status,
+        Currency currency,
+        Long count,
+        BigDecimal amount
+) {}
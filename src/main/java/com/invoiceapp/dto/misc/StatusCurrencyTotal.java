@@ -0,0 +1,14 @@
+package com.invoiceapp.dto.misc;
+
+import com.invoiceapp.entity.Currency;
+import com.invoiceapp.entity.InvoiceStatus;
+
+import java.math.BigDecimal;
+
+//one row of the grouped dashboard aggregate (status x currency)
+public record StatusCurrencyTotal(
+        InvoiceStatus status,
+        Currency currency,
+        Long count,
+        BigDecimal total
+) {}
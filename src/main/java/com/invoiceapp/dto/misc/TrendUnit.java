@@ -0,0 +1,25 @@
+package com.invoiceapp.dto.misc;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+//bucket size of a metric trend; floor() must match the bucket expression of the SQL query
+public enum TrendUnit {
+    DAY {
+        public LocalDate floor(LocalDate d) { return d; }
+        public LocalDate next(LocalDate d)  { return d.plusDays(1); }
+    },
+    WEEK {
+        public LocalDate floor(LocalDate d) { return d.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)); }
+        public LocalDate next(LocalDate d)  { return d.plusWeeks(1); }
+    },
+    MONTH {
+        public LocalDate floor(LocalDate d) { return d.withDayOfMonth(1); }
+        public LocalDate next(LocalDate d)  { return d.plusMonths(1); }
+    };
+
+    public abstract LocalDate floor(LocalDate d);
+
+    public abstract LocalDate next(LocalDate d);
+}
@@ -0,0 +1,13 @@
+package com.invoiceapp.dto.misc;
+
+import java.math.BigDecimal;
+
+//per-user line of the admin overview; amounts are consolidated into the page's base currency
+public record UserOverviewRow(
+        Long userId,
+        String email,
+        long invoices,
+        long overdue,
+        BigDecimal revenue,
+        BigDecimal outstanding
+) {}
@@ -0,0 +1,9 @@
+package com.invoiceapp.dto.misc;
+
+import com.invoiceapp.entity.Currency;
+import com.invoiceapp.entity.InvoiceStatus;
+
+import java.math.BigDecimal;
+
+//one grouped row of the platform-wide rollup scan
+public record UserStatusCurrencyTotal(Long userId, InvoiceStatus status, Currency currency, Long count, BigDecimal total) {}
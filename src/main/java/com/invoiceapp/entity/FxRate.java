@@ -0,0 +1,34 @@
+package com.invoiceapp.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Entity
+@Getter
+@NoArgsConstructor
+@Table(name = "fx_rate")
+
+//value of one unit of a currency expressed in USD (the pivot); USD itself is always 1
+public class FxRate {
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(length = 3)
+    private Currency currency;
+
+    @Column(name = "usd_per_unit", nullable = false, precision = 19, scale = 8)
+    private BigDecimal usdPerUnit;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    public FxRate(Currency currency, BigDecimal usdPerUnit, LocalDateTime updatedAt) {
+        this.currency   = currency;
+        this.usdPerUnit = usdPerUnit;
+        this.updatedAt  = updatedAt;
+    }
+}
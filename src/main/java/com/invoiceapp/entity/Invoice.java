@@ -14,7 +14,14 @@ import java.util.List;
 
 @Getter @Setter @NoArgsConstructor @AllArgsConstructor
 @Entity
-@Table(name = "invoice")
+@Table(name = "invoice", indexes = {
+        //aging report: open invoices of a user, ranged by due date
+        @Index(name = "idx_invoice_user_status_due", columnList = "user_id, status, due_date"),
+        //overdue sweep: keyset walk over one status in id order
+        @Index(name = "idx_invoice_status_id", columnList = "status, id"),
+        //dunning: unpaid invoices in the order their next reminder falls due
+        @Index(name = "idx_invoice_next_reminder", columnList = "next_reminder_at")
+})
 public class Invoice {
 
     @Id
@@ -26,7 +33,9 @@ public class Invoice {
     private String invoiceNumber;
     @ManyToOne(optional = false, fetch = FetchType.LAZY)
     private Client client;
+    //plain varchar rather than a native enum column, so a new status needs no ALTER on existing databases
     @Enumerated(EnumType.STRING)
+    @Column(columnDefinition = "varchar(20)")
     private InvoiceStatus status = InvoiceStatus.DRAFT;
     private LocalDate issueDate = LocalDate.now();
     private LocalDate dueDate;
@@ -36,6 +45,18 @@ public class Invoice {
     private boolean archived = false;
     @Column(name = "payment_intent_time")
     private LocalDateTime paymentIntentAt;
+    //when the client gets the next payment reminder; null once nothing is owed
+    @Column(name = "next_reminder_at")
+    private LocalDateTime nextReminderAt;
+    //while SENDING: when the background send may be picked up (again); a worker's claim pushes it out
+    @Column(name = "send_lease_until")
+    private LocalDateTime sendLeaseUntil;
+    //why the last send failed (SEND_FAILED only)
+    @Column(name = "send_error", length = 255)
+    private String sendError;
+    //bumped by every write of the line items; rendered PDFs are keyed on it instead of on the lines
+    @Column(name = "items_revision", nullable = false)
+    private int itemsRevision;
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
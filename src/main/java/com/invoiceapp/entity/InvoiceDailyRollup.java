@@ -0,0 +1,45 @@
+package com.invoiceapp.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+//per-user daily rollup of invoice counts and totals, maintained incrementally on every transition
+@Entity
+@Getter
+@Table(name = "invoice_daily_rollup",
+        uniqueConstraints = @UniqueConstraint(
+                name = "uk_rollup_user_day_status_currency",
+                columnNames = {"user_id", "rollup_day", "status", "currency"}))
+public class InvoiceDailyRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    //the invoice issue date, the same date the dashboard filters on
+    @Column(name = "rollup_day", nullable = false)
+    private LocalDate day;
+
+    //plain varchar rather than a native enum column, so a new status needs no ALTER on existing databases
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, columnDefinition = "varchar(20)")
+    private InvoiceStatus status;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 3)
+    private Currency currency;
+
+    @Column(name = "invoice_count", nullable = false)
+    private long invoiceCount;
+
+    @Column(name = "total_amount", nullable = false, precision = 15, scale = 2)
+    private BigDecimal totalAmount = BigDecimal.ZERO;
+
+    protected InvoiceDailyRollup() {}
+}
@@ -4,6 +4,10 @@ package com.invoiceapp.entity;
 //invoice statuses
 public enum InvoiceStatus {
     DRAFT,
+    //accepted for sending, the PDF and email are being prepared in the background
+    SENDING,
+    //the background send failed; the invoice can be sent again
+    SEND_FAILED,
     SENT,
     PAID,
     OVERDUE;
@@ -11,7 +15,8 @@ public enum InvoiceStatus {
     //method for transitions
     public boolean canTransitionTo(InvoiceStatus next) {
         return switch (this) {
-            case DRAFT -> next == SENT;
+            case DRAFT, SEND_FAILED -> next == SENDING;
+            case SENDING -> next == SENT || next == SEND_FAILED;
             case SENT, OVERDUE -> next == PAID;
             case PAID -> false;
         };
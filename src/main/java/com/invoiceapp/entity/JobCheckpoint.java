@@ -0,0 +1,46 @@
+package com.invoiceapp.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Entity
+@Getter
+@NoArgsConstructor
+@Table(name = "job_checkpoint")
+
+//progress of a chunked batch job: the last id it committed for the run of a given day
+public class JobCheckpoint {
+
+    @Id
+    @Column(name = "job_name", length = 50)
+    private String jobName;
+
+    @Column(name = "run_date", nullable = false)
+    private LocalDate runDate;
+
+    @Column(name = "last_id", nullable = false)
+    private long lastId;
+
+    @Column(nullable = false)
+    private long processed;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    public JobCheckpoint(String jobName, LocalDate runDate) {
+        this.jobName   = jobName;
+        this.runDate   = runDate;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    //moves the cursor past a committed chunk
+    public void advance(long lastId, int count) {
+        this.lastId    = lastId;
+        this.processed += count;
+        this.updatedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,100 @@
+package com.invoiceapp.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Getter
+@NoArgsConstructor
+@Table(name = "email_outbox", indexes = {
+        //dispatcher poll: due rows of a status, oldest first
+        @Index(name = "idx_outbox_status_next", columnList = "status, next_attempt_at")
+})
+
+//an email written in the business transaction and delivered by the outbox dispatcher after commit
+public class OutboxEmail {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String recipient;
+
+    @Column(nullable = false)
+    private String subject;
+
+    @Lob
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String body;
+
+    @Lob
+    @Basic(fetch = FetchType.LAZY)
+    @Column(columnDefinition = "LONGBLOB")
+    private byte[] attachment;
+
+    @Column(name = "attachment_name")
+    private String attachmentName;
+
+    @Column(name = "attachment_type", length = 100)
+    private String attachmentType;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 10)
+    private OutboxStatus status = OutboxStatus.PENDING;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "sent_at")
+    private LocalDateTime sentAt;
+
+    public OutboxEmail(String recipient, String subject, String body,
+                       byte[] attachment, String attachmentName, String attachmentType) {
+        this.recipient      = recipient;
+        this.subject        = subject;
+        this.body           = body;
+        this.attachment     = attachment;
+        this.attachmentName = attachmentName;
+        this.attachmentType = attachmentType;
+        this.createdAt      = LocalDateTime.now();
+        this.nextAttemptAt  = this.createdAt;
+    }
+
+    public void sent(LocalDateTime when) {
+        this.status    = OutboxStatus.SENT;
+        this.attempts++;
+        this.sentAt    = when;
+        this.lastError = null;
+    }
+
+    //puts a claimed email back without counting an attempt, e.g. when the rate limit holds it
+    public void deferred(LocalDateTime next) {
+        this.status        = OutboxStatus.PENDING;
+        this.nextAttemptAt = next;
+    }
+
+    //schedules another attempt, or dead-letters the email when next is null
+    public void failed(String error, LocalDateTime next) {
+        this.attempts++;
+        this.lastError = error == null ? null : error.substring(0, Math.min(error.length(), 500));
+        if (next == null) {
+            this.status = OutboxStatus.DEAD;
+        } else {
+            this.status        = OutboxStatus.PENDING;
+            this.nextAttemptAt = next;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.invoiceapp.entity;
+
+
+//life cycle of an outgoing email in the outbox
+public enum OutboxStatus {
+    PENDING,   //waiting for its first or next attempt
+    SENDING,   //claimed by a worker; reclaimed once its lease runs out
+    SENT,
+    DEAD       //gave up after the last attempt
+}
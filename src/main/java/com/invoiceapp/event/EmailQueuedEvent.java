@@ -0,0 +1,5 @@
+package com.invoiceapp.event;
+
+//published when an email is written to the outbox; the dispatcher picks it up after commit
+public record EmailQueuedEvent(Long outboxId) {
+}
@@ -0,0 +1,8 @@
+package com.invoiceapp.event;
+
+import com.invoiceapp.entity.InvoiceStatus;
+
+//published whenever an invoice's status, amount or visibility changes; listeners that cache
+//per-user data act on it after the surrounding transaction commits
+public record InvoiceChangedEvent(Long userId, Long invoiceId, InvoiceStatus status) {
+}
@@ -0,0 +1,7 @@
+package com.invoiceapp.event;
+
+import java.util.List;
+
+//published when invoices are accepted for sending; the send worker picks them up after commit
+public record InvoiceSendQueuedEvent(List<Long> invoiceIds) {
+}
@@ -0,0 +1,8 @@
+package com.invoiceapp.repository;
+
+import com.invoiceapp.entity.Currency;
+import com.invoiceapp.entity.FxRate;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+//repo for the fx rate table, one row per currency
+public interface FxRateRepository extends JpaRepository<FxRate, Currency> {}
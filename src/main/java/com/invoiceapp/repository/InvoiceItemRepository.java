@@ -0,0 +1,29 @@
+package com.invoiceapp.repository;
+
+import com.invoiceapp.dto.invoice.InvoiceItemRow;
+import com.invoiceapp.entity.InvoiceItem;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+//repo for invoice line items, read on their own only for invoices too large to load whole
+public interface InvoiceItemRepository extends JpaRepository<InvoiceItem, Long> {
+
+    @Query("select count(it) from InvoiceItem it where it.invoice.id = :invoiceId")
+    long countByInvoiceId(@Param("invoiceId") Long invoiceId);
+
+    //next page of an invoice's lines after the last one printed (keyset, so every page costs the same)
+    @Query("""
+       select new com.invoiceapp.dto.invoice.InvoiceItemRow(it.id, it.description, it.quantity, it.unitPrice)
+         from InvoiceItem it
+        where it.invoice.id = :invoiceId
+          and it.id > :afterId
+        order by it.id
+       """)
+    List<InvoiceItemRow> findRowsAfter(@Param("invoiceId") Long invoiceId,
+                                       @Param("afterId") Long afterId,
+                                       Limit limit);
+}
@@ -1,8 +1,69 @@
 package com.invoiceapp.repository;
+import com.invoiceapp.dto.misc.MetricBucket;
 import com.invoiceapp.entity.InvoiceMetric;
+import com.invoiceapp.entity.InvoiceStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.List;
 
 
 //repo class for invoiceMetric entity
-public interface InvoiceMetricRepository extends JpaRepository<InvoiceMetric,Long> {}
+public interface InvoiceMetricRepository extends JpaRepository<InvoiceMetric,Long> {
+
+    //trend buckets: range scan on idx_metric_date_status, grouped in the database,
+    //so only (buckets x statuses) rows ever leave MySQL
+    @Query(value = """
+        select m.snapshot_date as bucket, m.status as status,
+               count(*) as cnt, coalesce(sum(m.amount), 0) as total
+          from invoice_metric m
+         where m.snapshot_date between :from and :to
+         group by m.snapshot_date, m.status
+         order by bucket
+        """, nativeQuery = true)
+    List<MetricBucket> trendByDay(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    //weeks start on Monday
+    @Query(value = """
+        select date_sub(m.snapshot_date, interval weekday(m.snapshot_date) day) as bucket, m.status as status,
+               count(*) as cnt, coalesce(sum(m.amount), 0) as total
+          from invoice_metric m
+         where m.snapshot_date between :from and :to
+         group by date_sub(m.snapshot_date, interval weekday(m.snapshot_date) day), m.status
+         order by bucket
+        """, nativeQuery = true)
+    List<MetricBucket> trendByWeek(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @Query(value = """
+        select date_sub(m.snapshot_date, interval dayofmonth(m.snapshot_date) - 1 day) as bucket, m.status as status,
+               count(*) as cnt, coalesce(sum(m.amount), 0) as total
+          from invoice_metric m
+         where m.snapshot_date between :from and :to
+         group by date_sub(m.snapshot_date, interval dayofmonth(m.snapshot_date) - 1 day), m.status
+         order by bucket
+        """, nativeQuery = true)
+    List<MetricBucket> trendByMonth(@Param("from") LocalDate from, @Param("to") LocalDate to);
 
+    //one snapshot per invoice in the id range (afterId, lastId] that is about to move from status to target
+    //(a chunk of the overdue sweep), written by the database instead of loading the invoices; must run
+    //before the status update
+    @Modifying
+    @Query("""
+        insert into InvoiceMetric (snapshotDate, status, amount)
+        select :day, :target, i.total
+          from Invoice i
+         where i.archived = false
+           and i.status = :status
+           and i.dueDate < :day
+           and i.id > :afterId
+           and i.id <= :lastId
+        """)
+    int snapshotDueBefore(@Param("status") InvoiceStatus status,
+                          @Param("target") InvoiceStatus target,
+                          @Param("day") LocalDate day,
+                          @Param("afterId") Long afterId,
+                          @Param("lastId") Long lastId);
+}
@@ -1,20 +1,28 @@
 package com.invoiceapp.repository;
 
-import com.invoiceapp.entity.Currency;
+import com.invoiceapp.dto.invoice.InvoiceStatusResponse;
+import com.invoiceapp.dto.invoice.OverdueInvoiceRow;
+import com.invoiceapp.dto.misc.AgingRow;
+import com.invoiceapp.dto.misc.RollupDelta;
 import com.invoiceapp.entity.Invoice;
 import com.invoiceapp.entity.InvoiceStatus;
 import com.invoiceapp.entity.User;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
-import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 //repo class for invoice entity
 public interface InvoiceRepository  extends JpaRepository<Invoice, Long> {
 
@@ -24,10 +32,6 @@ public interface InvoiceRepository  extends JpaRepository<Invoice, Long> {
     //Counts the total number of invoices.
     long count();
 
-    //Retrieves all active invoices
-    @Query("select i from Invoice i where i.archived = false and i.status = :status")
-    List<Invoice> findActive(@Param("status") InvoiceStatus status);
-
     //Retrieves a paginated list of non-archived invoices for a user filtered by status.
     Page<Invoice> findByStatusAndUserAndArchivedFalse(InvoiceStatus status, User user, Pageable pageable);
 
@@ -35,46 +39,156 @@ public interface InvoiceRepository  extends JpaRepository<Invoice, Long> {
     Page<Invoice> findByUserAndArchivedFalse(User user, Pageable pageable);
 
 
-    //Finds all overdue invoices (status OVERDUE) that are due on or before the given date and not
+    //Next chunk of non-archived invoices in a status that fell due before a date, by ascending id after a cursor
+    //(keyset paging for the overdue sweep); only the columns of the issuer's digest line are read
     @Query("""
-       select i 
-         from Invoice i 
-        where i.archived = false 
-          and i.status   = 'OVERDUE' 
-          and i.dueDate <= :today
+       select new com.invoiceapp.dto.invoice.OverdueInvoiceRow(i.id, u.email, c.name, i.invoiceNumber, i.dueDate, i.total)
+         from Invoice i
+         join i.client c
+         join i.user u
+        where i.archived = false
+          and i.status   = :status
+          and i.dueDate  < :today
+          and i.id       > :afterId
+        order by i.id
        """)
-    List<Invoice> findSentAndDueOnOrBefore(
+    List<OverdueInvoiceRow> findDueBeforeAfterId(
             @Param("status") InvoiceStatus status,
-            @Param("today") LocalDate today);
+            @Param("today") LocalDate today,
+            @Param("afterId") Long afterId,
+            Limit limit);
+
+    //invoices whose next reminder is due, earliest first; a range scan of idx_invoice_next_reminder,
+    //so a poll only reads rows that are actually due
+    @Query("""
+       select i
+         from Invoice i
+         join fetch i.client
+         join fetch i.user
+        where i.nextReminderAt <= :now
+        order by i.nextReminderAt, i.id
+       """)
+    List<Invoice> findRemindersDue(@Param("now") LocalDateTime now, Limit limit);
+
+    //unpaid invoices that have no reminder scheduled yet (from before the dunning schedule existed)
+    @Query("""
+       select i
+         from Invoice i
+        where i.archived = false
+          and i.status in :statuses
+          and i.nextReminderAt is null
+          and i.paymentIntentAt is null
+          and i.id > :afterId
+        order by i.id
+       """)
+    List<Invoice> findUnscheduledAfterId(@Param("statuses") Collection<InvoiceStatus> statuses,
+                                         @Param("afterId") Long afterId,
+                                         Limit limit);
 
 
 
-    //Finds a paginated list of invoices based on user email.
-    Page<Invoice> findByUserEmail(String username, Pageable pageable);
+    //invoices waiting to be sent in the background: new ones, and ones whose worker died (lease ran out)
+    @Query("""
+       select i.id
+         from Invoice i
+        where i.status = com.invoiceapp.entity.InvoiceStatus.SENDING
+          and i.sendLeaseUntil <= :now
+        order by i.sendLeaseUntil
+       """)
+    List<Long> findSendDueIds(@Param("now") LocalDateTime now, Limit limit);
+
+    //claims a SENDING invoice for one worker; returns 0 if another worker (or node) got it first
+    @Modifying
+    @Query("""
+       update Invoice i
+          set i.sendLeaseUntil = :leaseUntil
+        where i.id = :id
+          and i.status = com.invoiceapp.entity.InvoiceStatus.SENDING
+          and i.sendLeaseUntil <= :now
+       """)
+    int claimSend(@Param("id") Long id,
+                  @Param("now") LocalDateTime now,
+                  @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    //ends a worker's claim before it records the outcome; the lease end it set is its token. Returns 0 if the
+    //lease ran out and another worker claimed the invoice since. The updated row stays locked until commit
+    @Modifying
+    @Query("""
+       update Invoice i
+          set i.sendLeaseUntil = null
+        where i.id = :id
+          and i.status = com.invoiceapp.entity.InvoiceStatus.SENDING
+          and i.sendLeaseUntil = :leaseUntil
+       """)
+    int releaseSend(@Param("id") Long id,
+                    @Param("leaseUntil") LocalDateTime leaseUntil);
 
+    //invoices of a send batch with their items, so the PDFs can be rendered outside the transaction
+    @Query("""
+       select distinct i
+         from Invoice i
+         left join fetch i.items
+        where i.id in :ids
+       """)
+    List<Invoice> findWithItemsByIdIn(@Param("ids") Collection<Long> ids);
 
-    //Counts invoices by status for a user within a specified issue date range
-    long countByStatusAndUserAndArchivedFalseAndIssueDateBetween(
-            InvoiceStatus status, User user, LocalDate from, LocalDate to
-    );
+    //status of each invoice of a bulk send, for progress reporting
+    @Query("""
+       select new com.invoiceapp.dto.invoice.InvoiceStatusResponse(i.id, i.invoiceNumber, i.status, i.sendError)
+         from Invoice i
+        where i.id in :ids
+        order by i.id
+       """)
+    List<InvoiceStatusResponse> findStatuses(@Param("ids") Collection<Long> ids);
 
+    //Finds a paginated list of invoices based on user email.
+    Page<Invoice> findByUserEmail(String username, Pageable pageable);
 
 
-    //Sums total amounts of invoices by status for a user within a specified issue date range (non-archived).
+    //Groups a client's non-archived invoices by rollup key, so they can be taken out of the daily rollup in bulk.
     @Query("""
-      select coalesce(sum(i.total),0) 
-      from Invoice i 
-      where i.status = :status 
-        and i.user = :user 
+      select new com.invoiceapp.dto.misc.RollupDelta(i.user.id, i.issueDate, i.status, i.currency, count(i), sum(i.total))
+      from Invoice i
+      where i.client.id = :clientId
         and i.archived = false
-        and i.issueDate between :from and :to
+      group by i.user.id, i.issueDate, i.status, i.currency
     """)
-    BigDecimal sumTotalByStatusAndUserAndArchivedFalseAndIssueDateBetween(
-            @Param("status") InvoiceStatus status,
-            @Param("user")   User user,
-            @Param("from")   LocalDate from,
-            @Param("to")     LocalDate to
-    );
+    List<RollupDelta> rollupDeltasForClient(@Param("clientId") Long clientId);
+
+    //Groups the non-archived invoices in a status that fell due before a date by rollup key, within an id range
+    //(afterId, lastId] (one chunk of the overdue sweep).
+    @Query("""
+      select new com.invoiceapp.dto.misc.RollupDelta(i.user.id, i.issueDate, i.status, i.currency, count(i), sum(i.total))
+      from Invoice i
+      where i.archived = false
+        and i.status = :status
+        and i.dueDate < :today
+        and i.id > :afterId
+        and i.id <= :lastId
+      group by i.user.id, i.issueDate, i.status, i.currency
+    """)
+    List<RollupDelta> rollupDeltasDueBefore(@Param("status") InvoiceStatus status,
+                                            @Param("today") LocalDate today,
+                                            @Param("afterId") Long afterId,
+                                            @Param("lastId") Long lastId);
+
+    //Moves the non-archived invoices in a status that fell due before a date, within an id range (afterId, lastId],
+    //to another status in one statement.
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("""
+      update Invoice i
+         set i.status = :target
+       where i.archived = false
+         and i.status = :status
+         and i.dueDate < :today
+         and i.id > :afterId
+         and i.id <= :lastId
+    """)
+    int transitionDueBefore(@Param("status") InvoiceStatus status,
+                            @Param("target") InvoiceStatus target,
+                            @Param("today") LocalDate today,
+                            @Param("afterId") Long afterId,
+                            @Param("lastId") Long lastId);
 
     //Counts non-archived invoices for a client by a set of statuses
     long countByClientIdAndStatusInAndArchivedFalse(
@@ -87,24 +201,6 @@ public interface InvoiceRepository  extends JpaRepository<Invoice, Long> {
 
 
 
-    //Sums total amounts of invoices by status and currency for a user within a specified issue date range (non-archived).
-    @Query("""
-      select sum(i.total)
-      from Invoice i
-      where i.status      = :status
-        and i.user        = :user
-        and i.currency    = :currency
-        and i.archived    = false
-        and i.issueDate  between :from and :to
-    """)
-    BigDecimal sumTotalByStatusAndUserAndCurrencyAndArchivedFalseAndIssueDateBetween(
-            @Param("status")   InvoiceStatus status,
-            @Param("user")     User        user,
-            @Param("currency") Currency    currency,
-            @Param("from")     LocalDate   from,
-            @Param("to")       LocalDate   to);
-
-
     // returns e.g. "INV-00042" or empty if none yet
     // Finds the highest invoice number for a user or creates the first one if empty.
     @Query("""
@@ -113,7 +209,37 @@ public interface InvoiceRepository  extends JpaRepository<Invoice, Long> {
        where i.user = :user""")
     Optional<String> findMaxInvoiceNumberForUser(@Param("user") User user);
 
-}
-
-
 
+    //receivables aging: one row per (client, currency), buckets cut by due date in the database.
+    //cut-offs are passed in (asOf - 30/60/90 days) so the query stays portable and uses idx_invoice_user_status_due
+    String AGING_QUERY = """
+        select new com.invoiceapp.dto.misc.AgingRow(
+                 c.id, c.name, i.currency, count(i),
+                 coalesce(sum(case when i.dueDate >= :d30 then i.total else 0 end), 0),
+                 coalesce(sum(case when i.dueDate <  :d30 and i.dueDate >= :d60 then i.total else 0 end), 0),
+                 coalesce(sum(case when i.dueDate <  :d60 and i.dueDate >= :d90 then i.total else 0 end), 0),
+                 coalesce(sum(case when i.dueDate <  :d90 then i.total else 0 end), 0))
+          from Invoice i join i.client c
+         where i.user = :user
+           and i.status in :statuses
+           and i.archived = false
+         group by c.id, c.name, i.currency
+         order by c.name, i.currency
+        """;
+
+    @Query(AGING_QUERY)
+    List<AgingRow> aging(@Param("user") User user,
+                         @Param("statuses") Collection<InvoiceStatus> statuses,
+                         @Param("d30") LocalDate d30,
+                         @Param("d60") LocalDate d60,
+                         @Param("d90") LocalDate d90);
+
+    //same report as a forward-only stream for the CSV export (MySQL streams rows with fetch size MIN_VALUE)
+    @Query(AGING_QUERY)
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    Stream<AgingRow> streamAging(@Param("user") User user,
+                                 @Param("statuses") Collection<InvoiceStatus> statuses,
+                                 @Param("d30") LocalDate d30,
+                                 @Param("d60") LocalDate d60,
+                                 @Param("d90") LocalDate d90);
+}
@@ -0,0 +1,72 @@
+package com.invoiceapp.repository;
+
+import com.invoiceapp.dto.misc.StatusCurrencyTotal;
+import com.invoiceapp.dto.misc.UserStatusCurrencyTotal;
+import com.invoiceapp.entity.InvoiceDailyRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+//repo class for the per-user daily rollup
+public interface InvoiceRollupRepository extends JpaRepository<InvoiceDailyRollup, Long> {
+
+    //Adds (or subtracts, with negative values) a delta to one rollup bucket, creating the bucket if needed.
+    @Modifying
+    @Query(value = """
+      insert into invoice_daily_rollup (user_id, rollup_day, status, currency, invoice_count, total_amount)
+      values (:userId, :day, :status, :currency, :count, :amount)
+      on duplicate key update
+        invoice_count = invoice_count + values(invoice_count),
+        total_amount  = total_amount  + values(total_amount)
+    """, nativeQuery = true)
+    int upsert(@Param("userId")   Long userId,
+               @Param("day")      LocalDate day,
+               @Param("status")   String status,
+               @Param("currency") String currency,
+               @Param("count")    long count,
+               @Param("amount")   BigDecimal amount);
+
+    //Sums the rollup rows of a user within a day range, grouped by status and currency.
+    @Query("""
+      select new com.invoiceapp.dto.misc.StatusCurrencyTotal(r.status, r.currency, sum(r.invoiceCount), sum(r.totalAmount))
+      from InvoiceDailyRollup r
+      where r.userId = :userId
+        and r.day between :from and :to
+      group by r.status, r.currency
+    """)
+    List<StatusCurrencyTotal> aggregateByStatusAndCurrency(
+            @Param("userId") Long userId,
+            @Param("from")   LocalDate from,
+            @Param("to")     LocalDate to
+    );
+
+    //Same sums for every user at once (admin overview): one scan, at most users x statuses x currencies rows.
+    @Query("""
+      select new com.invoiceapp.dto.misc.UserStatusCurrencyTotal(r.userId, r.status, r.currency, sum(r.invoiceCount), sum(r.totalAmount))
+      from InvoiceDailyRollup r
+      where r.day between :from and :to
+      group by r.userId, r.status, r.currency
+    """)
+    List<UserStatusCurrencyTotal> aggregateByUserStatusAndCurrency(
+            @Param("from") LocalDate from,
+            @Param("to")   LocalDate to
+    );
+
+    //Rebuilds every bucket from the invoice table (used to backfill an empty rollup).
+    @Modifying
+    @Query(value = """
+      insert into invoice_daily_rollup (user_id, rollup_day, status, currency, invoice_count, total_amount)
+      select i.user_id, i.issue_date, i.status, i.currency, count(*), sum(i.total)
+      from invoice i
+      where i.archived = false
+        and i.issue_date is not null
+        and i.currency is not null
+      group by i.user_id, i.issue_date, i.status, i.currency
+    """, nativeQuery = true)
+    int backfillFromInvoices();
+}
@@ -0,0 +1,7 @@
+package com.invoiceapp.repository;
+
+import com.invoiceapp.entity.JobCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+//repo for batch job checkpoints, one row per job
+public interface JobCheckpointRepository extends JpaRepository<JobCheckpoint, String> {}
@@ -0,0 +1,63 @@
+package com.invoiceapp.repository;
+
+import com.invoiceapp.entity.JobLock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+
+//repo for scheduled job leases; every method is a single conditional statement, so the database arbitrates.
+//lease times come from the database clock (local datetime), so clock skew between nodes cannot hand a
+//live lease to a second node
+public interface JobLockRepository extends JpaRepository<JobLock, String> {
+
+    //creates the (expired, unowned) lock row the first time a job runs; a no-op afterwards
+    @Modifying
+    @Query(value = """
+      insert into job_lock (job_name, holder, locked_until, heartbeat_at)
+      values (:job, '', :epoch, :epoch)
+      on duplicate key update job_name = job_name
+    """, nativeQuery = true)
+    int ensureExists(@Param("job") String job, @Param("epoch") LocalDateTime epoch);
+
+    //takes the lease if it expired (or is already ours); 1 = acquired
+    @Modifying
+    @Query("""
+      update JobLock l
+         set l.holder = :holder,
+             l.lockedUntil = local datetime + (cast(:leaseMillis as Long) * 1000000) nanosecond,
+             l.heartbeatAt = local datetime
+       where l.jobName = :job
+         and (l.lockedUntil < local datetime or l.holder = :holder)
+    """)
+    int acquire(@Param("job") String job,
+                @Param("holder") String holder,
+                @Param("leaseMillis") long leaseMillis);
+
+    //heartbeat: pushes our lease out; 0 means someone else took over after it lapsed
+    @Modifying
+    @Query("""
+      update JobLock l
+         set l.lockedUntil = local datetime + (cast(:leaseMillis as Long) * 1000000) nanosecond,
+             l.heartbeatAt = local datetime
+       where l.jobName = :job
+         and l.holder = :holder
+         and l.lockedUntil >= local datetime
+    """)
+    int extend(@Param("job") String job,
+               @Param("holder") String holder,
+               @Param("leaseMillis") long leaseMillis);
+
+    //lets the next run (on any node) start right away
+    @Modifying
+    @Query("""
+      update JobLock l
+         set l.lockedUntil = local datetime
+       where l.jobName = :job
+         and l.holder = :holder
+    """)
+    int release(@Param("job") String job,
+                @Param("holder") String holder);
+}
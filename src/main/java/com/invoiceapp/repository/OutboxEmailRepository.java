@@ -0,0 +1,46 @@
+package com.invoiceapp.repository;
+
+import com.invoiceapp.entity.OutboxEmail;
+import com.invoiceapp.entity.OutboxStatus;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+//repo for the email outbox
+public interface OutboxEmailRepository extends JpaRepository<OutboxEmail, Long> {
+
+    //ids of emails that are due: pending ones whose backoff ran out, and claimed ones whose lease expired
+    @Query("""
+      select e.id
+        from OutboxEmail e
+       where e.status in :statuses
+         and e.nextAttemptAt <= :now
+       order by e.nextAttemptAt
+    """)
+    List<Long> findDueIds(@Param("statuses") Collection<OutboxStatus> statuses,
+                          @Param("now") LocalDateTime now,
+                          Limit limit);
+
+    //claims a due email for one worker; returns 0 if another worker (or node) got it first
+    @Modifying
+    @Query("""
+      update OutboxEmail e
+         set e.status = com.invoiceapp.entity.OutboxStatus.SENDING,
+             e.nextAttemptAt = :leaseUntil
+       where e.id = :id
+         and e.status in :statuses
+         and e.nextAttemptAt <= :now
+    """)
+    int claim(@Param("id") Long id,
+              @Param("statuses") Collection<OutboxStatus> statuses,
+              @Param("now") LocalDateTime now,
+              @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    long countByStatus(OutboxStatus status);
+}
@@ -44,6 +44,7 @@ public class SecurityConfig {
                                 "/login", "/register",
                                 "/public/**", "/error"
                         ).permitAll()
+                        .requestMatchers("/actuator/metrics/**").hasRole("ADMIN")
                         .requestMatchers("/admin/**", "/api/v1/**").authenticated()
                         .anyRequest().authenticated()
                 )
@@ -0,0 +1,118 @@
+package com.invoiceapp.service;
+
+import com.invoiceapp.dto.misc.UserOverviewRow;
+import com.invoiceapp.dto.misc.UserStatusCurrencyTotal;
+import com.invoiceapp.entity.Currency;
+import com.invoiceapp.entity.InvoiceStatus;
+import com.invoiceapp.entity.User;
+import com.invoiceapp.repository.InvoiceRollupRepository;
+import com.invoiceapp.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+public class AdminOverviewService {
+
+    //sortable columns of the overview page
+    public static final Set<String> SORTABLE = Set.of("email", "invoices", "overdue", "revenue", "outstanding");
+
+    private static final Map<String, Comparator<UserOverviewRow>> COMPARATORS = Map.of(
+            "email",       Comparator.comparing(UserOverviewRow::email, String.CASE_INSENSITIVE_ORDER),
+            "invoices",    Comparator.comparingLong(UserOverviewRow::invoices),
+            "overdue",     Comparator.comparingLong(UserOverviewRow::overdue),
+            "revenue",     Comparator.comparing(UserOverviewRow::revenue),
+            "outstanding", Comparator.comparing(UserOverviewRow::outstanding)
+    );
+
+    //billed but unpaid; an invoice still being sent is already billed
+    private static final Set<InvoiceStatus> OUTSTANDING =
+            EnumSet.of(InvoiceStatus.SENDING, InvoiceStatus.SENT, InvoiceStatus.OVERDUE);
+
+    private final InvoiceRollupRepository rollupRepo;
+    private final UserRepository userRepo;
+    private final FxRateService fxRateService;
+
+    /**
+     * Per-user totals for every user, from one grouped scan of the daily rollup.
+     * Amounts are converted into {@code base} once per (user, currency) sum; currencies without
+     * a rate are skipped (the page shows which). Sorting and paging happen in memory on the
+     * already-folded rows, which is a few thousand small records at most.
+     */
+    public Page<UserOverviewRow> overview(LocalDate from, LocalDate to, Currency base, Pageable pageable) {
+        log.info("Building admin overview from {} to {} in {} ({})", from, to, base, pageable);
+        List<UserStatusCurrencyTotal> rows = rollupRepo.aggregateByUserStatusAndCurrency(from, to);
+        FxRates rates = fxRateService.current();
+
+        Map<Long, Acc> byUser = new HashMap<>();
+        for (UserStatusCurrencyTotal r : rows) {
+            Acc acc = byUser.computeIfAbsent(r.userId(), id -> new Acc());
+            long count = r.count() != null ? r.count() : 0L;
+            acc.invoices += count;
+            if (r.status() == InvoiceStatus.OVERDUE) {
+                acc.overdue += count;
+            }
+            BigDecimal amount = r.total() != null ? r.total() : BigDecimal.ZERO;
+            if (r.status() == InvoiceStatus.PAID) {
+                acc.revenue = acc.revenue.add(convert(rates, amount, r.currency(), base));
+            } else if (OUTSTANDING.contains(r.status())) {
+                acc.outstanding = acc.outstanding.add(convert(rates, amount, r.currency(), base));
+            }
+        }
+
+        //every user is listed, including those without invoices in the range
+        List<UserOverviewRow> all = new ArrayList<>();
+        for (User u : userRepo.findAll()) {
+            Acc acc = byUser.getOrDefault(u.getId(), Acc.EMPTY);
+            all.add(new UserOverviewRow(u.getId(), u.getEmail(), acc.invoices, acc.overdue, acc.revenue, acc.outstanding));
+        }
+
+        all.sort(comparator(pageable.getSort()));
+        int start = (int) Math.min(pageable.getOffset(), all.size());
+        int end = Math.min(start + pageable.getPageSize(), all.size());
+        log.info("Admin overview: {} rollup row(s) folded into {} user(s)", rows.size(), all.size());
+        return new PageImpl<>(all.subList(start, end), pageable, all.size());
+    }
+
+    private static BigDecimal convert(FxRates rates, BigDecimal amount, Currency from, Currency base) {
+        if (amount.signum() == 0 || from == null) {
+            return BigDecimal.ZERO;
+        }
+        return rates.convert(amount, from, base).orElse(BigDecimal.ZERO);
+    }
+
+    //first sort order wins, ties are broken by email so paging is stable
+    private static Comparator<UserOverviewRow> comparator(Sort sort) {
+        Comparator<UserOverviewRow> byEmail = COMPARATORS.get("email");
+        Comparator<UserOverviewRow> result = null;
+        for (Sort.Order o : sort) {
+            Comparator<UserOverviewRow> c = COMPARATORS.get(o.getProperty());
+            if (c == null) {
+                continue;
+            }
+            c = o.isAscending() ? c : c.reversed();
+            result = result == null ? c : result.thenComparing(c);
+        }
+        return result == null ? byEmail : result.thenComparing(byEmail);
+    }
+
+    private static final class Acc {
+        static final Acc EMPTY = new Acc();
+        long invoices;
+        long overdue;
+        BigDecimal revenue = BigDecimal.ZERO;
+        BigDecimal outstanding = BigDecimal.ZERO;
+    }
+}
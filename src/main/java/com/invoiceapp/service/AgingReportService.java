@@ -0,0 +1,102 @@
+package com.invoiceapp.service;
+
+import com.invoiceapp.dto.misc.AgingRow;
+import com.invoiceapp.entity.Currency;
+import com.invoiceapp.entity.InvoiceStatus;
+import com.invoiceapp.entity.User;
+import com.invoiceapp.repository.InvoiceRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+public class AgingReportService {
+
+    //only invoices the client still owes
+    static final Set<InvoiceStatus> OPEN = Set.of(InvoiceStatus.SENT, InvoiceStatus.OVERDUE);
+
+    private final InvoiceRepository invoiceRepo;
+
+    //aging rows of the user as of the given day (not-yet-due invoices count as 0 days past due)
+    public List<AgingRow> report(User user, LocalDate asOf) {
+        log.info("Building aging report for user {} as of {}", user.getEmail(), asOf);
+        List<AgingRow> rows = invoiceRepo.aging(user, OPEN,
+                asOf.minusDays(30), asOf.minusDays(60), asOf.minusDays(90));
+        log.info("Aging report for user {}: {} client/currency row(s)", user.getEmail(), rows.size());
+        return rows;
+    }
+
+    //sums the rows per currency for the page footer (amounts in different currencies are never added up)
+    public static Map<Currency, AgingRow> totalsByCurrency(List<AgingRow> rows) {
+        Map<Currency, AgingRow> totals = new EnumMap<>(Currency.class);
+        for (AgingRow r : rows) {
+            totals.merge(r.currency(), r, (a, b) -> new AgingRow(null, "Total", a.currency(),
+                    a.invoiceCount() + b.invoiceCount(),
+                    a.days0to30().add(b.days0to30()),
+                    a.days31to60().add(b.days31to60()),
+                    a.days61to90().add(b.days61to90()),
+                    a.days90plus().add(b.days90plus())));
+        }
+        return totals;
+    }
+
+    //streams the report as CSV straight from the result set, so memory stays flat however many clients there are
+    public void writeCsv(User user, LocalDate asOf, OutputStream out) {
+        log.info("Streaming aging CSV for user {} as of {}", user.getEmail(), asOf);
+        AtomicInteger count = new AtomicInteger();
+        Writer w = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        try (Stream<AgingRow> rows = invoiceRepo.streamAging(user, OPEN,
+                asOf.minusDays(30), asOf.minusDays(60), asOf.minusDays(90))) {
+            w.write("client,currency,invoices,0-30,31-60,61-90,90+,total\n");
+            rows.forEach(r -> {
+                try {
+                    w.write(csv(r.clientName()) + ',' + r.currency() + ',' + r.invoiceCount() + ','
+                            + plain(r.days0to30()) + ',' + plain(r.days31to60()) + ','
+                            + plain(r.days61to90()) + ',' + plain(r.days90plus()) + ','
+                            + plain(r.total()) + '\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                count.incrementAndGet();
+            });
+            w.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        log.info("Aging CSV for user {}: {} row(s) written", user.getEmail(), count.get());
+    }
+
+    private static String plain(BigDecimal v) {
+        return v.toPlainString();
+    }
+
+    //quotes a field when it contains a separator, quote or line break
+    private static String csv(String v) {
+        if (v == null) {
+            return "";
+        }
+        if (v.contains(",") || v.contains("\"") || v.contains("\n") || v.contains("\r")) {
+            return '"' + v.replace("\"", "\"\"") + '"';
+        }
+        return v;
+    }
+}
@@ -6,6 +6,7 @@ import com.invoiceapp.dto.client.ClientResponse;
 import com.invoiceapp.entity.Client;
 import com.invoiceapp.entity.InvoiceStatus;
 import com.invoiceapp.entity.User;
+import com.invoiceapp.event.InvoiceChangedEvent;
 import com.invoiceapp.exception.ClientHasActiveInvoicesException;
 import com.invoiceapp.repository.ClientRepository;
 import com.invoiceapp.repository.InvoiceRepository;
@@ -14,6 +15,7 @@ import com.invoiceapp.util.ClientMapper;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.*;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -32,6 +34,8 @@ public class ClientService {
     private final ClientRepository clientRepository;
     private final InvoiceRepository invoiceRepository;
     private final UserProvider userProvider;
+    private final InvoiceRollupService rollupService;
+    private final ApplicationEventPublisher events;
 
 
     //create method
@@ -87,8 +91,10 @@ public class ClientService {
                     return new EntityNotFoundException("Client not found or access denied");
                 });
         blockIfActiveInvoices(id);
+        rollupService.removeAllForClient(id);
         invoiceRepository.deleteAllByClientId(id);
         clientRepository.delete(client);
+        events.publishEvent(new InvoiceChangedEvent(user.getId(), null, null));
         log.info("Client with ID: {} deleted successfully", id);
     }
 
@@ -205,8 +211,10 @@ public class ClientService {
                 .filter(c -> c.getUser().equals(user))
                 .orElseThrow(() -> new EntityNotFoundException("Client not found or access denied"));
         blockIfActiveInvoices(id);
+        rollupService.removeAllForClient(id);
         invoiceRepository.deleteAllByClientId(id);
         clientRepository.delete(client);
+        events.publishEvent(new InvoiceChangedEvent(user.getId(), null, null));
         log.info("Client with ID: {} deleted for user {}", id, user.getEmail());
     }
 
@@ -1,17 +1,21 @@
 package com.invoiceapp.service;
 
 import com.invoiceapp.dto.misc.DashboardStats;
+import com.invoiceapp.dto.misc.StatusCurrencyTotal;
 import com.invoiceapp.entity.Currency;
 import com.invoiceapp.entity.InvoiceStatus;
 import com.invoiceapp.entity.User;
-import com.invoiceapp.repository.InvoiceRepository;
+import com.invoiceapp.repository.InvoiceRollupRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static com.invoiceapp.entity.InvoiceStatus.*;
@@ -21,72 +25,79 @@ import static com.invoiceapp.entity.InvoiceStatus.*;
 @RequiredArgsConstructor
 public class DashboardService {
 
-    private final InvoiceRepository repo;
+    private final InvoiceRollupRepository rollupRepo;
+    private final DashboardStatsCache cache;
 
+    //served from the cache until one of the user's invoices changes
+    @Transactional(readOnly = true)
     public DashboardStats getStatsFor(User user, LocalDate from, LocalDate to) {
-        //counts
+        return cache.get(user.getId(), from, to, () -> compute(user, from, to));
+    }
+
+    private DashboardStats compute(User user, LocalDate from, LocalDate to) {
         log.info("Calculating dashboard stats for user: {} from {} to {}", user.getEmail(), from, to);
-        long draft   = repo.countByStatusAndUserAndArchivedFalseAndIssueDateBetween(
-                DRAFT, user, from, to);
-        long sent    = repo.countByStatusAndUserAndArchivedFalseAndIssueDateBetween(
-                SENT, user, from, to);
-        long overdue = repo.countByStatusAndUserAndArchivedFalseAndIssueDateBetween(
-                InvoiceStatus.OVERDUE, user, from, to);
-        long paid    = repo.countByStatusAndUserAndArchivedFalseAndIssueDateBetween(
-                InvoiceStatus.PAID, user, from, to);
-        long totalInvoices = draft + sent + overdue + paid;
-
-        //overall sums (all currencies combined)
-        log.debug("Draft invoices: {}, Sent invoices: {}, Overdue invoices: {}, Paid invoices: {}",
-                draft, sent, overdue, paid);
-
-        BigDecimal revenue   = repo.sumTotalByStatusAndUserAndArchivedFalseAndIssueDateBetween(
-                InvoiceStatus.PAID, user, from, to);
-        BigDecimal sentAmt   = repo.sumTotalByStatusAndUserAndArchivedFalseAndIssueDateBetween(
-                SENT, user, from, to);
-        BigDecimal overdueAmt= repo.sumTotalByStatusAndUserAndArchivedFalseAndIssueDateBetween(
-                InvoiceStatus.OVERDUE, user, from, to);
-
-        revenue    = revenue    != null ? revenue    : BigDecimal.ZERO;
-        sentAmt    = sentAmt    != null ? sentAmt    : BigDecimal.ZERO;
-        overdueAmt = overdueAmt != null ? overdueAmt : BigDecimal.ZERO;
-        BigDecimal outstanding = sentAmt.add(overdueAmt);
 
+        //single grouped query over the daily rollup: one row per (status, currency),
+        //summing at most (days in range x statuses x currencies) rollup rows
+        List<StatusCurrencyTotal> rows = rollupRepo.aggregateByStatusAndCurrency(user.getId(), from, to);
+        DashboardStats stats = build(rows);
 
-        log.debug("Total revenue: {}, Outstanding amount: {}", revenue, outstanding);
-        //per-currency maps (String→BigDecimal)
+        //Log the completion of the stats calculation
+        log.info("Dashboard stats calculated successfully for user: {} ({} aggregate rows)", user.getEmail(), rows.size());
+        return stats;
+    }
+
+    //folds the grouped rows into counts, overall sums and per-currency maps
+    static DashboardStats build(List<StatusCurrencyTotal> rows) {
+        Map<InvoiceStatus, Long> counts = new EnumMap<>(InvoiceStatus.class);
+        Map<InvoiceStatus, BigDecimal> sums = new EnumMap<>(InvoiceStatus.class);
+
+        //per-currency maps (String→BigDecimal), every currency present even if zero
         Map<String, BigDecimal> revByCurrency = new HashMap<>();
         Map<String, BigDecimal> outByCurrency = new HashMap<>();
-
         for (Currency c : Currency.values()) {
-            BigDecimal paidCur = repo.sumTotalByStatusAndUserAndCurrencyAndArchivedFalseAndIssueDateBetween(
-                    InvoiceStatus.PAID, user, c, from, to);
-            BigDecimal sentCur = repo.sumTotalByStatusAndUserAndCurrencyAndArchivedFalseAndIssueDateBetween(
-                    SENT, user, c, from, to);
-            BigDecimal odCur   = repo.sumTotalByStatusAndUserAndCurrencyAndArchivedFalseAndIssueDateBetween(
-                    InvoiceStatus.OVERDUE, user, c, from, to);
-
-            //Log the currency stats
-            log.debug("Currency: {} - Paid: {}, Sent: {}, Overdue: {}",
-                    c.name(), paidCur, sentCur, odCur);
-
-            revByCurrency.put(
-                    c.name(),
-                    paidCur != null ? paidCur : BigDecimal.ZERO
-            );
-            outByCurrency.put(
-                    c.name(),
-                    (sentCur    != null ? sentCur    : BigDecimal.ZERO)
-                            .add(odCur      != null ? odCur      : BigDecimal.ZERO)
-            );
+            revByCurrency.put(c.name(), BigDecimal.ZERO);
+            outByCurrency.put(c.name(), BigDecimal.ZERO);
         }
 
-        //Log the completion of the stats calculation
-        log.info("Dashboard stats calculated successfully for user: {}", user.getEmail());
+        for (StatusCurrencyTotal row : rows) {
+            long count = row.count() != null ? row.count() : 0L;
+            BigDecimal total = row.total() != null ? row.total() : BigDecimal.ZERO;
+            log.debug("Status: {} - Currency: {} - Count: {}, Total: {}", row.status(), row.currency(), count, total);
+
+            counts.merge(row.status(), count, Long::sum);
+            sums.merge(row.status(), total, BigDecimal::add);
+
+            if (row.currency() == null) {
+                continue;
+            }
+            if (row.status() == PAID) {
+                revByCurrency.merge(row.currency().name(), total, BigDecimal::add);
+            } else if (row.status() == SENDING || row.status() == SENT || row.status() == OVERDUE) {
+                outByCurrency.merge(row.currency().name(), total, BigDecimal::add);
+            }
+        }
+
+        //invoices still being sent count as sent; failed sends were never delivered and are shown apart
+        long draft      = counts.getOrDefault(DRAFT, 0L);
+        long sent       = counts.getOrDefault(SENT, 0L) + counts.getOrDefault(SENDING, 0L);
+        long overdue    = counts.getOrDefault(OVERDUE, 0L);
+        long paid       = counts.getOrDefault(PAID, 0L);
+        long sendFailed = counts.getOrDefault(SEND_FAILED, 0L);
+        long totalInvoices = draft + sent + overdue + paid + sendFailed;
+
+        BigDecimal revenue     = sums.getOrDefault(PAID, BigDecimal.ZERO);
+        BigDecimal outstanding = sums.getOrDefault(SENT, BigDecimal.ZERO)
+                .add(sums.getOrDefault(SENDING, BigDecimal.ZERO))
+                .add(sums.getOrDefault(OVERDUE, BigDecimal.ZERO));
+
+        log.debug("Draft invoices: {}, Sent invoices: {}, Overdue invoices: {}, Paid invoices: {}, Failed sends: {}",
+                draft, sent, overdue, paid, sendFailed);
+        log.debug("Total revenue: {}, Outstanding amount: {}", revenue, outstanding);
 
         return new DashboardStats(
                 totalInvoices,
-                draft, sent, overdue, paid,
+                draft, sent, overdue, paid, sendFailed,
                 revenue, outstanding,
                 revByCurrency, outByCurrency
         );
@@ -0,0 +1,139 @@
+package com.invoiceapp.service;
+
+import com.invoiceapp.dto.misc.DashboardStats;
+import com.invoiceapp.event.InvoiceChangedEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Size-bounded LRU cache of {@link DashboardStats} keyed by (userId, from, to).
+ *
+ * Entries of a user are dropped when an {@link InvoiceChangedEvent} for that user commits.
+ * A per-user generation number stops a computation that raced with such a commit from
+ * putting its (already stale) result into the cache.
+ *
+ * The cache and those events are local to one instance: a change committed on another node
+ * does not reach it. Entries therefore also expire after {@code ttl}, which bounds how stale a
+ * dashboard can be when several instances run.
+ *
+ * Exposed through Micrometer as cache.gets{result=hit|miss}, cache.evictions and cache.size
+ * with tag cache=dashboardStats.
+ */
+@Slf4j
+@Component
+public class DashboardStatsCache {
+
+    private record Key(Long userId, LocalDate from, LocalDate to) {}
+
+    private record Entry(DashboardStats stats, long loadedAt) {}
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final Map<Key, Entry> entries;
+    private final Map<Long, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public DashboardStatsCache(@Value("${invoiceapp.dashboard.cache.max-entries:1000}") int maxEntries,
+                               @Value("${invoiceapp.dashboard.cache.ttl:30s}") Duration ttl,
+                               MeterRegistry registry) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        //access-ordered LinkedHashMap: the eldest entry is the least recently used one
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                boolean full = size() > DashboardStatsCache.this.maxEntries;
+                if (full) {
+                    evictions.increment();
+                }
+                return full;
+            }
+        };
+
+        FunctionCounter.builder("cache.gets", hits, LongAdder::sum)
+                .tags("cache", "dashboardStats", "result", "hit").register(registry);
+        FunctionCounter.builder("cache.gets", misses, LongAdder::sum)
+                .tags("cache", "dashboardStats", "result", "miss").register(registry);
+        FunctionCounter.builder("cache.evictions", evictions, LongAdder::sum)
+                .tags("cache", "dashboardStats").register(registry);
+        Gauge.builder("cache.size", this, DashboardStatsCache::size)
+                .tags("cache", "dashboardStats").register(registry);
+    }
+
+    //returns the cached stats or computes, stores and returns them
+    public DashboardStats get(Long userId, LocalDate from, LocalDate to, Supplier<DashboardStats> loader) {
+        Key key = new Key(userId, from, to);
+        Entry cached;
+        synchronized (entries) {
+            cached = entries.get(key);
+        }
+        if (cached != null && System.nanoTime() - cached.loadedAt() < ttlNanos) {
+            hits.increment();
+            return cached.stats();
+        }
+        misses.increment();
+
+        //computed outside the lock so one slow user does not block everybody else
+        long generation = generation(userId).get();
+        long loadedAt = System.nanoTime();
+        DashboardStats stats = loader.get();
+        synchronized (entries) {
+            if (generation(userId).get() == generation) {
+                entries.put(key, new Entry(stats, loadedAt));
+            }
+        }
+        return stats;
+    }
+
+    //drops every cached range of the user
+    public void invalidate(Long userId) {
+        generation(userId).incrementAndGet();
+        int removed;
+        synchronized (entries) {
+            int before = entries.size();
+            entries.keySet().removeIf(k -> k.userId().equals(userId));
+            removed = before - entries.size();
+        }
+        log.debug("Invalidated {} dashboard stats entr(y/ies) for user {}", removed, userId);
+    }
+
+    //fallbackExecution: changes made outside a transaction (tests, scripts) still invalidate;
+    //ordered first so listeners that reload stats after a commit never read the old entry
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onInvoiceChanged(InvoiceChangedEvent event) {
+        if (event.userId() != null) {
+            invalidate(event.userId());
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private AtomicLong generation(Long userId) {
+        return generations.computeIfAbsent(userId, id -> new AtomicLong());
+    }
+}
@@ -0,0 +1,182 @@
+package com.invoiceapp.service;
+
+import com.invoiceapp.dto.misc.DashboardStats;
+import com.invoiceapp.dto.misc.DashboardStatsDelta;
+import com.invoiceapp.entity.User;
+import com.invoiceapp.event.InvoiceChangedEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Open dashboard connections (Server-Sent Events), grouped by user.
+ *
+ * An emitter is an async request: the Tomcat worker returns to the pool as soon as the
+ * handler returns, so an idle dashboard only costs a socket and one small object here.
+ * When an {@link InvoiceChangedEvent} of a user commits, that user's stats are reloaded on the
+ * dashboard stream executor and only the fields that changed are pushed. Bursts (the overdue sweep)
+ * are coalesced: at most one reload per user is queued at a time. When that executor is full the
+ * write is skipped rather than run on the caller: the next change or heartbeat catches up.
+ *
+ * Exposed through Micrometer as dashboard.stream.connections.
+ */
+@Slf4j
+@Component
+public class DashboardStreamService {
+
+    static final String EVENT_NAME = "stats";
+
+    private static final class Subscription {
+        private final User user;
+        private final LocalDate from;
+        private final LocalDate to;
+        private final SseEmitter emitter;
+        private volatile DashboardStats last;
+
+        private Subscription(User user, LocalDate from, LocalDate to, SseEmitter emitter) {
+            this.user = user;
+            this.from = from;
+            this.to = to;
+            this.emitter = emitter;
+        }
+    }
+
+    private final DashboardService dashboardService;
+    private final Executor executor;
+    private final Duration timeout;
+    private final Map<Long, Set<Subscription>> subscribers = new ConcurrentHashMap<>();
+    //latest not-yet-pushed change per user; presence means a reload is already queued
+    private final Map<Long, InvoiceChangedEvent> pending = new ConcurrentHashMap<>();
+    //users whose heartbeat is queued or still being written
+    private final Set<Long> beating = ConcurrentHashMap.newKeySet();
+
+    public DashboardStreamService(DashboardService dashboardService,
+                                  @Qualifier("dashboardStreamExecutor") Executor executor,
+                                  @Value("${invoiceapp.dashboard.stream.timeout:30m}") Duration timeout,
+                                  MeterRegistry registry) {
+        this.dashboardService = dashboardService;
+        this.executor = executor;
+        this.timeout = timeout;
+        Gauge.builder("dashboard.stream.connections", this, DashboardStreamService::connections)
+                .register(registry);
+    }
+
+    //opens a stream for the user's dashboard over [from, to]; the current stats are the baseline for deltas
+    public SseEmitter subscribe(User user, LocalDate from, LocalDate to) {
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        Subscription sub = new Subscription(user, from, to, emitter);
+        sub.last = dashboardService.getStatsFor(user, from, to);
+
+        subscribers.computeIfAbsent(user.getId(), id -> ConcurrentHashMap.newKeySet()).add(sub);
+        emitter.onCompletion(() -> remove(sub));
+        emitter.onTimeout(() -> remove(sub));
+        emitter.onError(ex -> remove(sub));
+        log.info("Dashboard stream opened for user {} ({} to {}), {} open", user.getEmail(), from, to, connections());
+        return emitter;
+    }
+
+    //runs after DashboardStatsCache has dropped the user's entries, so the reload sees the commit
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onInvoiceChanged(InvoiceChangedEvent event) {
+        Long userId = event.userId();
+        if (userId == null || !subscribers.containsKey(userId)) {
+            return;
+        }
+        if (pending.put(userId, event) == null) {
+            try {
+                executor.execute(() -> push(userId));
+            } catch (RejectedExecutionException ex) {
+                //deltas are taken against the last pushed stats, so the next push carries this change too
+                pending.remove(userId);
+                log.warn("Dashboard stream executor full, skipping the update for user {}", userId);
+            }
+        }
+    }
+
+    //comment line every interval: keeps proxies from closing idle streams and detects dead clients.
+    //Written on the dashboard stream executor, one task per user, so a client that stopped reading holds
+    //up neither the scheduler threads nor other users; a user whose previous heartbeat is still being
+    //written, or who finds the executor full, is skipped until the next interval
+    @Scheduled(fixedDelayString = "${invoiceapp.dashboard.stream.heartbeat-ms:30000}")
+    public void heartbeat() {
+        subscribers.forEach((userId, subs) -> {
+            if (!beating.add(userId)) {
+                return;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        subs.forEach(sub -> send(sub, SseEmitter.event().comment("ping")));
+                    } finally {
+                        beating.remove(userId);
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                beating.remove(userId);
+                log.debug("Dashboard stream executor full, skipping the heartbeat for user {}", userId);
+            }
+        });
+    }
+
+    public int connections() {
+        return subscribers.values().stream().mapToInt(Set::size).sum();
+    }
+
+    private void push(Long userId) {
+        //removed before reloading: a change that commits meanwhile queues another push
+        InvoiceChangedEvent event = pending.remove(userId);
+        Set<Subscription> subs = subscribers.get(userId);
+        if (event == null || subs == null) {
+            return;
+        }
+        for (Subscription sub : subs) {
+            DashboardStats now = dashboardService.getStatsFor(sub.user, sub.from, sub.to);
+            DashboardStatsDelta delta = DashboardStatsDelta.between(event.invoiceId(), event.status(), sub.last, now);
+            sub.last = now;
+            //a payment-link click changes no totals but is still worth showing
+            if (delta.isEmpty() && event.invoiceId() == null) {
+                continue;
+            }
+            send(sub, SseEmitter.event().name(EVENT_NAME).data(delta, MediaType.APPLICATION_JSON));
+        }
+        log.debug("Pushed dashboard update for user {} to {} stream(s)", userId, subs.size());
+    }
+
+    private void send(Subscription sub, SseEmitter.SseEventBuilder event) {
+        try {
+            sub.emitter.send(event);
+        } catch (IOException | IllegalStateException ex) {
+            //client went away; completing triggers onCompletion which unregisters it
+            log.debug("Dropping dashboard stream of user {}: {}", sub.user.getEmail(), ex.getMessage());
+            remove(sub);
+            sub.emitter.completeWithError(ex);
+        }
+    }
+
+    private void remove(Subscription sub) {
+        subscribers.computeIfPresent(sub.user.getId(), (id, subs) -> {
+            subs.remove(sub);
+            return subs.isEmpty() ? null : subs;
+        });
+    }
+}
@@ -0,0 +1,82 @@
+package com.invoiceapp.service;
+
+import com.invoiceapp.entity.Invoice;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * The reminder cadence for unpaid invoices, relative to the due date.
+ *
+ * {@code offsets} are days from the due date (e.g. -3, 0: three days before and on the day), after
+ * the last one a reminder follows every {@code repeat-days} until the invoice is paid. Each invoice
+ * gets its own time of day inside the send window, derived from its id, so reminders spread over
+ * the day instead of all falling due at once.
+ */
+@Slf4j
+@Component
+public class DunningSchedule {
+
+    private final List<Integer> offsets;
+    private final int repeatDays;
+    private final LocalTime windowStart;
+    private final long windowSeconds;
+
+    public DunningSchedule(@Value("${invoiceapp.dunning.offsets:-3,0}") List<Integer> offsets,
+                           @Value("${invoiceapp.dunning.repeat-days:7}") int repeatDays,
+                           @Value("${invoiceapp.dunning.window-start:08:00}") LocalTime windowStart,
+                           @Value("${invoiceapp.dunning.window-end:18:00}") LocalTime windowEnd) {
+        if (offsets.isEmpty() || !windowEnd.isAfter(windowStart)) {
+            throw new IllegalArgumentException("Dunning needs at least one offset and a window that ends after it starts");
+        }
+        this.offsets = offsets.stream().sorted().toList();
+        this.repeatDays = repeatDays;
+        this.windowStart = windowStart;
+        this.windowSeconds = Duration.between(windowStart, windowEnd).toSeconds();
+        log.info("Dunning cadence: days {} from due, then every {} day(s), between {} and {}",
+                this.offsets, repeatDays, windowStart, windowEnd);
+    }
+
+    //the first reminder after now, or null when the cadence has none left
+    public LocalDateTime nextAfter(Invoice inv, LocalDateTime now) {
+        LocalDate due = inv.getDueDate();
+        if (due == null) {
+            return null;
+        }
+        LocalTime slot = slotOf(inv.getId());
+        for (int offset : offsets) {
+            LocalDateTime at = due.plusDays(offset).atTime(slot);
+            if (at.isAfter(now)) {
+                return at;
+            }
+        }
+        if (repeatDays <= 0) {
+            return null;
+        }
+
+        //skip straight to the repeat cycle around now instead of walking every missed one
+        LocalDate last = due.plusDays(offsets.get(offsets.size() - 1));
+        long cycles = Math.max(1, ChronoUnit.DAYS.between(last, now.toLocalDate()) / repeatDays);
+        LocalDateTime at = last.plusDays(cycles * repeatDays).atTime(slot);
+        while (!at.isAfter(now)) {
+            at = at.plusDays(repeatDays);
+        }
+        return at;
+    }
+
+    //the invoice's fixed time of day inside the window
+    LocalTime slotOf(Long id) {
+        if (id == null) {
+            return windowStart;
+        }
+        long spread = Long.hashCode(id * 0x9E3779B97F4A7C15L);
+        return windowStart.plusSeconds(Math.floorMod(spread, windowSeconds));
+    }
+}
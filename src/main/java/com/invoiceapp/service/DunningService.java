@@ -0,0 +1,167 @@
+package com.invoiceapp.service;
+
+import com.invoiceapp.entity.Invoice;
+import com.invoiceapp.entity.InvoiceStatus;
+import com.invoiceapp.repository.InvoiceRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Sends client payment reminders on the {@link DunningSchedule} cadence.
+ *
+ * Every unpaid invoice carries the time of its next reminder (indexed). Each poll takes the due
+ * ones earliest first, in batches of {@code batch-size}, so it reads only invoices that are owed a
+ * reminder and an idle poll is a single index probe. After sending, the invoice is rescheduled to
+ * its next cadence point after now; reminders missed while the app was down are not sent in a burst.
+ * Runs on one node at a time under the job lock and stops early while the email outbox is backed up.
+ * The startup backfill takes its own lock, so only one node of a fleet starting together does it.
+ */
+@Slf4j
+@Service
+public class DunningService {
+
+    static final String DUNNING_JOB = "dunning";
+    static final String BACKFILL_JOB = "dunning-backfill";
+    private static final Set<InvoiceStatus> UNPAID = EnumSet.of(InvoiceStatus.SENT, InvoiceStatus.OVERDUE);
+
+    private final InvoiceRepository invoiceRepo;
+    private final DunningSchedule schedule;
+    private final EmailService emailService;
+    private final JobLockService jobLocks;
+    private final TransactionTemplate tx;
+    private final int batchSize;
+    private final Counter reminderCounter;
+
+    public DunningService(InvoiceRepository invoiceRepo,
+                          DunningSchedule schedule,
+                          EmailService emailService,
+                          JobLockService jobLocks,
+                          TransactionTemplate tx,
+                          @Value("${invoiceapp.dunning.batch-size:100}") int batchSize,
+                          MeterRegistry registry) {
+        this.invoiceRepo = invoiceRepo;
+        this.schedule = schedule;
+        this.emailService = emailService;
+        this.jobLocks = jobLocks;
+        this.tx = tx;
+        this.batchSize = batchSize;
+        this.reminderCounter = Counter.builder("dunning.reminders").register(registry);
+    }
+
+    @Scheduled(fixedDelayString = "${invoiceapp.dunning.poll-ms:60000}")
+    public void poll() {
+        jobLocks.runExclusively(DUNNING_JOB, this::drain);
+    }
+
+    //gives invoices from before the dunning schedule their first reminder time
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        jobLocks.runExclusively(BACKFILL_JOB, this::scheduleExisting);
+    }
+
+    private void scheduleExisting(JobLockService.Lease lease) {
+        long afterId = 0;
+        int scheduled = 0;
+        while (lease.isHeld()) {
+            long cursor = afterId;
+            List<Invoice> batch = tx.execute(status -> {
+                List<Invoice> invoices = invoiceRepo.findUnscheduledAfterId(UNPAID, cursor, Limit.of(batchSize));
+                LocalDateTime now = LocalDateTime.now();
+                invoices.forEach(inv -> inv.setNextReminderAt(schedule.nextAfter(inv, now)));
+                return invoices;
+            });
+            if (batch == null || batch.isEmpty()) {
+                break;
+            }
+            scheduled += batch.size();
+            afterId = batch.get(batch.size() - 1).getId();
+            if (batch.size() < batchSize) {
+                break;
+            }
+        }
+        if (scheduled > 0) {
+            log.info("Dunning: scheduled reminders for {} existing unpaid invoice(s)", scheduled);
+        }
+    }
+
+    private void drain(JobLockService.Lease lease) {
+        int sent = 0;
+        while (lease.isHeld()) {
+            if (emailService.isBackedUp()) {
+                log.info("Dunning: email outbox backed up, leaving the rest for the next poll");
+                break;
+            }
+            LocalDateTime now = LocalDateTime.now();
+            Integer taken = tx.execute(status -> remindDue(now));
+            if (taken == null || taken == 0) {
+                break;
+            }
+            sent += taken;
+            if (taken < batchSize) {
+                break;
+            }
+        }
+        if (sent > 0) {
+            log.info("Dunning: processed {} due reminder(s)", sent);
+        }
+    }
+
+    //one batch of due reminders, sent (queued to the outbox) and rescheduled in one transaction
+    int remindDue(LocalDateTime now) {
+        List<Invoice> due = invoiceRepo.findRemindersDue(now, Limit.of(batchSize));
+        for (Invoice inv : due) {
+            //paid, archived or the client says they paid: no more reminders
+            if (!UNPAID.contains(inv.getStatus()) || inv.isArchived() || inv.getPaymentIntentAt() != null) {
+                inv.setNextReminderAt(null);
+                continue;
+            }
+            sendReminder(inv, now.toLocalDate());
+            inv.setNextReminderAt(schedule.nextAfter(inv, now));
+            reminderCounter.increment();
+        }
+        return due.size();
+    }
+
+    private void sendReminder(Invoice invoice, LocalDate today) {
+        long daysLeft = ChronoUnit.DAYS.between(today, invoice.getDueDate());
+        String subject;
+        String body;
+        if (daysLeft > 0) {
+            subject = "Payment reminder: invoice " + invoice.getInvoiceNumber();
+            body = String.format(
+                    "Dear %s,<br><br>This is a reminder that invoice <strong>%s</strong> for <strong>%s</strong>"
+                            + " is due on %s.<br><br>Thank you.",
+                    invoice.getClient().getName(), invoice.getInvoiceNumber(), invoice.getTotal(), invoice.getDueDate());
+        } else if (daysLeft == 0) {
+            subject = "Invoice " + invoice.getInvoiceNumber() + " is due today";
+            body = String.format(
+                    "Dear %s,<br><br>Invoice <strong>%s</strong> for <strong>%s</strong> is due today."
+                            + "<br><br>Thank you.",
+                    invoice.getClient().getName(), invoice.getInvoiceNumber(), invoice.getTotal());
+        } else {
+            subject = "Overdue Invoice " + invoice.getInvoiceNumber();
+            body = String.format(
+                    "Dear %s,<br><br>Your invoice <strong>%s</strong> due %s for <strong>%s</strong> is now overdue."
+                            + " Please pay as soon as possible.<br><br>Thank you.",
+                    invoice.getClient().getName(), invoice.getInvoiceNumber(), invoice.getDueDate(), invoice.getTotal());
+        }
+        emailService.sendHtml(invoice.getClient().getEmail(), subject, body);
+        log.info("Queued payment reminder ({} day(s) to due) to client {} for invoice {}",
+                daysLeft, invoice.getClient().getEmail(), invoice.getInvoiceNumber());
+    }
+}
@@ -1,79 +1,159 @@
 package com.invoiceapp.service;
 
+import com.invoiceapp.entity.OutboxEmail;
+import com.invoiceapp.entity.OutboxStatus;
+import com.invoiceapp.event.EmailQueuedEvent;
+import com.invoiceapp.repository.OutboxEmailRepository;
+import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
 import jakarta.mail.util.ByteArrayDataSource;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Outgoing mail. The send methods only write the email to the outbox, in the caller's
+ * transaction, so a status change and its email commit (or roll back) together and the caller
+ * never waits for SMTP. {@link OutboxDispatcher} delivers it through {@link #deliverBatch(List)},
+ * which sends over the pooled connections of {@link SmtpTransportPool}.
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class EmailService {
 
     private final JavaMailSender mailSender;
+    private final OutboxEmailRepository outboxRepo;
+    private final ApplicationEventPublisher events;
+    private final SmtpTransportPool transportPool;
 
     // From email
     @Value("${invoiceapp.mail.from}")
     private String from;
 
+    // outbox backlog at which bulk senders should hold off
+    @Value("${invoiceapp.mail.outbox.max-pending:5000}")
+    private long maxPending = 5000;
+
     public void sendInvoice(String to,
                             String subject,
                             String bodyHtml,
                             byte[] pdfBytes,
                             String fileName) {
-        log.info("Preparing to send invoice email to: {} with subject: {}", to, subject);
-        sendMime(to, subject, bodyHtml, pdfBytes, fileName, "application/pdf");
-        log.info("Invoice email sent to: {} with subject: {}", to, subject);
+        log.info("Queueing invoice email to: {} with subject: {}", to, subject);
+        enqueue(to, subject, bodyHtml, pdfBytes, fileName, "application/pdf");
     }
 
     // Used for payment confirmation
     public void simpleNotify(String to, String subject, String text) {
-        log.info("Preparing to send payment notification email to: {} with subject: {}", to, subject);
-        sendMime(to, subject, text, null, null, null);
-        log.info("Payment notification email sent to: {} with subject: {}", to, subject);
+        log.info("Queueing payment notification email to: {} with subject: {}", to, subject);
+        enqueue(to, subject, text, null, null, null);
     }
 
     // Reminder email
     public void sendHtml(String to, String subject, String htmlBody) {
-        log.info("Preparing to send reminder email to: {} with subject: {}", to, subject);
-        sendMime(to, subject, htmlBody, null, null, null);
-        log.info("Reminder email sent to: {} with subject: {}", to, subject);
+        log.info("Queueing reminder email to: {} with subject: {}", to, subject);
+        enqueue(to, subject, htmlBody, null, null, null);
+    }
+
+    //backpressure for callers that queue mail in bulk: true while the outbox has more unsent
+    //emails than it can work off soon, so they should pause instead of adding more
+    public boolean isBackedUp() {
+        long pending = outboxRepo.countByStatus(OutboxStatus.PENDING);
+        if (pending >= maxPending) {
+            log.warn("Email outbox backed up: {} pending (limit {})", pending, maxPending);
+            return true;
+        }
+        return false;
     }
 
-    /* ---- private helper ---- */
-    private void sendMime(String to,
-                          String subject,
-                          String body,
-                          byte[] attachmentBytes,
-                          String attachmentName,
-                          String attachmentType) {
-        try {
-            MimeMessage msg = mailSender.createMimeMessage();
-            MimeMessageHelper h = new MimeMessageHelper(msg, true);
-
-            h.setFrom(from);
-            h.setTo(to);
-            h.setSubject(subject);
-            // Auto‐detect HTML if body contains a tag:
-            h.setText(body, body != null && body.contains("<"));
-
-            if (attachmentBytes != null) {
-                log.info("Attaching file: {} of type: {}", attachmentName, attachmentType);
-                h.addAttachment(
-                        attachmentName,
-                        new ByteArrayDataSource(attachmentBytes, attachmentType)
-                );
+    //SMTP delivery of one outbox email; throws if the mail server refuses it
+    public void deliver(OutboxEmail email) {
+        RuntimeException error = deliverBatch(List.of(email)).get(0);
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    //SMTP delivery of many outbox emails over one pooled connection; the result has one entry
+    //per email, null when it was sent, otherwise why it was not
+    public List<RuntimeException> deliverBatch(List<OutboxEmail> emails) {
+        RuntimeException[] errors = new RuntimeException[emails.size()];
+        List<MimeMessage> messages = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < emails.size(); i++) {
+            OutboxEmail email = emails.get(i);
+            try {
+                messages.add(buildMime(email.getRecipient(), email.getSubject(), email.getBody(),
+                        email.getAttachment(), email.getAttachmentName(), email.getAttachmentType()));
+                positions.add(i);
+            } catch (Exception e) {
+                log.error("Failed to build email to: {} with subject: {}. Error: {}",
+                        email.getRecipient(), email.getSubject(), e.getMessage());
+                errors[i] = new RuntimeException("mail send failed", e);
             }
+        }
+
+        if (!messages.isEmpty()) {
+            List<MessagingException> results = transportPool.sendAll(messages);
+            for (int j = 0; j < results.size(); j++) {
+                OutboxEmail email = emails.get(positions.get(j));
+                if (results.get(j) == null) {
+                    log.info("Successfully sent email to: {} with subject: {}", email.getRecipient(), email.getSubject());
+                } else {
+                    log.error("Failed to send email to: {} with subject: {}. Error: {}",
+                            email.getRecipient(), email.getSubject(), results.get(j).getMessage());
+                    errors[positions.get(j)] = new RuntimeException("mail send failed", results.get(j));
+                }
+            }
+        }
+        return Arrays.asList(errors);
+    }
+
+    /* ---- private helpers ---- */
+    //save joins the caller's transaction when there is one, otherwise commits on its own
+    private void enqueue(String to,
+                         String subject,
+                         String body,
+                         byte[] attachmentBytes,
+                         String attachmentName,
+                         String attachmentType) {
+        OutboxEmail email = outboxRepo.save(
+                new OutboxEmail(to, subject, body, attachmentBytes, attachmentName, attachmentType));
+        events.publishEvent(new EmailQueuedEvent(email.getId()));
+        log.debug("Email {} to {} written to the outbox", email.getId(), to);
+    }
+
+    private MimeMessage buildMime(String to,
+                                  String subject,
+                                  String body,
+                                  byte[] attachmentBytes,
+                                  String attachmentName,
+                                  String attachmentType) throws MessagingException {
+        MimeMessage msg = mailSender.createMimeMessage();
+        MimeMessageHelper h = new MimeMessageHelper(msg, true);
+
+        h.setFrom(from);
+        h.setTo(to);
+        h.setSubject(subject);
+        // Auto‐detect HTML if body contains a tag:
+        h.setText(body, body != null && body.contains("<"));
 
-            mailSender.send(msg);
-            log.info("Successfully sent email to: {} with subject: {}", to, subject);
-        } catch (Exception e) {
-            log.error("Failed to send email to: {} with subject: {}. Error: {}", to, subject, e.getMessage());
-            throw new RuntimeException("mail send failed", e);
+        if (attachmentBytes != null) {
+            log.info("Attaching file: {} of type: {}", attachmentName, attachmentType);
+            h.addAttachment(
+                    attachmentName,
+                    new ByteArrayDataSource(attachmentBytes, attachmentType)
+            );
         }
+        return msg;
     }
 }
@@ -0,0 +1,141 @@
+package com.invoiceapp.service;
+
+import com.invoiceapp.dto.misc.ConsolidatedTotals;
+import com.invoiceapp.dto.misc.DashboardStats;
+import com.invoiceapp.entity.Currency;
+import com.invoiceapp.entity.FxRate;
+import com.invoiceapp.repository.FxRateRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the current {@link FxRates} snapshot and converts per-currency aggregates into a base currency.
+ *
+ * Rates live in the fx_rate table; on startup an empty table is seeded from {@code invoiceapp.fx.file}
+ * (a properties file such as {@code EUR=1.08}, value = USD per unit) when one is configured.
+ * Every update writes the table and then swaps the whole snapshot in one step.
+ */
+@Slf4j
+@Service
+public class FxRateService {
+
+    private final FxRateRepository fxRepo;
+    private final TransactionTemplate tx;
+    private final String seedFile;
+    private final AtomicReference<FxRates> current = new AtomicReference<>(FxRates.EMPTY);
+
+    public FxRateService(FxRateRepository fxRepo,
+                         TransactionTemplate tx,
+                         @Value("${invoiceapp.fx.file:}") String seedFile) {
+        this.fxRepo = fxRepo;
+        this.tx = tx;
+        this.seedFile = seedFile;
+    }
+
+    public FxRates current() {
+        return current.get();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (fxRepo.count() == 0 && !seedFile.isBlank()) {
+            try {
+                importFile(Path.of(seedFile));
+                return;
+            } catch (IOException | IllegalArgumentException e) {
+                log.error("Could not seed fx rates from {}: {}", seedFile, e.getMessage());
+            }
+        }
+        reload();
+    }
+
+    //re-reads the table into a fresh snapshot
+    public void reload() {
+        Map<Currency, BigDecimal> rates = new EnumMap<>(Currency.class);
+        LocalDateTime asOf = null;
+        for (FxRate r : fxRepo.findAll()) {
+            rates.put(r.getCurrency(), r.getUsdPerUnit());
+            if (asOf == null || r.getUpdatedAt().isAfter(asOf)) {
+                asOf = r.getUpdatedAt();
+            }
+        }
+        current.set(new FxRates(rates, asOf));
+        log.info("Loaded {} fx rate(s), as of {}", rates.size(), asOf);
+    }
+
+    //replaces the given rates (admin form / file import) and publishes the new snapshot
+    public void update(Map<Currency, BigDecimal> usdPerUnit) {
+        usdPerUnit.forEach((c, r) -> {
+            if (r == null || r.signum() <= 0) {
+                throw new IllegalArgumentException("Rate for " + c + " must be positive.");
+            }
+        });
+        LocalDateTime now = LocalDateTime.now();
+        tx.executeWithoutResult(s -> usdPerUnit.forEach((c, r) ->
+                fxRepo.save(new FxRate(c, c == Currency.USD ? BigDecimal.ONE : r, now))));
+
+        //build from the previous snapshot so currencies not in this update keep their rate; atomically,
+        //so a concurrent update of other currencies is not overwritten by a stale copy
+        current.updateAndGet(previous -> {
+            Map<Currency, BigDecimal> merged = new EnumMap<>(Currency.class);
+            merged.putAll(previous.usdPerUnit());
+            merged.putAll(usdPerUnit);
+            return new FxRates(merged, now);
+        });
+        log.info("FX rates updated for {}", usdPerUnit.keySet());
+    }
+
+    //reads a properties file of CURRENCY=usdPerUnit lines
+    public void importFile(Path file) throws IOException {
+        Properties props = new Properties();
+        try (Reader r = Files.newBufferedReader(file)) {
+            props.load(r);
+        }
+        Map<Currency, BigDecimal> rates = new EnumMap<>(Currency.class);
+        for (String key : props.stringPropertyNames()) {
+            rates.put(Currency.valueOf(key.trim().toUpperCase()), new BigDecimal(props.getProperty(key).trim()));
+        }
+        log.info("Importing {} fx rate(s) from {}", rates.size(), file);
+        update(rates);
+    }
+
+    //converts the stats' per-currency sums (at most one entry per currency), never individual invoices
+    public ConsolidatedTotals consolidate(DashboardStats stats, Currency base) {
+        FxRates rates = current.get();
+        Set<Currency> missing = EnumSet.noneOf(Currency.class);
+        BigDecimal revenue = sum(stats.getRevenueByCurrency(), base, rates, missing);
+        BigDecimal outstanding = sum(stats.getOutstandingByCurrency(), base, rates, missing);
+        return new ConsolidatedTotals(base, revenue, outstanding, missing, rates.asOf());
+    }
+
+    private static BigDecimal sum(Map<String, BigDecimal> byCurrency, Currency base,
+                                  FxRates rates, Set<Currency> missing) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Map.Entry<String, BigDecimal> e : byCurrency.entrySet()) {
+            if (e.getValue().signum() == 0) {
+                continue;
+            }
+            Currency c = Currency.valueOf(e.getKey());
+            Optional<BigDecimal> converted = rates.convert(e.getValue(), c, base);
+            if (converted.isPresent()) {
+                total = total.add(converted.get());
+            } else {
+                missing.add(c);
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,57 @@
+package com.invoiceapp.service;
+
+import com.invoiceapp.entity.Currency;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Immutable snapshot of the FX rate table. A new snapshot replaces the old one as a whole,
+ * so a request always converts with one consistent set of rates.
+ */
+public final class FxRates {
+
+    public static final FxRates EMPTY = new FxRates(Map.of(), null);
+
+    private final Map<Currency, BigDecimal> usdPerUnit;
+    private final LocalDateTime asOf;
+
+    public FxRates(Map<Currency, BigDecimal> usdPerUnit, LocalDateTime asOf) {
+        Map<Currency, BigDecimal> copy = new EnumMap<>(Currency.class);
+        copy.putAll(usdPerUnit);
+        copy.put(Currency.USD, BigDecimal.ONE);
+        this.usdPerUnit = Collections.unmodifiableMap(copy);
+        this.asOf = asOf;
+    }
+
+    public Map<Currency, BigDecimal> usdPerUnit() {
+        return usdPerUnit;
+    }
+
+    public LocalDateTime asOf() {
+        return asOf;
+    }
+
+    public boolean has(Currency c) {
+        return usdPerUnit.containsKey(c);
+    }
+
+    //amount in 'from' expressed in 'to', rounded to cents; empty when either rate is missing
+    public Optional<BigDecimal> convert(BigDecimal amount, Currency from, Currency to) {
+        if (from == to) {
+            return Optional.of(amount);
+        }
+        BigDecimal f = usdPerUnit.get(from);
+        BigDecimal t = usdPerUnit.get(to);
+        if (f == null || t == null) {
+            return Optional.empty();
+        }
+        return Optional.of(amount.multiply(f).divide(t, MathContext.DECIMAL64).setScale(2, RoundingMode.HALF_EVEN));
+    }
+}
@@ -0,0 +1,371 @@
+package com.invoiceapp.service;
+
+import com.invoiceapp.entity.Invoice;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Rendered invoice and receipt PDFs, kept as files in {@code invoiceapp.pdf.cache.dir}.
+ *
+ * A file is named after the document and the fingerprint of what it prints (see
+ * {@link InvoicePdfService#fingerprint}), e.g. invoice-42-3fa1...pdf, so a status or content change
+ * simply asks for a different file. On a miss the PDF is rendered once, straight into a file next
+ * to the others, and older renderings of the same document are deleted. The store is bounded by
+ * {@code max-size}; beyond it the least recently used files go. Callers stream the file, so neither
+ * a first nor a repeat download holds the whole document on the heap; a download that misses is
+ * rendered into the response and the file at once (see {@link #writeInvoice}). A file can be evicted or
+ * replaced by another request before the response opens it; downloads then look the document up
+ * again (see {@link #invoiceDownload}), and a file already open stays readable when it is deleted.
+ *
+ * Exposed through Micrometer as pdf.cache.hits, pdf.cache.misses, pdf.cache.evictions and the
+ * pdf.cache.bytes gauge.
+ */
+@Slf4j
+@Service
+public class InvoicePdfCache {
+
+    private static final String SUFFIX = ".pdf";
+
+    private final InvoicePdfService pdfService;
+    private final Path dir;
+    private final long maxBytes;
+
+    //file name -> size, in access order: the eldest is the least recently used
+    private final LinkedHashMap<String, Long> files = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictionCounter;
+
+    public InvoicePdfCache(InvoicePdfService pdfService,
+                           @Value("${invoiceapp.pdf.cache.dir:${java.io.tmpdir}/invoiceapp-pdf}") Path dir,
+                           @Value("${invoiceapp.pdf.cache.max-size:256MB}") DataSize maxSize,
+                           MeterRegistry registry) throws IOException {
+        this.pdfService = pdfService;
+        this.dir = Files.createDirectories(dir);
+        this.maxBytes = maxSize.toBytes();
+        this.hitCounter = Counter.builder("pdf.cache.hits").register(registry);
+        this.missCounter = Counter.builder("pdf.cache.misses").register(registry);
+        this.evictionCounter = Counter.builder("pdf.cache.evictions").register(registry);
+        Gauge.builder("pdf.cache.bytes", this, InvoicePdfCache::size).register(registry);
+        load();
+    }
+
+    //the invoice PDF as it prints now
+    public Path invoice(Invoice inv) {
+        return get("invoice-" + inv.getId(), pdfService.fingerprint(inv), out -> pdfService.generate(inv, out));
+    }
+
+    //the payment receipt PDF as it prints now
+    public Path receipt(Invoice inv) {
+        return get("receipt-" + inv.getId(), pdfService.receiptFingerprint(inv), out -> pdfService.generateReceipt(inv, out));
+    }
+
+    //the invoice PDF as a response body when it is already rendered; empty on a miss, see writeInvoice
+    public Optional<Resource> invoiceDownload(Invoice inv) {
+        return Optional.ofNullable(cached("invoice-" + inv.getId(), pdfService.fingerprint(inv)))
+                .map(file -> new CachedPdf(() -> invoice(inv), file));
+    }
+
+    //the payment receipt PDF as a response body when it is already rendered; empty on a miss, see writeReceipt
+    public Optional<Resource> receiptDownload(Invoice inv) {
+        return Optional.ofNullable(cached("receipt-" + inv.getId(), pdfService.receiptFingerprint(inv)))
+                .map(file -> new CachedPdf(() -> receipt(inv), file));
+    }
+
+    //renders the invoice PDF into out as it is cached, so a miss starts sending before the document is complete
+    public void writeInvoice(Invoice inv, OutputStream out) {
+        store("invoice-" + inv.getId(), pdfService.fingerprint(inv), o -> pdfService.generate(inv, o), out);
+    }
+
+    //renders the payment receipt PDF into out as it is cached
+    public void writeReceipt(Invoice inv, OutputStream out) {
+        store("receipt-" + inv.getId(), pdfService.receiptFingerprint(inv), o -> pdfService.generateReceipt(inv, o), out);
+    }
+
+    //the invoice PDF in memory, for an email attachment
+    public byte[] invoiceBytes(Invoice inv) {
+        Path file = invoice(inv);
+        try {
+            try {
+                return Files.readAllBytes(file);
+            } catch (NoSuchFileException e) {
+                file = invoice(inv); //deleted since the lookup
+                return Files.readAllBytes(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read cached PDF " + file, e);
+        }
+    }
+
+    public synchronized long size() {
+        return totalBytes;
+    }
+
+    Path get(String document, String fingerprint, Consumer<OutputStream> render) {
+        Path file = cached(document, fingerprint);
+        return file != null ? file : store(document, fingerprint, render, null);
+    }
+
+    //the stored rendering on a hit, null on a miss
+    private Path cached(String document, String fingerprint) {
+        String name = document + "-" + fingerprint + SUFFIX;
+        Path file = dir.resolve(name);
+        synchronized (this) {
+            if (files.get(name) != null && Files.exists(file)) {
+                hitCounter.increment();
+                return file;
+            }
+        }
+        return null;
+    }
+
+    //renders outside the lock, straight into a temp file so the document never sits on the heap, and into
+    //client as well when there is one; two concurrent misses both render and the last move wins
+    private Path store(String document, String fingerprint, Consumer<OutputStream> render, OutputStream client) {
+        String name = document + "-" + fingerprint + SUFFIX;
+        Path file = dir.resolve(name);
+        missCounter.increment();
+        long bytes;
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(dir, document, ".tmp");
+            OutputStream target = Files.newOutputStream(tmp);
+            if (client != null) {
+                target = new TeeOutputStream(target, client);
+            }
+            try (OutputStream out = new BufferedOutputStream(target)) {
+                render.accept(out);
+            }
+            bytes = Files.size(tmp);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            deleteQuietly(tmp);
+            throw new UncheckedIOException("Could not store PDF " + name, e);
+        } catch (RuntimeException e) {
+            deleteQuietly(tmp);
+            throw e;
+        }
+
+        synchronized (this) {
+            Long previous = files.put(name, bytes);
+            totalBytes += bytes - (previous == null ? 0 : previous);
+            dropOtherVersions(document, name);
+            evictOverflow(name);
+        }
+        log.info("Rendered and cached {} ({} bytes, cache now {} bytes)", name, bytes, totalBytes);
+        return file;
+    }
+
+    //renderings of the document from before its last change
+    private void dropOtherVersions(String document, String current) {
+        String prefix = document + "-";
+        for (Iterator<Map.Entry<String, Long>> it = files.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Long> e = it.next();
+            if (e.getKey().startsWith(prefix) && !e.getKey().equals(current)) {
+                it.remove();
+                remove(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    private void evictOverflow(String keep) {
+        for (Iterator<Map.Entry<String, Long>> it = files.entrySet().iterator(); totalBytes > maxBytes && it.hasNext(); ) {
+            Map.Entry<String, Long> e = it.next();
+            if (!e.getKey().equals(keep)) {
+                it.remove();
+                remove(e.getKey(), e.getValue());
+                evictionCounter.increment();
+            }
+        }
+    }
+
+    //a reader still streaming the file keeps its open handle
+    private void remove(String name, long bytes) {
+        totalBytes -= bytes;
+        deleteQuietly(dir.resolve(name));
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete cached PDF {}: {}", file.getFileName(), e.getMessage());
+        }
+    }
+
+    //picks up the files of an earlier run, oldest first, and trims them to max-size
+    private synchronized void load() throws IOException {
+        List<Path> existing = new ArrayList<>();
+        try (Stream<Path> listing = Files.list(dir)) {
+            listing.forEach(existing::add);
+        }
+        existing.sort(Comparator.comparing(InvoicePdfCache::lastModified));
+        for (Path file : existing) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(".tmp")) {
+                Files.deleteIfExists(file);
+            } else if (name.endsWith(SUFFIX)) {
+                long bytes = Files.size(file);
+                files.put(name, bytes);
+                totalBytes += bytes;
+            }
+        }
+        evictOverflow(null);
+        log.info("PDF cache at {}: {} file(s), {} of {} bytes", dir, files.size(), totalBytes, maxBytes);
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class).lastModifiedTime();
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    //writes to the cache file and the client at once; closing closes only the file, the client stream is the caller's
+    private static final class TeeOutputStream extends OutputStream {
+
+        private final OutputStream file;
+        private final OutputStream client;
+
+        TeeOutputStream(OutputStream file, OutputStream client) {
+            this.file = file;
+            this.client = client;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            file.write(b);
+            client.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            file.write(b, off, len);
+            client.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            file.flush();
+            client.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                file.close();
+            }
+        }
+    }
+
+    //a cached document for one response, as a file resource: it reports isFile() and hands out a FileChannel,
+    //so writers that can transfer a file channel straight to the socket do not copy it through the heap.
+    //The converter opens the file after the controller returned; if it was deleted meanwhile the document
+    //is looked up again, which renders it anew when needed
+    private static final class CachedPdf extends FileSystemResource {
+
+        private final Supplier<Path> lookup;
+        private volatile Path file;
+
+        CachedPdf(Supplier<Path> lookup, Path file) {
+            super(file);
+            this.lookup = lookup;
+            this.file = file;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            try {
+                return Files.newInputStream(file);
+            } catch (NoSuchFileException e) {
+                return Files.newInputStream(lookupAgain());
+            }
+        }
+
+        @Override
+        public ReadableByteChannel readableChannel() throws IOException {
+            try {
+                return FileChannel.open(file, StandardOpenOption.READ);
+            } catch (NoSuchFileException e) {
+                return FileChannel.open(lookupAgain(), StandardOpenOption.READ);
+            }
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            try {
+                return Files.size(file);
+            } catch (NoSuchFileException e) {
+                return Files.size(lookupAgain());
+            }
+        }
+
+        @Override
+        public File getFile() {
+            return file.toFile();
+        }
+
+        @Override
+        public boolean exists() {
+            return true;
+        }
+
+        @Override
+        public boolean isReadable() {
+            return true;
+        }
+
+        @Override
+        public String getFilename() {
+            return file.getFileName().toString();
+        }
+
+        @Override
+        public String getDescription() {
+            return "cached PDF [" + file.getFileName() + "]";
+        }
+
+        private Path lookupAgain() {
+            log.info("Cached PDF {} was removed before it was read, looking it up again", file.getFileName());
+            file = lookup.get();
+            return file;
+        }
+    }
+}
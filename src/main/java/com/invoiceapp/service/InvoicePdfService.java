@@ -1,58 +1,93 @@
 package com.invoiceapp.service;
 
+import com.invoiceapp.dto.invoice.InvoiceItemRow;
 import com.invoiceapp.entity.Invoice;
-import com.invoiceapp.entity.InvoiceItem;
 import com.invoiceapp.entity.InvoiceStatus;
-import com.itextpdf.text.BaseColor;
+import com.invoiceapp.repository.InvoiceItemRepository;
 import com.lowagie.text.*;
 import com.lowagie.text.Font;
 import com.lowagie.text.Rectangle;
 import com.lowagie.text.pdf.*;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
-import java.awt.*;
 import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 
+import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 @Slf4j
 @Service
 public class InvoicePdfService {
 
-    //generate invoice pdf
+    //rows added to the document at a time; finished pages are written out and dropped from the table
+    private static final int FLUSH_ROWS = 200;
+
+    //version of the printed layout, hashed first into every fingerprint. Bump it with every change to
+    //what generate() or generateReceipt() print, so files cached by the previous release stop matching
+    private static final int LAYOUT_VERSION = 3;
+
+    private final InvoiceItemRepository itemRepo;
+    private final int largeItems;
+    private final int itemPageSize;
+
+    public InvoicePdfService(InvoiceItemRepository itemRepo,
+                             @Value("${invoiceapp.pdf.large-items:1000}") int largeItems,
+                             @Value("${invoiceapp.pdf.item-page-size:500}") int itemPageSize) {
+        this.itemRepo     = itemRepo;
+        this.largeItems   = largeItems;
+        this.itemPageSize = itemPageSize;
+    }
+
+    //generate invoice pdf in memory, for email attachments
     public byte[] generate(Invoice inv) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        generate(inv, baos);
+        return baos.toByteArray();
+    }
+
+    //generate invoice pdf into out, page by page as the document fills; out stays open
+    public void generate(Invoice inv, OutputStream out) {
         log.info("Generating PDF for invoice {}", inv.getInvoiceNumber());
+        PdfRenderContext ctx = PdfRenderContext.current();
         Document doc = new Document(PageSize.A4);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
 
         try {
-            PdfWriter writer = PdfWriter.getInstance(doc, baos);
+            PdfWriter writer = PdfWriter.getInstance(doc, out);
+            writer.setCloseStream(false);
             doc.open();
 
             //add fulfilled watermark if invoice is paid
             if (inv.getStatus() == InvoiceStatus.PAID) {
                 log.info("Adding watermark to invoice {}: 'FULFILLED'", inv.getInvoiceNumber());
                 PdfContentByte canvas = writer.getDirectContentUnder();
-                Font wm = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 60, new GrayColor(0.85f));
-                Phrase watermark = new Phrase("FULFILLED", wm);
                 ColumnText.showTextAligned(
                         canvas,
                         Element.ALIGN_CENTER,
-                        watermark,
+                        ctx.watermark,
                         298, 421,    // center of A4
                         45           // rotation angle
                 );
             }
 
             //headers and dates
-            Font h1 = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 18);
-            Font normal = FontFactory.getFont(FontFactory.HELVETICA, 12);
+            Font normal = ctx.normal;
 
             if(inv.getStatus() != InvoiceStatus.DRAFT) {
                 log.info("Adding invoice header for invoice {}", inv.getInvoiceNumber());
-                doc.add(new Paragraph("Invoice " + inv.getInvoiceNumber(), h1));
+                doc.add(new Paragraph("Invoice " + inv.getInvoiceNumber(), ctx.title));
             }
             doc.add(new Paragraph("Issue date: " + inv.getIssueDate(), normal));
             doc.add(new Paragraph("Due date: " + inv.getDueDate(), normal));
@@ -79,30 +114,35 @@ public class InvoicePdfService {
             doc.add(header);
             doc.add(Chunk.NEWLINE);
 
-            //items table
-            PdfPTable table = new PdfPTable(new float[]{3, 1, 2, 2});
+            //items table, header repeated on every page
+            PdfPTable table = new PdfPTable(ctx.itemWidths);
             table.setWidthPercentage(100);
-            addHeader(table, "Description", "Qty", "Unit Price", "Amount");
+            table.setHeaderRows(1);
+            table.setComplete(false);
+            addHeader(table, ctx.itemHeader);
 
             //iterate through inv items and create corresponding tables
-
-            for (InvoiceItem it : inv.getItems()) {
-                log.info("Adding item to invoice {}: Description: {}, Qty: {}, Unit Price: {}, Amount: {}",
-                        inv.getInvoiceNumber(), it.getDescription(), it.getQuantity(), it.getUnitPrice(), it.getAmount());
-                table.addCell(it.getDescription());
-                table.addCell(String.valueOf(it.getQuantity()));
-                table.addCell(it.getUnitPrice().setScale(2, RoundingMode.HALF_UP).toString());
-                table.addCell(it.getAmount().setScale(2, RoundingMode.HALF_UP).toString());
+            BigDecimal total = BigDecimal.ZERO;
+            int rows = 0;
+            for (InvoiceItemRow it : items(inv)) {
+                log.debug("Adding item to invoice {}: Description: {}, Qty: {}, Unit Price: {}, Amount: {}",
+                        inv.getInvoiceNumber(), it.description(), it.quantity(), it.unitPrice(), it.amount());
+                table.addCell(new Phrase(it.description(), normal));
+                table.addCell(new Phrase(String.valueOf(it.quantity()), normal));
+                table.addCell(new Phrase(it.unitPrice().setScale(2, RoundingMode.HALF_UP).toString(), normal));
+                table.addCell(new Phrase(it.amount().setScale(2, RoundingMode.HALF_UP).toString(), normal));
+                total = total.add(it.amount());
+                if (++rows % FLUSH_ROWS == 0) {
+                    doc.add(table);
+                }
             }
 
-            PdfPCell totalCell = new PdfPCell(new Phrase("TOTAL", FontFactory.getFont(FontFactory.HELVETICA_BOLD)));
-            totalCell.setColspan(3);
-            totalCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-            table.addCell(totalCell);
+            table.addCell(ctx.totalLabel);
 
-            String totalText = inv.getCurrency() + " " + inv.getTotal().setScale(2, RoundingMode.HALF_UP);
-            table.addCell(totalText);
+            String totalText = inv.getCurrency() + " " + total.setScale(2, RoundingMode.HALF_UP);
+            table.addCell(new Phrase(totalText, normal));
 
+            table.setComplete(true);
             doc.add(table);
             doc.close();
 
@@ -111,41 +151,125 @@ public class InvoicePdfService {
             log.error("Failed to generate PDF for invoice {}: {}", inv.getInvoiceNumber(), e.getMessage());
             throw new RuntimeException("Failed to generate PDF", e);
         }
-        return baos.toByteArray();
     }
 
 
-    //helper method to add headers
-    private void addHeader(PdfPTable t, String... labels) {
-        for (String l : labels) {
-            PdfPCell cell = new PdfPCell(new Phrase(l, FontFactory.getFont(FontFactory.HELVETICA_BOLD)));
-            cell.setBackgroundColor(Color.LIGHT_GRAY);
+    //hash of everything generate() prints: same fingerprint, same document. Keep in step with generate().
+    //The lines count through the invoice's items revision, so a cache hit reads no items whatever their number
+    public String fingerprint(Invoice inv) {
+        MessageDigest digest = sha256();
+        update(digest, LAYOUT_VERSION, "invoice",
+                inv.getStatus() == InvoiceStatus.PAID,
+                inv.getStatus() != InvoiceStatus.DRAFT,
+                inv.getInvoiceNumber(),
+                inv.getIssueDate(),
+                inv.getDueDate(),
+                inv.getFromName(),
+                inv.getBankName(),
+                inv.getIban(),
+                inv.getToName(),
+                inv.getCurrency(),
+                inv.getItemsRevision());
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    //hash of everything generateReceipt() prints. Keep in step with generateReceipt()
+    public String receiptFingerprint(Invoice inv) {
+        MessageDigest digest = sha256();
+        update(digest, LAYOUT_VERSION, "receipt", inv.getInvoiceNumber(), inv.getTransactionId(), inv.getPaymentDate(),
+                inv.getItemsRevision());
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, Object... values) {
+        for (Object value : values) {
+            digest.update((value + "|").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    //the lines to print. An invoice with more than large-items lines that are not loaded yet is read
+    //in keyset pages of item-page-size, so neither the entities nor the whole list are held at once
+    private Iterable<InvoiceItemRow> items(Invoice inv) {
+        if (inv.getId() != null && !Hibernate.isInitialized(inv.getItems())
+                && itemRepo.countByInvoiceId(inv.getId()) > largeItems) {
+            log.info("Invoice {} has more than {} items, reading them in pages of {}",
+                    inv.getInvoiceNumber(), largeItems, itemPageSize);
+            return () -> pages(inv.getId());
+        }
+        return () -> inv.getItems().stream().map(InvoiceItemRow::of).iterator();
+    }
+
+    private Iterator<InvoiceItemRow> pages(Long invoiceId) {
+        return new Iterator<>() {
+            private Iterator<InvoiceItemRow> page = Collections.emptyIterator();
+            private long afterId = 0;
+            private boolean last;
+
+            @Override
+            public boolean hasNext() {
+                if (!page.hasNext() && !last) {
+                    List<InvoiceItemRow> rows = itemRepo.findRowsAfter(invoiceId, afterId, Limit.of(itemPageSize));
+                    last = rows.size() < itemPageSize;
+                    if (!rows.isEmpty()) {
+                        afterId = rows.get(rows.size() - 1).id();
+                    }
+                    page = rows.iterator();
+                }
+                return page.hasNext();
+            }
+
+            @Override
+            public InvoiceItemRow next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+        };
+    }
+
+    //helper method to add headers; the table copies each template cell
+    private void addHeader(PdfPTable t, PdfPCell... cells) {
+        for (PdfPCell cell : cells) {
             t.addCell(cell);
         }
     }
 
     //method to generate receiot
     public byte[] generateReceipt(Invoice inv) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        generateReceipt(inv, baos);
+        return baos.toByteArray();
+    }
+
+    //generate receipt pdf into out; out stays open
+    public void generateReceipt(Invoice inv, OutputStream out) {
         // use a receipt-friendly size & tighter margins
         log.info("Generating receipt PDF for invoice {}", inv.getInvoiceNumber());
+        PdfRenderContext ctx = PdfRenderContext.current();
         Document doc = new Document(PageSize.A6, 20, 20, 20, 20);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
         try {
-            PdfWriter.getInstance(doc, baos);
+            PdfWriter.getInstance(doc, out).setCloseStream(false);
             doc.open();
 
             //title
-            Font h1 = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 16);
-            Paragraph title = new Paragraph("Payment Receipt", h1);
+            Paragraph title = new Paragraph("Payment Receipt", ctx.receiptTitle);
             title.setAlignment(Element.ALIGN_CENTER);
             doc.add(title);
             doc.add(Chunk.NEWLINE);
 
             //info tx/inv number etc.
-            Font normal = FontFactory.getFont(FontFactory.HELVETICA, 10);
-            PdfPTable info = new PdfPTable(2);
+            Font normal = ctx.receiptNormal;
+            PdfPTable info = new PdfPTable(ctx.receiptInfoWidths);
             info.setWidthPercentage(100);
-            info.setWidths(new float[]{3, 2});
             info.getDefaultCell().setBorder(Rectangle.NO_BORDER);
             info.getDefaultCell().setPadding(2);
             info.addCell(new Phrase("Invoice #: " + inv.getInvoiceNumber(), normal));
@@ -156,58 +280,48 @@ public class InvoicePdfService {
             doc.add(Chunk.NEWLINE);
 
             //items
-            PdfPTable table = new PdfPTable(new float[]{4,1,2});
+            PdfPTable table = new PdfPTable(ctx.receiptItemWidths);
             table.setWidthPercentage(100);
             table.setSpacingBefore(5f);
+            table.setHeaderRows(1);
+            table.setComplete(false);
 
-            Font hdr = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 10);
-            BaseColor gray = new BaseColor(0xEE, 0xEE, 0xEE);
-            Color color = new Color(0xFFFFFF);
             // header row
-            for (String col : List.of("Description","Qty","Amount")) {
-                PdfPCell cell = new PdfPCell(new Phrase(col, hdr));
-                cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-                cell.setBackgroundColor(color);
-                cell.setPadding(4f);
-                table.addCell(cell);
-            }
-
-            // data rows
-            for (var it : inv.getItems()) {
-                log.info("Adding receipt item: Description: {}, Qty: {}, Amount: {}", it.getDescription(), it.getQuantity(), it.getAmount());
-                PdfPCell desc = new PdfPCell(new Phrase(it.getDescription(), normal));
-                desc.setPadding(4f);
-                table.addCell(desc);
-
-                PdfPCell qty = new PdfPCell(new Phrase(it.getQuantity().toString(), normal));
-                qty.setHorizontalAlignment(Element.ALIGN_CENTER);
-                qty.setPadding(4f);
-                table.addCell(qty);
-
-                PdfPCell amt = new PdfPCell(new Phrase(
-                        it.getAmount().setScale(2, RoundingMode.HALF_UP).toString(), normal));
-                amt.setHorizontalAlignment(Element.ALIGN_RIGHT);
-                amt.setPadding(4f);
-                table.addCell(amt);
+            addHeader(table, ctx.receiptHeader);
+
+            // data rows, through the table's default cell so each cell is allocated once
+            PdfPCell row = table.getDefaultCell();
+            row.setPadding(4f);
+            BigDecimal total = BigDecimal.ZERO;
+            int rows = 0;
+            for (var it : items(inv)) {
+                log.debug("Adding receipt item: Description: {}, Qty: {}, Amount: {}", it.description(), it.quantity(), it.amount());
+                row.setHorizontalAlignment(Element.ALIGN_LEFT);
+                table.addCell(new Phrase(it.description(), normal));
+
+                row.setHorizontalAlignment(Element.ALIGN_CENTER);
+                table.addCell(new Phrase(it.quantity().toString(), normal));
+
+                row.setHorizontalAlignment(Element.ALIGN_RIGHT);
+                table.addCell(new Phrase(it.amount().setScale(2, RoundingMode.HALF_UP).toString(), normal));
+
+                total = total.add(it.amount());
+                if (++rows % FLUSH_ROWS == 0) {
+                    doc.add(table);
+                }
             }
 
             // total row
-            PdfPCell lbl = new PdfPCell(new Phrase("TOTAL", hdr));
-            lbl.setColspan(2);
-            lbl.setHorizontalAlignment(Element.ALIGN_RIGHT);
-            lbl.setPadding(4f);
-            table.addCell(lbl);
-
-            log.info("Adding total to receipt for invoice {}: {}", inv.getInvoiceNumber(), inv.getTotal().setScale(2, RoundingMode.HALF_UP));
-            PdfPCell tot = new PdfPCell(new Phrase(inv.getTotal().setScale(2, RoundingMode.HALF_UP).toString(), hdr));
-            tot.setHorizontalAlignment(Element.ALIGN_RIGHT);
-            tot.setPadding(4f);
-            table.addCell(tot);
+            table.addCell(ctx.receiptTotalLabel);
+
+            log.info("Adding total to receipt for invoice {}: {}", inv.getInvoiceNumber(), total.setScale(2, RoundingMode.HALF_UP));
+            row.setHorizontalAlignment(Element.ALIGN_RIGHT);
+            table.addCell(new Phrase(total.setScale(2, RoundingMode.HALF_UP).toString(), ctx.receiptBold));
 
+            table.setComplete(true);
             doc.add(table);
             doc.close();
             log.info("Succesfully generated receipt PDF for invoice {}", inv.getInvoiceNumber());
-            return baos.toByteArray();
 
         } catch (Exception e) {
             log.info("failed to generate receipt");
@@ -0,0 +1,97 @@
+package com.invoiceapp.service;
+
+import com.invoiceapp.dto.misc.RollupDelta;
+import com.invoiceapp.entity.Invoice;
+import com.invoiceapp.repository.InvoiceRepository;
+import com.invoiceapp.repository.InvoiceRollupRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Keeps the per-user daily rollup in step with the invoice table.
+ *
+ * Callers take an invoice out of its bucket with {@link #remove(Invoice)} before a transition
+ * and put it back with {@link #add(Invoice)} afterwards. Both join the caller's transaction,
+ * so the rollup commits or rolls back together with the invoice change.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@Transactional(propagation = Propagation.MANDATORY)
+public class InvoiceRollupService {
+
+    private final InvoiceRollupRepository rollupRepo;
+    private final InvoiceRepository invoiceRepo;
+
+    //adds the invoice's current state to its (user, issue day, status, currency) bucket
+    public void add(Invoice inv) {
+        apply(inv, 1);
+    }
+
+    //removes the invoice's current state from its bucket
+    public void remove(Invoice inv) {
+        apply(inv, -1);
+    }
+
+    //removes every non-archived invoice of a client in one grouped pass (client deletion)
+    public void removeAllForClient(Long clientId) {
+        List<RollupDelta> deltas = invoiceRepo.rollupDeltasForClient(clientId);
+        deltas.forEach(this::remove);
+        log.info("Removed {} rollup bucket(s) worth of invoices for client {}", deltas.size(), clientId);
+    }
+
+    //subtracts a grouped delta from its bucket
+    public void remove(RollupDelta d) {
+        if (d.currency() == null || d.day() == null) {
+            return;
+        }
+        rollupRepo.upsert(d.userId(), d.day(), d.status().name(), d.currency().name(),
+                -d.count(), d.amount().negate());
+    }
+
+    //adds a grouped delta to its bucket
+    public void add(RollupDelta d) {
+        if (d.currency() == null || d.day() == null) {
+            return;
+        }
+        rollupRepo.upsert(d.userId(), d.day(), d.status().name(), d.currency().name(),
+                d.count(), d.amount());
+    }
+
+    //the rollup is created empty by ddl-auto, so fill it from the invoice table on first start
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void backfillIfEmpty() {
+        if (rollupRepo.count() > 0) {
+            return;
+        }
+        int rows = rollupRepo.backfillFromInvoices();
+        log.info("Backfilled {} invoice rollup bucket(s) from the invoice table", rows);
+    }
+
+    private void apply(Invoice inv, int sign) {
+        //archived invoices are not counted, and the dashboard needs a currency and a day to bucket by
+        if (inv.isArchived() || inv.getUser() == null
+                || inv.getCurrency() == null || inv.getIssueDate() == null) {
+            return;
+        }
+        BigDecimal amount = inv.getTotal();
+        rollupRepo.upsert(
+                inv.getUser().getId(),
+                inv.getIssueDate(),
+                inv.getStatus().name(),
+                inv.getCurrency().name(),
+                sign,
+                sign > 0 ? amount : amount.negate());
+        log.debug("Rollup {} invoice {} ({} {} {})", sign > 0 ? "+" : "-", inv.getId(),
+                inv.getStatus(), inv.getCurrency(), amount);
+    }
+}
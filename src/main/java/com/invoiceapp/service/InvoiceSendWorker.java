@@ -0,0 +1,229 @@
+package com.invoiceapp.service;
+
+import com.invoiceapp.entity.Invoice;
+import com.invoiceapp.entity.InvoiceMetric;
+import com.invoiceapp.entity.InvoiceStatus;
+import com.invoiceapp.event.InvoiceChangedEvent;
+import com.invoiceapp.event.InvoiceSendQueuedEvent;
+import com.invoiceapp.repository.InvoiceRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Second stage of sending an invoice, on the bounded invoice send executor.
+ *
+ * {@link InvoiceService#send} only moves invoices to SENDING; once that commits, workers take them
+ * in batches of {@code batch-size}, one batch per thread, so a bulk send renders on every core.
+ * A worker claims its batch, loads it with the items in one query and renders the PDFs outside any
+ * transaction, through the PDF cache so a later download of the same invoice is not rendered
+ * again. It then queues the emails to the outbox and moves the invoices to SENT in a single
+ * transaction, so each email goes out exactly when its invoice is SENT. An invoice whose PDF fails
+ * becomes SEND_FAILED with the reason and can be sent again; the rest of the batch still goes out.
+ * A poll every {@code poll-ms} picks up sends the queue had no room for and sends whose worker
+ * died (their lease ran out). Each invoice is claimed with a conditional update, so none is sent twice.
+ *
+ * Exposed through Micrometer as the invoice.send timer (one sample per batch), the
+ * invoice.send.render timer (one sample per PDF) and the invoice.send.failures counter.
+ */
+@Slf4j
+@Component
+public class InvoiceSendWorker {
+
+    private final InvoiceRepository invoiceRepo;
+    private final InvoicePdfCache pdfCache;
+    private final EmailService emailService;
+    private final InvoiceRollupService rollupService;
+    private final MetricSnapshotBuffer metricBuffer;
+    private final DunningSchedule dunningSchedule;
+    private final ApplicationEventPublisher events;
+    private final TransactionTemplate tx;
+    private final Executor executor;
+    private final Duration lease;
+    private final int pollBatch;
+    private final int batchSize;
+    private final Timer sendTimer;
+    private final Timer renderTimer;
+    private final Counter failureCounter;
+
+    public InvoiceSendWorker(InvoiceRepository invoiceRepo,
+                             InvoicePdfCache pdfCache,
+                             EmailService emailService,
+                             InvoiceRollupService rollupService,
+                             MetricSnapshotBuffer metricBuffer,
+                             DunningSchedule dunningSchedule,
+                             ApplicationEventPublisher events,
+                             TransactionTemplate tx,
+                             @Qualifier("invoiceSendExecutor") Executor executor,
+                             @Value("${invoiceapp.invoice.send.lease:5m}") Duration lease,
+                             @Value("${invoiceapp.invoice.send.poll-batch:100}") int pollBatch,
+                             @Value("${invoiceapp.invoice.send.batch-size:20}") int batchSize,
+                             MeterRegistry registry) {
+        this.invoiceRepo     = invoiceRepo;
+        this.pdfCache        = pdfCache;
+        this.emailService    = emailService;
+        this.rollupService   = rollupService;
+        this.metricBuffer    = metricBuffer;
+        this.dunningSchedule = dunningSchedule;
+        this.events          = events;
+        this.tx              = tx;
+        this.executor        = executor;
+        this.lease           = lease;
+        this.pollBatch       = pollBatch;
+        this.batchSize       = batchSize;
+        this.sendTimer       = Timer.builder("invoice.send").register(registry);
+        this.renderTimer     = Timer.builder("invoice.send.render").register(registry);
+        this.failureCounter  = Counter.builder("invoice.send.failures").register(registry);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onSendQueued(InvoiceSendQueuedEvent event) {
+        submit(event.invoiceIds());
+    }
+
+    @Scheduled(fixedDelayString = "${invoiceapp.invoice.send.poll-ms:30000}")
+    public void poll() {
+        List<Long> due = invoiceRepo.findSendDueIds(LocalDateTime.now(), Limit.of(pollBatch));
+        if (!due.isEmpty()) {
+            log.info("Invoice send poll: {} invoice(s) waiting to be sent", due.size());
+        }
+        submit(due);
+    }
+
+    private void submit(List<Long> ids) {
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<Long> batch = List.copyOf(ids.subList(from, Math.min(from + batchSize, ids.size())));
+            executor.execute(() -> processBatch(batch));
+        }
+    }
+
+    //one send of a single SENDING invoice
+    public void process(Long id) {
+        processBatch(List.of(id));
+    }
+
+    //one send of a batch: claim, render outside any transaction, then queue and mark SENT (or SEND_FAILED)
+    //for the invoices whose claim is still this worker's
+    public void processBatch(List<Long> ids) {
+        LocalDateTime now = LocalDateTime.now();
+        //millisecond precision, so the stored value compares equal when the claim is released
+        LocalDateTime leaseUntil = now.plus(lease).truncatedTo(ChronoUnit.MILLIS);
+        List<Long> claimed = tx.execute(status -> ids.stream()
+                .filter(id -> invoiceRepo.claimSend(id, now, leaseUntil) == 1)
+                .toList());
+        if (claimed == null || claimed.isEmpty()) {
+            log.debug("Invoices {} already taken or no longer sending", ids);
+            return;
+        }
+
+        long began = System.nanoTime();
+        List<Invoice> invoices = tx.execute(status -> invoiceRepo.findWithItemsByIdIn(claimed));
+        Map<Long, byte[]> pdfs = new HashMap<>();
+        Map<Long, String> failed = new HashMap<>();
+        for (Invoice inv : invoices == null ? List.<Invoice>of() : invoices) {
+            long start = System.nanoTime();
+            try {
+                log.info("Generating invoice PDF for invoice {}", inv.getInvoiceNumber());
+                pdfs.put(inv.getId(), pdfCache.invoiceBytes(inv));
+            } catch (RuntimeException ex) {
+                log.error("Rendering invoice {} failed", inv.getInvoiceNumber(), ex);
+                failed.put(inv.getId(), reason(ex));
+            }
+            renderTimer.record(Duration.ofNanos(System.nanoTime() - start));
+        }
+
+        try {
+            tx.executeWithoutResult(status -> invoiceRepo.findAllById(stillClaimed(claimed, leaseUntil)).forEach(inv -> {
+                byte[] pdf = pdfs.get(inv.getId());
+                if (pdf != null) {
+                    deliver(inv, pdf);
+                } else {
+                    fail(inv, failed.getOrDefault(inv.getId(), "not rendered"));
+                }
+            }));
+        } catch (RuntimeException ex) {
+            log.error("Queueing invoices {} failed", claimed, ex);
+            tx.executeWithoutResult(status ->
+                    invoiceRepo.findAllById(stillClaimed(claimed, leaseUntil)).forEach(inv -> fail(inv, reason(ex))));
+        }
+        sendTimer.record(Duration.ofNanos(System.nanoTime() - began));
+    }
+
+    //releases this worker's claims inside the outcome's transaction. An invoice whose lease ran out while it
+    //rendered and that another worker claimed is left to that worker
+    private List<Long> stillClaimed(List<Long> claimed, LocalDateTime leaseUntil) {
+        List<Long> owned = claimed.stream()
+                .filter(id -> invoiceRepo.releaseSend(id, leaseUntil) == 1)
+                .toList();
+        if (owned.size() < claimed.size()) {
+            log.warn("Lost the send lease on {} of invoices {} while rendering, leaving them to their new worker",
+                    claimed.size() - owned.size(), claimed);
+        }
+        return owned;
+    }
+
+    private void deliver(Invoice inv, byte[] pdf) {
+        if (inv.getStatus() != InvoiceStatus.SENDING) {
+            return;
+        }
+        String link = "http://localhost:8080/public/confirm-payment/" + inv.getPaymentToken();
+        log.info("Sending invoice {} to client {}", inv.getInvoiceNumber(), inv.getClient().getEmail());
+        emailService.sendInvoice(
+                inv.getClient().getEmail(),
+                "Invoice " + inv.getInvoiceNumber(),
+                "Dear " + inv.getClient().getName() + ",<br><br>" +
+                        "Please find your invoice attached.<br>" +
+                        "When you have paid, click <a href=\"" + link + "\">this link</a>.",
+                pdf,
+                inv.getInvoiceNumber() + ".pdf"
+        );
+
+        transition(inv, InvoiceStatus.SENT);
+        inv.setNextReminderAt(dunningSchedule.nextAfter(inv, LocalDateTime.now()));
+        metricBuffer.add(new InvoiceMetric(LocalDate.now(), InvoiceStatus.SENT, inv.getTotal()));
+        log.info("Invoice {} has been sent to client {}", inv.getInvoiceNumber(), inv.getClient().getEmail());
+    }
+
+    private void fail(Invoice inv, String reason) {
+        if (inv.getStatus() == InvoiceStatus.SENDING) {
+            failureCounter.increment();
+            transition(inv, InvoiceStatus.SEND_FAILED);
+            inv.setSendError(reason);
+        }
+    }
+
+    //short enough for the send_error column
+    private static String reason(RuntimeException ex) {
+        String msg = ex.getMessage() != null ? ex.getMessage() : ex.getClass().getSimpleName();
+        return msg.length() > 255 ? msg.substring(0, 255) : msg;
+    }
+
+    //moves the invoice between rollup rows and tells dashboard listeners
+    private void transition(Invoice inv, InvoiceStatus next) {
+        rollupService.remove(inv);
+        inv.setStatus(next);
+        inv.setSendLeaseUntil(null);
+        rollupService.add(inv);
+        Long userId = inv.getUser() != null ? inv.getUser().getId() : null;
+        events.publishEvent(new InvoiceChangedEvent(userId, inv.getId(), next));
+    }
+}
@@ -1,10 +1,15 @@
 package com.invoiceapp.service;
 
 import com.invoiceapp.dto.client.ClientResponse;
+import com.invoiceapp.dto.invoice.BulkSendProgress;
+import com.invoiceapp.dto.invoice.BulkSendResult;
 import com.invoiceapp.dto.invoice.InvoiceRequest;
 import com.invoiceapp.dto.invoice.InvoiceResponse;
+import com.invoiceapp.dto.invoice.InvoiceStatusResponse;
 import com.invoiceapp.dto.invoice.RecordPaymentForm;
 import com.invoiceapp.entity.*;
+import com.invoiceapp.event.InvoiceChangedEvent;
+import com.invoiceapp.event.InvoiceSendQueuedEvent;
 import com.invoiceapp.repository.*;
 import com.invoiceapp.security.UserProvider;
 import com.invoiceapp.util.ClientMapper;
@@ -13,12 +18,15 @@ import com.invoiceapp.util.InvoiceNumberGenerator;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.*;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -28,13 +36,14 @@ public class InvoiceService {
 
     private final InvoiceRepository invoiceRepo;
     private final ClientRepository clientRepo;
-    private final InvoiceMetricRepository metricRepo;
+    private final MetricSnapshotBuffer metricBuffer;
     private final InvoiceNumberGenerator numberGenerator;
-    private final InvoicePdfService pdfService;
-    private final EmailService emailService;
     private final UserProvider userProvider;
     private final InvoiceMapper invoiceMapper;
     private final UserRepository userRepository;
+    private final InvoiceRollupService rollupService;
+    private final DunningSchedule dunningSchedule;
+    private final ApplicationEventPublisher events;
 
     //Create new invoice
     public InvoiceResponse create(InvoiceRequest dto) {
@@ -47,7 +56,10 @@ public class InvoiceService {
         inv.setUser(user);
         log.info("Invoice created with number: {}", inv.getInvoiceNumber());
 
-        return InvoiceMapper.toDto(invoiceRepo.save(inv));
+        Invoice saved = invoiceRepo.save(inv);
+        rollupService.add(saved);
+        changed(saved);
+        return InvoiceMapper.toDto(saved);
     }
 
 
@@ -111,51 +123,124 @@ public class InvoiceService {
 
 
 
-    /** Sends the invoice by email and transitions it from DRAFT to SENT.
+    /** Accepts the invoice for sending and transitions it from DRAFT (or SEND_FAILED) to SENDING.
      *
-     * - Validates that the invoice is in DRAFT status.
-     * - Updates status to SENT, sets issue date, generates invoice number and payment token.
-     * - Generates a PDF and sends it via email to the client with a payment confirmation link.
-     * - Returns the updated InvoiceResponse DTO.
+     * - Validates that the invoice is in DRAFT status, or that an earlier send failed.
+     * - Updates status to SENDING, sets issue date, generates invoice number and payment token
+     *   (a retried send keeps the number and token it already has).
+     * - Once committed, {@link InvoiceSendWorker} generates the PDF, emails it to the client with a
+     *   payment confirmation link and moves the invoice to SENT (or SEND_FAILED).
+     * - Returns the updated InvoiceResponse DTO; poll {@link #sendStatus} for the outcome.
      *
      * @param id the ID of the invoice to send
-     * @return the updated InvoiceResponse after sending
-     * @throws IllegalStateException if the invoice is not in DRAFT status
+     * @return the updated InvoiceResponse, in SENDING status
+     * @throws IllegalStateException if the invoice is not in DRAFT or SEND_FAILED status
      * @throws EntityNotFoundException if the invoice is not found */
     public InvoiceResponse send(Long id) {
         Invoice inv = getEntity(id);
-        if (inv.getStatus() != InvoiceStatus.DRAFT) {
+        if (!inv.getStatus().canTransitionTo(InvoiceStatus.SENDING)) {
             log.error("Attempted to send an invoice that is not in DRAFT status (Invoice ID: {})", id);
-            throw new IllegalStateException("Only DRAFT can be sent");
+            throw new IllegalStateException("Only DRAFT can be sent (or a failed send retried)");
         }
-        log.info("Transitioning invoice {} from DRAFT to SENT", inv.getInvoiceNumber());
-        inv.setStatus(InvoiceStatus.SENT);
-        inv.setIssueDate(LocalDate.now());
-        inv.setInvoiceNumber(numberGenerator.nextForUser(inv.getUser()));
-        log.info("Generated payment token for invoice {}: {}", inv.getInvoiceNumber(), inv.getPaymentToken());
-        inv.setPaymentToken(UUID.randomUUID().toString());
-
-
-
-        log.info("Generated invoice PDF for invoice {}", inv.getInvoiceNumber());
-        byte[] pdf = pdfService.generate(inv);
-        String link = "http://localhost:8080/public/confirm-payment/" + inv.getPaymentToken();
-        log.info("Sending invoice {} to client {}", inv.getInvoiceNumber(), inv.getClient().getEmail());
-        emailService.sendInvoice(
-                inv.getClient().getEmail(),
-                "Invoice " + inv.getInvoiceNumber(),
-                "Dear " + inv.getClient().getName() + ",<br><br>" +
-                        "Please find your invoice attached.<br>" +
-                        "When you have paid, click <a href=\"" + link + "\">this link</a>.",
-                pdf,
-                inv.getInvoiceNumber() + ".pdf"
-        );
-
-        snapshot(inv);
-        log.info("Invoice {} has been sent to client {}", inv.getInvoiceNumber(), inv.getClient().getEmail());
+        if (inv.getInvoiceNumber() == null) {
+            inv.setInvoiceNumber(numberGenerator.nextForUser(inv.getUser()));
+        }
+        markSending(inv, LocalDateTime.now());
+        changed(inv);
+        events.publishEvent(new InvoiceSendQueuedEvent(List.of(inv.getId())));
+        log.info("Invoice {} queued for sending to client {}", inv.getInvoiceNumber(), inv.getClient().getEmail());
         return InvoiceMapper.toDto(inv);
     }
 
+    /** Accepts many invoices for sending at once (month-end billing runs).
+     *
+     * Same transition as {@link #send} for every id that can be sent, in one transaction: invoice
+     * numbers are allocated with one lookup per owner, and the worker renders and queues the sends
+     * in parallel batches. Ids that cannot be sent are skipped with the reason instead of failing
+     * the whole run; poll {@link #sendProgress} for how the queued ones are getting on.
+     *
+     * @param ids the IDs of the invoices to send
+     * @return the queued IDs, and the reason per skipped ID */
+    public BulkSendResult sendAll(Collection<Long> ids) {
+        Map<Long, Invoice> found = new HashMap<>();
+        invoiceRepo.findAllById(ids).forEach(inv -> found.put(inv.getId(), inv));
+
+        Map<Long, String> skipped = new LinkedHashMap<>();
+        List<Invoice> sendable = new ArrayList<>();
+        for (Long id : new LinkedHashSet<>(ids)) {
+            Invoice inv = found.get(id);
+            if (inv == null) {
+                skipped.put(id, "not found");
+            } else if (!inv.getStatus().canTransitionTo(InvoiceStatus.SENDING)) {
+                skipped.put(id, "is " + inv.getStatus());
+            } else {
+                sendable.add(inv);
+            }
+        }
+
+        //numbers for the whole run, one lookup per owner
+        sendable.stream()
+                .filter(inv -> inv.getInvoiceNumber() == null)
+                .collect(Collectors.groupingBy(inv -> inv.getUser().getId(), LinkedHashMap::new, Collectors.toList()))
+                .values()
+                .forEach(invoices -> {
+                    Iterator<String> numbers = numberGenerator.nextForUser(invoices.get(0).getUser(), invoices.size()).iterator();
+                    invoices.forEach(inv -> inv.setInvoiceNumber(numbers.next()));
+                });
+
+        LocalDateTime now = LocalDateTime.now();
+        sendable.forEach(inv -> markSending(inv, now));
+        sendable.stream()
+                .map(inv -> inv.getUser().getId())
+                .distinct()
+                .forEach(userId -> events.publishEvent(new InvoiceChangedEvent(userId, null, InvoiceStatus.SENDING)));
+
+        List<Long> queued = sendable.stream().map(Invoice::getId).toList();
+        if (!queued.isEmpty()) {
+            events.publishEvent(new InvoiceSendQueuedEvent(queued));
+        }
+        log.info("Bulk send: {} invoice(s) queued, {} skipped", queued.size(), skipped.size());
+        return new BulkSendResult(queued, skipped);
+    }
+
+    //DRAFT/SEND_FAILED -> SENDING, due right away: the worker claims it after commit, or the send poll does
+    private void markSending(Invoice inv, LocalDateTime now) {
+        log.info("Transitioning invoice {} from {} to SENDING", inv.getId(), inv.getStatus());
+        rollupService.remove(inv);
+        inv.setStatus(InvoiceStatus.SENDING);
+        inv.setIssueDate(now.toLocalDate());
+        if (inv.getPaymentToken() == null) {
+            inv.setPaymentToken(UUID.randomUUID().toString());
+            log.info("Generated payment token for invoice {}: {}", inv.getInvoiceNumber(), inv.getPaymentToken());
+        }
+        inv.setSendLeaseUntil(now);
+        inv.setSendError(null);
+        rollupService.add(inv);
+    }
+
+    //where a send stands, for the invoice list to poll
+    @Transactional(readOnly = true)
+    public InvoiceStatusResponse sendStatus(Long id) {
+        Invoice inv = getEntity(id);
+        return new InvoiceStatusResponse(inv.getId(), inv.getInvoiceNumber(), inv.getStatus(), inv.getSendError());
+    }
+
+    //where a bulk send stands: counts per stage and the invoices that failed
+    @Transactional(readOnly = true)
+    public BulkSendProgress sendProgress(Collection<Long> ids) {
+        long sending = 0, sent = 0;
+        List<InvoiceStatusResponse> failures = new ArrayList<>();
+        for (InvoiceStatusResponse st : invoiceRepo.findStatuses(ids)) {
+            switch (st.status()) {
+                case SENDING -> sending++;
+                case SEND_FAILED -> failures.add(st);
+                case DRAFT -> { }
+                default -> sent++;
+            }
+        }
+        return new BulkSendProgress(sending, sent, failures.size(), failures);
+    }
+
     //Method to mark an invoice as PAID
     public InvoiceResponse markPaid(Long id, RecordPaymentForm f) {
         Invoice inv = getEntity(id);
@@ -164,8 +249,10 @@ public class InvoiceService {
             throw new IllegalStateException("Only SENT/OVERDUE can be paid");
         }
 
+        rollupService.remove(inv);
         inv.setStatus(InvoiceStatus.PAID);
         inv.setPaymentDate(f.getPaymentDate());
+        inv.setNextReminderAt(null);
 
         if (f.getPaymentDate().isBefore(inv.getIssueDate())) {
             log.error("Attempted to record a payment with a date before the invoice issue date (Invoice ID: {})", id);
@@ -176,6 +263,8 @@ public class InvoiceService {
         inv.setPaymentNotes(f.getPaymentNotes());
         inv.setTransactionId(f.getTransactionId());
 
+        rollupService.add(inv);
+        changed(inv);
         snapshot(inv);
         log.info("Invoice {} marked as PAID. Payment details: Date: {}, Method: {}, Transaction ID: {}",
                 inv.getInvoiceNumber(), f.getPaymentDate(), f.getPaymentMethod(), f.getTransactionId());
@@ -185,28 +274,14 @@ public class InvoiceService {
 
 
 
-    //checks for overdue invoices
-    public int markOverdue() {
-        int overdueCount = invoiceRepo.findActive(InvoiceStatus.SENT).stream()
-                .filter(i -> i.getDueDate().isBefore(LocalDate.now()))
-                .peek(i -> {
-                    i.setStatus(InvoiceStatus.OVERDUE);
-                    snapshot(i);
-                })
-                .mapToInt(x -> 1)
-                .sum();
-
-        log.info("Marked {} invoices as OVERDUE", overdueCount);
-        return overdueCount;
-    }
-
-
     //update invoice if its in draft state
     public InvoiceResponse update(Long invoiceId, InvoiceRequest dto) {
         log.info("Fetching invoice to update " + invoiceId);
         Invoice inv = getEntity(invoiceId);
         if (inv.getStatus() != InvoiceStatus.DRAFT)
             throw new IllegalStateException("Only DRAFT can be edited");
+        rollupService.remove(inv);
+        Long previousUserId = inv.getUser() != null ? inv.getUser().getId() : null;
 
         // update header fields
         Client client = clientRepo.findById(dto.clientId())
@@ -257,6 +332,12 @@ public class InvoiceService {
         // refreeze user
         inv.setUser(userProvider.getCurrentUser());
 
+        // items are separate entities, so keep the stored total and their revision in step explicitly
+        inv.setTotal(inv.getTotal());
+        inv.setItemsRevision(inv.getItemsRevision() + 1);
+        rollupService.add(inv);
+        changed(inv, previousUserId);
+
         // save & return fresh DTO
         invoiceRepo.save(inv);
         return InvoiceMapper.toDto(inv);
@@ -265,7 +346,14 @@ public class InvoiceService {
     //soft delete
     public void archive(Long id) {
         Invoice inv = getEntity(id);
+        //a send worker still holds it and would mark it SENT after the archive
+        if (inv.getStatus() == InvoiceStatus.SENDING) {
+            throw new IllegalStateException("Invoices cannot be archived while they are being sent.");
+        }
+        rollupService.remove(inv);
         inv.setArchived(true);
+        inv.setNextReminderAt(null);
+        changed(inv);
         log.info("Invoice {} archived", inv.getInvoiceNumber());
     }
 
@@ -274,11 +362,38 @@ public class InvoiceService {
         log.info("Invoice {} deleted (soft delete)", id);
     }
 
+    //hard delete, only allowed for drafts
+    public void deleteDraft(Long id) {
+        Invoice inv = getEntity(id);
+        if (inv.getStatus() != InvoiceStatus.DRAFT) {
+            throw new IllegalStateException("Only draft invoices can be deleted.");
+        }
+        rollupService.remove(inv);
+        invoiceRepo.delete(inv);
+        changed(inv);
+        log.info("Draft invoice {} deleted", id);
+    }
+
+
+    //tells per-user caches (dashboard stats) that this invoice changed; acted on after commit
+    private void changed(Invoice inv) {
+        Long userId = inv.getUser() != null ? inv.getUser().getId() : null;
+        events.publishEvent(new InvoiceChangedEvent(userId, inv.getId(), inv.getStatus()));
+    }
+
+    //an edit may hand the invoice to another user; the previous owner's stats have to drop it too
+    private void changed(Invoice inv, Long previousUserId) {
+        changed(inv);
+        Long userId = inv.getUser() != null ? inv.getUser().getId() : null;
+        if (previousUserId != null && !previousUserId.equals(userId)) {
+            events.publishEvent(new InvoiceChangedEvent(previousUserId, inv.getId(), inv.getStatus()));
+        }
+    }
 
     //metric snapshot for stats
     public void snapshot(Invoice inv) {
         log.info("taking snapshot for dashboard stats");
-        metricRepo.save(new InvoiceMetric(LocalDate.now(), inv.getStatus(), inv.getTotal()));
+        metricBuffer.add(new InvoiceMetric(LocalDate.now(), inv.getStatus(), inv.getTotal()));
     }
 
 
@@ -290,13 +405,17 @@ public class InvoiceService {
             throw new IllegalStateException("Only PAID invoices can be reverted");
         }
 
+        rollupService.remove(inv);
         inv.setStatus(InvoiceStatus.SENT);
         inv.setPaymentDate(null);
         inv.setPaymentMethod(null);
         inv.setPaymentAmountRecorded(null);
         inv.setPaymentNotes(null);
         inv.setTransactionId(null);
+        inv.setNextReminderAt(dunningSchedule.nextAfter(inv, LocalDateTime.now()));
 
+        rollupService.add(inv);
+        changed(inv);
         invoiceRepo.save(inv);
         log.info("Invoice {} reverted to SENT status", inv.getInvoiceNumber());
 
@@ -306,6 +425,7 @@ public class InvoiceService {
 
 
     //method for dashboard to retrieve last 5 invoices
+    @Transactional(readOnly = true)
     public List<InvoiceResponse> getRecentInvoices(String username, int count) {
         Pageable topFive = PageRequest.of(0, count, Sort.by("issueDate").descending());
 
@@ -370,7 +490,10 @@ public class InvoiceService {
         inv.setUser(target);
         // save & return
         log.info("User {} is creating an invoice for target user {}. Client ID: {}", userProvider.getCurrentUser().getEmail(), target.getEmail(), dto.clientId());
-        return InvoiceMapper.toDto(invoiceRepo.save(inv));
+        Invoice saved = invoiceRepo.save(inv);
+        rollupService.add(saved);
+        changed(saved);
+        return InvoiceMapper.toDto(saved);
     }
 
     //Update a DRAFT invoice for the given target user.
@@ -379,6 +502,8 @@ public class InvoiceService {
         if (inv.getStatus() != InvoiceStatus.DRAFT) {
             throw new IllegalStateException("Only DRAFT can be edited");
         }
+        rollupService.remove(inv);
+        Long previousUserId = inv.getUser() != null ? inv.getUser().getId() : null;
 
         //header fields
         log.info("User {} is updating invoice {} for target user {}", userProvider.getCurrentUser().getEmail(), invoiceId, target.getEmail());
@@ -431,6 +556,12 @@ public class InvoiceService {
         // reassign owner
         inv.setUser(target);
 
+        // items are separate entities, so keep the stored total and their revision in step explicitly
+        inv.setTotal(inv.getTotal());
+        inv.setItemsRevision(inv.getItemsRevision() + 1);
+        rollupService.add(inv);
+        changed(inv, previousUserId);
+
         //save and return dto
         invoiceRepo.save(inv);
         return InvoiceMapper.toDto(inv);
@@ -0,0 +1,133 @@
+package com.invoiceapp.service;
+
+import com.invoiceapp.repository.JobLockRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Runs a scheduled job on one app instance at a time, using a lease row in job_lock.
+ *
+ * Every instance fires the same cron; the first to take the lease runs the job and the others
+ * skip it. While the job runs, a heartbeat renews the lease every lease/3. If the node dies the
+ * lease simply runs out and the next run (on any node) can take it. A job that loses its lease
+ * (heartbeat failed, e.g. a long GC pause or a DB outage) sees {@link Lease#isHeld()} turn false
+ * and should stop at its next safe point. Expiry is computed and compared on the database clock,
+ * so the nodes' own clocks do not have to agree.
+ */
+@Slf4j
+@Service
+public class JobLockService {
+
+    //what a running job can ask about its lock
+    @FunctionalInterface
+    public interface Lease {
+        boolean isHeld();
+    }
+
+    private static final LocalDateTime EPOCH = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final JobLockRepository lockRepo;
+    private final TransactionTemplate tx;
+    private final Duration lease;
+    private final String holder;
+    private final ScheduledExecutorService heartbeats;
+
+    public JobLockService(JobLockRepository lockRepo,
+                          TransactionTemplate tx,
+                          @Value("${invoiceapp.jobs.lock.lease:2m}") Duration lease,
+                          @Value("${invoiceapp.jobs.node-id:}") String nodeId) {
+        this.lockRepo = lockRepo;
+        this.tx = tx;
+        this.lease = lease;
+        this.holder = nodeId.isBlank() ? defaultNodeId() : nodeId;
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "job-lock-heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        log.info("Job lock holder id: {}", holder);
+    }
+
+    //runs work if this node gets the lease for job; returns false when another node holds it
+    public boolean runExclusively(String job, Consumer<Lease> work) {
+        if (!acquire(job)) {
+            log.info("Job {} is running on another node, skipping", job);
+            return false;
+        }
+        log.info("Acquired lock for job {} as {}", job, holder);
+
+        AtomicBoolean held = new AtomicBoolean(true);
+        long every = Math.max(1, lease.toMillis() / 3);
+        ScheduledFuture<?> heartbeat = heartbeats.scheduleAtFixedRate(
+                () -> heartbeat(job, held), every, every, TimeUnit.MILLISECONDS);
+        try {
+            work.accept(held::get);
+            return true;
+        } finally {
+            heartbeat.cancel(false);
+            if (held.get()) {
+                tx.executeWithoutResult(status -> lockRepo.release(job, holder));
+            }
+            log.info("Released lock for job {}", job);
+        }
+    }
+
+    public String holder() {
+        return holder;
+    }
+
+    private boolean acquire(String job) {
+        Integer got = tx.execute(status -> {
+            lockRepo.ensureExists(job, EPOCH);
+            return lockRepo.acquire(job, holder, lease.toMillis());
+        });
+        return got != null && got == 1;
+    }
+
+    private void heartbeat(String job, AtomicBoolean held) {
+        if (!held.get()) {
+            return;
+        }
+        try {
+            Integer renewed = tx.execute(status -> lockRepo.extend(job, holder, lease.toMillis()));
+            if (renewed == null || renewed == 0) {
+                held.set(false);
+                log.error("Lost the lock for job {}; it will stop at its next checkpoint", job);
+            }
+        } catch (RuntimeException ex) {
+            //keep trying while the lease lasts; a lapsed lease is caught by the next extend
+            log.warn("Heartbeat for job {} failed: {}", job, ex.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        heartbeats.shutdownNow();
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        return host + ":" + ManagementFactory.getRuntimeMXBean().getPid() + ":"
+                + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
@@ -0,0 +1,129 @@
+package com.invoiceapp.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Token buckets for outgoing mail: one global, one per recipient domain.
+ *
+ * A send needs a token from both. A bucket holds up to {@code burst} tokens and refills at
+ * {@code per-second}, so short bursts go out at once and longer runs settle at the rate. The
+ * buckets live in memory, so the limits apply per app instance.
+ *
+ * Exposed through Micrometer as mail.ratelimit.tokens{scope=global}, mail.ratelimit.domains
+ * (domains with a bucket) and mail.ratelimit.throttled{scope=global|domain}.
+ */
+@Slf4j
+@Component
+public class MailRateLimiter {
+
+    private final double domainPerSecond;
+    private final int domainBurst;
+    private final TokenBucket global;
+    private final Map<String, TokenBucket> domains = new ConcurrentHashMap<>();
+    private final Counter globalThrottled;
+    private final Counter domainThrottled;
+
+    public MailRateLimiter(@Value("${invoiceapp.mail.rate.global-per-second:20}") double globalPerSecond,
+                           @Value("${invoiceapp.mail.rate.global-burst:40}") int globalBurst,
+                           @Value("${invoiceapp.mail.rate.domain-per-second:5}") double domainPerSecond,
+                           @Value("${invoiceapp.mail.rate.domain-burst:10}") int domainBurst,
+                           MeterRegistry registry) {
+        this.global = new TokenBucket(globalPerSecond, globalBurst);
+        this.domainPerSecond = domainPerSecond;
+        this.domainBurst = domainBurst;
+
+        Gauge.builder("mail.ratelimit.tokens", global, TokenBucket::available).tags("scope", "global").register(registry);
+        Gauge.builder("mail.ratelimit.domains", domains, Map::size).register(registry);
+        this.globalThrottled = Counter.builder("mail.ratelimit.throttled").tags("scope", "global").register(registry);
+        this.domainThrottled = Counter.builder("mail.ratelimit.throttled").tags("scope", "domain").register(registry);
+        log.info("Mail rate limits: {}/s (burst {}) overall, {}/s (burst {}) per domain",
+                globalPerSecond, globalBurst, domainPerSecond, domainBurst);
+    }
+
+    //takes a token for one email to recipient; returns zero when it may go now, otherwise how long
+    //until it would (nothing is taken then)
+    public Duration tryAcquire(String recipient) {
+        TokenBucket domain = domains.computeIfAbsent(domainOf(recipient),
+                d -> new TokenBucket(domainPerSecond, domainBurst));
+
+        long domainWait = domain.tryTake();
+        if (domainWait > 0) {
+            domainThrottled.increment();
+            return Duration.ofNanos(domainWait);
+        }
+        long globalWait = global.tryTake();
+        if (globalWait > 0) {
+            //hand the domain token back, the email is not going out yet
+            domain.giveBack();
+            globalThrottled.increment();
+            return Duration.ofNanos(globalWait);
+        }
+        return Duration.ZERO;
+    }
+
+    //a full bucket is the same as no bucket, so idle domains are dropped
+    @Scheduled(fixedDelayString = "${invoiceapp.mail.rate.evict-ms:600000}")
+    public void evictIdle() {
+        domains.values().removeIf(TokenBucket::isFull);
+    }
+
+    static String domainOf(String recipient) {
+        int at = recipient == null ? -1 : recipient.lastIndexOf('@');
+        return at < 0 ? "" : recipient.substring(at + 1).toLowerCase(Locale.ROOT);
+    }
+
+    /* ---- token bucket ---- */
+    static final class TokenBucket {
+        private final double perNano;
+        private final double capacity;
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        TokenBucket(double perSecond, int burst) {
+            this.perNano = perSecond / 1e9;
+            this.capacity = Math.max(1, burst);
+            this.tokens = capacity;
+        }
+
+        //0 when a token was taken, otherwise nanos until one is available
+        synchronized long tryTake() {
+            refill();
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 - tokens) / perNano));
+        }
+
+        synchronized void giveBack() {
+            tokens = Math.min(capacity, tokens + 1);
+        }
+
+        synchronized double available() {
+            refill();
+            return tokens;
+        }
+
+        synchronized boolean isFull() {
+            refill();
+            return tokens >= capacity;
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * perNano);
+            refilledAt = now;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.invoiceapp.service;
+
+import com.invoiceapp.entity.InvoiceMetric;
+import com.invoiceapp.repository.InvoiceMetricRepository;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects {@link InvoiceMetric} snapshots of the current transaction and writes them with one
+ * {@code saveAll} right before commit, which Hibernate turns into JDBC batch inserts
+ * (see hibernate.jdbc.batch_size and the pooled id generator on InvoiceMetric).
+ *
+ * Long transactions flush every {@code max-buffered} snapshots and detach them once written, so
+ * neither the buffer nor the persistence context grows with the transaction. Outside a transaction
+ * a snapshot is saved right away.
+ */
+@Slf4j
+@Component
+public class MetricSnapshotBuffer {
+
+    private final InvoiceMetricRepository metricRepo;
+    private final EntityManager entityManager;
+    private final int maxBuffered;
+
+    public MetricSnapshotBuffer(InvoiceMetricRepository metricRepo,
+                                EntityManager entityManager,
+                                @Value("${invoiceapp.metrics.max-buffered:500}") int maxBuffered) {
+        this.metricRepo = metricRepo;
+        this.entityManager = entityManager;
+        this.maxBuffered = maxBuffered;
+    }
+
+    public void add(InvoiceMetric metric) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            metricRepo.save(metric);
+            return;
+        }
+        Pending pending = (Pending) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new Pending();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(pending);
+        }
+        pending.metrics.add(metric);
+        if (pending.metrics.size() >= maxBuffered) {
+            pending.drainEarly();
+        }
+    }
+
+    //snapshots of one transaction; also its commit hook
+    private final class Pending implements TransactionSynchronization {
+
+        private final List<InvoiceMetric> metrics = new ArrayList<>();
+
+        void drain() {
+            if (metrics.isEmpty()) {
+                return;
+            }
+            metricRepo.saveAll(List.copyOf(metrics));
+            log.debug("Flushed {} metric snapshot(s)", metrics.size());
+            metrics.clear();
+        }
+
+        //mid-transaction: write the batch now and detach it, so the saved snapshots do not pile up in
+        //the persistence context until commit. Only these are detached; the caller's entities stay managed
+        void drainEarly() {
+            List<InvoiceMetric> batch = List.copyOf(metrics);
+            drain();
+            metricRepo.flush();
+            batch.forEach(entityManager::detach);
+        }
+
+        //runs before the EntityManager flush, so the inserts go out with the rest of the commit
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            drain();
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(MetricSnapshotBuffer.this);
+        }
+    }
+}
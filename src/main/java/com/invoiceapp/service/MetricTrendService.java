@@ -0,0 +1,75 @@
+package com.invoiceapp.service;
+
+import com.invoiceapp.dto.misc.MetricBucket;
+import com.invoiceapp.dto.misc.MetricTrend;
+import com.invoiceapp.dto.misc.TrendUnit;
+import com.invoiceapp.entity.InvoiceStatus;
+import com.invoiceapp.repository.InvoiceMetricRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+public class MetricTrendService {
+
+    //keeps the payload chartable: ~3 years of days, or any span of weeks/months that fits
+    public static final int MAX_BUCKETS = 1100;
+
+    private final InvoiceMetricRepository metricRepo;
+
+    public MetricTrend trend(TrendUnit unit, LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("'from' must not be after 'to'");
+        }
+
+        //every bucket of the range, so all series share the same x axis
+        List<LocalDate> buckets = new ArrayList<>();
+        for (LocalDate b = unit.floor(from); !b.isAfter(to); b = unit.next(b)) {
+            if (buckets.size() == MAX_BUCKETS) {
+                throw new IllegalArgumentException("Range has more than " + MAX_BUCKETS + " buckets, use a coarser unit");
+            }
+            buckets.add(b);
+        }
+        log.info("Building {} trend from {} to {} ({} buckets)", unit, from, to, buckets.size());
+
+        List<MetricBucket> rows = switch (unit) {
+            case DAY -> metricRepo.trendByDay(from, to);
+            case WEEK -> metricRepo.trendByWeek(from, to);
+            case MONTH -> metricRepo.trendByMonth(from, to);
+        };
+
+        Map<LocalDate, Integer> index = new HashMap<>();
+        for (int i = 0; i < buckets.size(); i++) {
+            index.put(buckets.get(i), i);
+        }
+
+        Map<InvoiceStatus, MetricTrend.Series> series = new EnumMap<>(InvoiceStatus.class);
+        for (InvoiceStatus st : InvoiceStatus.values()) {
+            BigDecimal[] amounts = new BigDecimal[buckets.size()];
+            Arrays.fill(amounts, BigDecimal.ZERO);
+            series.put(st, new MetricTrend.Series(new long[buckets.size()], amounts));
+        }
+
+        for (MetricBucket row : rows) {
+            Integer i = index.get(row.getBucket());
+            if (i == null) {
+                log.warn("Trend row for unexpected bucket {} ignored", row.getBucket());
+                continue;
+            }
+            MetricTrend.Series s = series.get(InvoiceStatus.valueOf(row.getStatus()));
+            s.count()[i] = row.getCnt();
+            s.amount()[i] = row.getTotal();
+        }
+
+        log.info("Trend built from {} grouped rows", rows.size());
+        return new MetricTrend(unit, from, to, buckets, series);
+    }
+}
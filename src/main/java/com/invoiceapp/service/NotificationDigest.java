@@ -0,0 +1,149 @@
+package com.invoiceapp.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coalesces notifications per (recipient, topic) in memory and sends each group as one digest.
+ *
+ * A group opens with its first line and is sent {@code window} later, listing every line added
+ * meanwhile; a group that reaches {@code max-lines} is sent right away so memory stays bounded.
+ * Lines added inside a transaction only join their group once it commits. Each digest is written
+ * to the outbox in a transaction of its own: a group that fills up is sent from the afterCommit of
+ * the transaction that added its last line, where that transaction cannot take more writes.
+ * Groups still open at shutdown are sent then; a crash loses them, which is acceptable for these
+ * informational mails.
+ * Batch jobs can send their topic as soon as they finish with {@link #flushTopic(String)}.
+ */
+@Slf4j
+@Component
+public class NotificationDigest {
+
+    private record Key(String recipient, String topic) {}
+
+    private static final class Group {
+        private final LocalDateTime openedAt = LocalDateTime.now();
+        private final List<String> lines = new ArrayList<>();
+    }
+
+    private final EmailService emailService;
+    private final TransactionTemplate tx;
+    private final Duration window;
+    private final int maxLines;
+    private final Map<Key, Group> groups = new ConcurrentHashMap<>();
+
+    public NotificationDigest(EmailService emailService,
+                              PlatformTransactionManager txManager,
+                              @Value("${invoiceapp.notify.digest.window:10m}") Duration window,
+                              @Value("${invoiceapp.notify.digest.max-lines:500}") int maxLines) {
+        this.emailService = emailService;
+        this.tx = new TransactionTemplate(txManager);
+        this.tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.window = window;
+        this.maxLines = maxLines;
+    }
+
+    //queues one line (an html fragment) for the recipient's next digest on topic
+    public void add(String recipient, String topic, String line) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    append(new Key(recipient, topic), line);
+                }
+            });
+        } else {
+            append(new Key(recipient, topic), line);
+        }
+    }
+
+    //sends every group whose window has passed
+    @Scheduled(fixedDelayString = "${invoiceapp.notify.digest.flush-ms:60000}")
+    public void flushDue() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(window);
+        groups.forEach((key, group) -> {
+            if (!group.openedAt.isAfter(cutoff)) {
+                flush(key);
+            }
+        });
+    }
+
+    //sends the open groups of a topic now, e.g. when the batch job that filled them is done
+    public void flushTopic(String topic) {
+        groups.keySet().stream().filter(k -> k.topic().equals(topic)).forEach(this::flush);
+    }
+
+    @PreDestroy
+    public void flushAll() {
+        groups.keySet().forEach(this::flush);
+    }
+
+    public int openGroups() {
+        return groups.size();
+    }
+
+    //the line joins its group inside compute, which is atomic with flush()'s remove: a line either
+    //lands in a group before it is detached or opens a new one, never in a group already sent
+    private void append(Key key, String line) {
+        boolean[] full = new boolean[1];
+        groups.compute(key, (k, group) -> {
+            Group g = group == null ? new Group() : group;
+            g.lines.add(line);
+            full[0] = g.lines.size() >= maxLines;
+            return g;
+        });
+        if (full[0]) {
+            flush(key);
+        }
+    }
+
+    private void flush(Key key) {
+        Group group = groups.remove(key);
+        if (group == null) {
+            return;
+        }
+        //detached: no append can reach it any more
+        List<String> lines = group.lines;
+        if (lines.isEmpty()) {
+            return;
+        }
+        try {
+            tx.executeWithoutResult(status ->
+                    emailService.sendHtml(key.recipient(), subject(key.topic(), lines.size()), body(lines)));
+            log.info("Sent {} digest with {} item(s) to {}", key.topic(), lines.size(), key.recipient());
+        } catch (RuntimeException ex) {
+            log.error("Could not queue {} digest for {}: {}", key.topic(), key.recipient(), ex.getMessage());
+        }
+    }
+
+    private static String subject(String topic, int count) {
+        return count == 1 ? topic : topic + " (" + count + ")";
+    }
+
+    private static String body(List<String> lines) {
+        StringBuilder html = new StringBuilder("Hello,<br><br>");
+        if (lines.size() == 1) {
+            html.append(lines.get(0)).append("<br><br>");
+        } else {
+            html.append(lines.size()).append(" updates since the last message:<ul>");
+            lines.forEach(line -> html.append("<li>").append(line).append("</li>"));
+            html.append("</ul>");
+        }
+        return html.append("Regards,").toString();
+    }
+}
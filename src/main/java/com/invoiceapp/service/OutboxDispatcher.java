@@ -0,0 +1,299 @@
+package com.invoiceapp.service;
+
+import com.invoiceapp.entity.OutboxEmail;
+import com.invoiceapp.entity.OutboxStatus;
+import com.invoiceapp.event.EmailQueuedEvent;
+import com.invoiceapp.repository.OutboxEmailRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers the email outbox on the bounded mail executor.
+ *
+ * A freshly queued email is handed to a worker as soon as its transaction commits; emails queued
+ * together (a bulk invoice send) are taken up to {@code batch-size} at a time. A poll every
+ * {@code poll-ms} picks up retries that are due, emails the queue had no room for and emails whose
+ * worker died mid-send (their SENDING lease ran out). The poll hands them to workers in batches of
+ * {@code batch-size}, each sent over one pooled SMTP connection. Each attempt claims the row with a
+ * conditional update, so an email is never sent by two workers at once.
+ *
+ * Sends are paced by {@link MailRateLimiter}. A worker sends the emails that already have a token,
+ * then waits for the next one, up to {@code max-wait} per email; an email that would wait longer
+ * goes back to PENDING until its token is due, without counting an attempt. Callers that queue
+ * a lot of mail can check {@link EmailService#isBackedUp()} and hold off while the outbox is full.
+ *
+ * A failed attempt is retried after backoff, backoff x 2, backoff x 4 ... (capped at max-backoff);
+ * after max-attempts the email is marked DEAD and left in the table for inspection.
+ *
+ * Exposed through Micrometer as mail.outbox.depth{status=pending|dead}, mail.outbox.sent,
+ * mail.outbox.failures, mail.outbox.dead, mail.outbox.deferred, the mail.outbox.send timer (one
+ * sample per send) and the mail.outbox.wait timer (queued to sent).
+ */
+@Slf4j
+@Component
+public class OutboxDispatcher {
+
+    private static final Set<OutboxStatus> CLAIMABLE = Set.of(OutboxStatus.PENDING, OutboxStatus.SENDING);
+
+    private final OutboxEmailRepository outboxRepo;
+    private final EmailService emailService;
+    private final MailRateLimiter rateLimiter;
+    private final TransactionTemplate tx;
+    private final Executor executor;
+    private final int maxAttempts;
+    private final Duration backoff;
+    private final Duration maxBackoff;
+    private final Duration lease;
+    private final int pollBatch;
+    private final int batchSize;
+    private final Duration maxWait;
+
+    //committed emails not yet taken by a worker, at most poll-batch of them. An email that finds it
+    //full, or whose task the executor rejects, is not kept here: it stays PENDING for the poll
+    private final BlockingQueue<Long> queued;
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong dead = new AtomicLong();
+    private final Counter sentCounter;
+    private final Counter failureCounter;
+    private final Counter deadCounter;
+    private final Counter deferredCounter;
+    private final Timer sendTimer;
+    private final Timer waitTimer;
+
+    public OutboxDispatcher(OutboxEmailRepository outboxRepo,
+                            EmailService emailService,
+                            MailRateLimiter rateLimiter,
+                            TransactionTemplate tx,
+                            @Qualifier("mailExecutor") Executor executor,
+                            @Value("${invoiceapp.mail.outbox.max-attempts:6}") int maxAttempts,
+                            @Value("${invoiceapp.mail.outbox.backoff:30s}") Duration backoff,
+                            @Value("${invoiceapp.mail.outbox.max-backoff:1h}") Duration maxBackoff,
+                            @Value("${invoiceapp.mail.outbox.lease:5m}") Duration lease,
+                            @Value("${invoiceapp.mail.outbox.poll-batch:200}") int pollBatch,
+                            @Value("${invoiceapp.mail.outbox.batch-size:50}") int batchSize,
+                            @Value("${invoiceapp.mail.rate.max-wait:2s}") Duration maxWait,
+                            MeterRegistry registry) {
+        this.outboxRepo  = outboxRepo;
+        this.emailService = emailService;
+        this.rateLimiter = rateLimiter;
+        this.tx          = tx;
+        this.executor    = executor;
+        this.maxAttempts = maxAttempts;
+        this.backoff     = backoff;
+        this.maxBackoff  = maxBackoff;
+        this.lease       = lease;
+        this.pollBatch   = pollBatch;
+        this.batchSize   = batchSize;
+        this.maxWait     = maxWait;
+        this.queued      = new LinkedBlockingQueue<>(pollBatch);
+
+        Gauge.builder("mail.outbox.depth", pending, AtomicLong::get).tags("status", "pending").register(registry);
+        Gauge.builder("mail.outbox.depth", dead, AtomicLong::get).tags("status", "dead").register(registry);
+        this.sentCounter    = Counter.builder("mail.outbox.sent").register(registry);
+        this.failureCounter = Counter.builder("mail.outbox.failures").register(registry);
+        this.deadCounter    = Counter.builder("mail.outbox.dead").register(registry);
+        this.deferredCounter = Counter.builder("mail.outbox.deferred").register(registry);
+        this.sendTimer      = Timer.builder("mail.outbox.send").register(registry);
+        this.waitTimer      = Timer.builder("mail.outbox.wait").register(registry);
+    }
+
+    //fallbackExecution: an email queued outside a transaction goes out right away
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onEmailQueued(EmailQueuedEvent event) {
+        Long id = event.outboxId();
+        if (!queued.offer(id)) {
+            log.warn("{} emails already waiting, leaving email {} to the next outbox poll", queued.size(), id);
+            return;
+        }
+        try {
+            executor.execute(this::drainQueued);
+        } catch (RejectedExecutionException ex) {
+            queued.remove(id);
+            log.warn("Mail queue full, leaving email {} to the next outbox poll", id);
+        }
+    }
+
+    //sends whatever was queued meanwhile as one batch; tasks that find nothing left just return
+    private void drainQueued() {
+        List<Long> batch = new ArrayList<>();
+        Long id;
+        while (batch.size() < batchSize && (id = queued.poll()) != null) {
+            batch.add(id);
+        }
+        if (!batch.isEmpty()) {
+            attemptBatch(batch);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${invoiceapp.mail.outbox.poll-ms:30000}")
+    public void poll() {
+        List<Long> due = outboxRepo.findDueIds(CLAIMABLE, LocalDateTime.now(), Limit.of(pollBatch));
+        if (!due.isEmpty()) {
+            log.info("Outbox poll: {} email(s) due", due.size());
+        }
+        for (int from = 0; from < due.size(); from += batchSize) {
+            List<Long> batch = due.subList(from, Math.min(from + batchSize, due.size()));
+            try {
+                executor.execute(() -> attemptBatch(batch));
+            } catch (RejectedExecutionException ex) {
+                log.warn("Mail queue full, leaving {} email(s) to the next outbox poll", due.size() - from);
+                break;
+            }
+        }
+
+        pending.set(outboxRepo.countByStatus(OutboxStatus.PENDING));
+        dead.set(outboxRepo.countByStatus(OutboxStatus.DEAD));
+    }
+
+    //one delivery attempt of a single email
+    public void attempt(Long id) {
+        attemptBatch(List.of(id));
+    }
+
+    //one delivery attempt per email: claim them, send the claimed ones outside any transaction as
+    //the rate limit allows, record each outcome
+    public void attemptBatch(List<Long> ids) {
+        LocalDateTime now = LocalDateTime.now();
+        Map<Long, OutboxEmail> claimed = tx.execute(status -> {
+            Map<Long, OutboxEmail> rows = new LinkedHashMap<>();
+            for (Long id : ids) {
+                if (outboxRepo.claim(id, CLAIMABLE, now, now.plus(lease)) == 1) {
+                    outboxRepo.findById(id).ifPresent(row -> rows.put(id, row));
+                } else {
+                    log.debug("Outbox email {} already taken or not due", id);
+                }
+            }
+            return rows;
+        });
+        if (claimed == null || claimed.isEmpty()) {
+            return;
+        }
+
+        Map<Long, OutboxEmail> ready = new LinkedHashMap<>();
+        Map<Long, LocalDateTime> deferred = new LinkedHashMap<>();
+        claimed.forEach((id, email) -> {
+            Duration wait = rateLimiter.tryAcquire(email.getRecipient());
+            Duration waited = Duration.ZERO;
+            while (!wait.isZero() && waited.plus(wait).compareTo(maxWait) <= 0) {
+                //send what already has a token before pausing for this one
+                send(ready);
+                if (!pause(wait)) {
+                    break;
+                }
+                waited = waited.plus(wait);
+                wait = rateLimiter.tryAcquire(email.getRecipient());
+            }
+            if (wait.isZero()) {
+                ready.put(id, email);
+            } else {
+                deferred.put(id, LocalDateTime.now().plus(wait));
+            }
+        });
+        send(ready);
+
+        if (!deferred.isEmpty()) {
+            tx.executeWithoutResult(status -> deferred.forEach((id, next) ->
+                    outboxRepo.findById(id).ifPresent(row -> row.deferred(next))));
+            deferredCounter.increment(deferred.size());
+            log.info("Rate limit: deferred {} email(s)", deferred.size());
+        }
+    }
+
+    //sends the ready emails together and records each outcome, then empties ready
+    private void send(Map<Long, OutboxEmail> ready) {
+        if (ready.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(ready.keySet());
+        List<OutboxEmail> emails = new ArrayList<>(ready.values());
+        ready.clear();
+
+        long began = System.nanoTime();
+        List<RuntimeException> errors;
+        try {
+            errors = emailService.deliverBatch(emails);
+        } catch (RuntimeException ex) {
+            errors = Collections.nCopies(emails.size(), ex);
+        }
+        sendTimer.record(Duration.ofNanos(System.nanoTime() - began));
+
+        List<RuntimeException> failures = errors;
+        tx.executeWithoutResult(status -> {
+            for (int i = 0; i < ids.size(); i++) {
+                record(ids.get(i), failures.get(i));
+            }
+        });
+    }
+
+    private static boolean pause(Duration wait) {
+        try {
+            Thread.sleep(Math.max(1, wait.toMillis()));
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void record(Long id, RuntimeException failure) {
+        OutboxEmail row = outboxRepo.findById(id).orElseThrow();
+        if (failure == null) {
+            row.sent(LocalDateTime.now());
+            sentCounter.increment();
+            if (row.getCreatedAt() != null) {
+                waitTimer.record(Duration.between(row.getCreatedAt(), row.getSentAt()));
+            }
+            return;
+        }
+        int attempt = row.getAttempts() + 1;
+        LocalDateTime next = attempt >= maxAttempts ? null : LocalDateTime.now().plus(backoffFor(attempt));
+        row.failed(rootMessage(failure), next);
+        failureCounter.increment();
+        if (next == null) {
+            deadCounter.increment();
+            log.error("Email {} to {} dead-lettered after {} attempt(s): {}",
+                    id, row.getRecipient(), attempt, row.getLastError());
+        } else {
+            log.warn("Email {} to {} failed (attempt {}), retrying at {}", id, row.getRecipient(), attempt, next);
+        }
+    }
+
+    //backoff x 2^(attempt - 1), capped
+    Duration backoffFor(int attempt) {
+        Duration delay = backoff.multipliedBy(1L << Math.min(attempt - 1, 20));
+        return delay.compareTo(maxBackoff) > 0 ? maxBackoff : delay;
+    }
+
+    private static String rootMessage(Throwable ex) {
+        Throwable root = ex;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        return root.getClass().getSimpleName() + ": " + root.getMessage();
+    }
+}
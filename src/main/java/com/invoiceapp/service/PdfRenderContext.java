@@ -0,0 +1,77 @@
+package com.invoiceapp.service;
+
+import com.lowagie.text.Element;
+import com.lowagie.text.Font;
+import com.lowagie.text.FontFactory;
+import com.lowagie.text.Phrase;
+import com.lowagie.text.pdf.GrayColor;
+import com.lowagie.text.pdf.PdfPCell;
+
+import java.awt.*;
+
+/**
+ * Layout resources for {@link InvoicePdfService}: fonts, colors, column widths, the static header
+ * and total cells and the watermark, resolved once per render thread instead of once per document.
+ *
+ * Everything here is only read while rendering. PdfPTable.addCell copies the cell it is given, so
+ * the template cells are never laid out themselves. iText layout objects are not thread-safe, so
+ * each thread (request, send worker) gets its own context and keeps it for its lifetime.
+ */
+final class PdfRenderContext {
+
+    private static final ThreadLocal<PdfRenderContext> CURRENT = ThreadLocal.withInitial(PdfRenderContext::new);
+
+    //invoice (A4)
+    final Font title = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 18);
+    final Font normal = FontFactory.getFont(FontFactory.HELVETICA, 12);
+    final Font bold = FontFactory.getFont(FontFactory.HELVETICA_BOLD);
+    final Phrase watermark = new Phrase("FULFILLED",
+            FontFactory.getFont(FontFactory.HELVETICA_BOLD, 60, new GrayColor(0.85f)));
+    final float[] itemWidths = {3, 1, 2, 2};
+    final PdfPCell[] itemHeader;
+    final PdfPCell totalLabel;
+
+    //receipt (A6)
+    final Font receiptTitle = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 16);
+    final Font receiptNormal = FontFactory.getFont(FontFactory.HELVETICA, 10);
+    final Font receiptBold = FontFactory.getFont(FontFactory.HELVETICA_BOLD, 10);
+    final float[] receiptInfoWidths = {3, 2};
+    final float[] receiptItemWidths = {4, 1, 2};
+    final PdfPCell[] receiptHeader;
+    final PdfPCell receiptTotalLabel;
+
+    private PdfRenderContext() {
+        itemHeader = new PdfPCell[]{
+                headerCell("Description", bold), headerCell("Qty", bold),
+                headerCell("Unit Price", bold), headerCell("Amount", bold)};
+        totalLabel = new PdfPCell(new Phrase("TOTAL", bold));
+        totalLabel.setColspan(3);
+        totalLabel.setHorizontalAlignment(Element.ALIGN_RIGHT);
+
+        receiptHeader = new PdfPCell[]{
+                receiptHeaderCell("Description", receiptBold), receiptHeaderCell("Qty", receiptBold),
+                receiptHeaderCell("Amount", receiptBold)};
+        receiptTotalLabel = new PdfPCell(new Phrase("TOTAL", receiptBold));
+        receiptTotalLabel.setColspan(2);
+        receiptTotalLabel.setHorizontalAlignment(Element.ALIGN_RIGHT);
+        receiptTotalLabel.setPadding(4f);
+    }
+
+    static PdfRenderContext current() {
+        return CURRENT.get();
+    }
+
+    private static PdfPCell headerCell(String label, Font font) {
+        PdfPCell cell = new PdfPCell(new Phrase(label, font));
+        cell.setBackgroundColor(Color.LIGHT_GRAY);
+        return cell;
+    }
+
+    private static PdfPCell receiptHeaderCell(String label, Font font) {
+        PdfPCell cell = new PdfPCell(new Phrase(label, font));
+        cell.setHorizontalAlignment(Element.ALIGN_CENTER);
+        cell.setBackgroundColor(Color.WHITE);
+        cell.setPadding(4f);
+        return cell;
+    }
+}
@@ -0,0 +1,146 @@
+package com.invoiceapp.service;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A small fixed pool of long-lived SMTP connections, so mail goes out without a TCP + STARTTLS +
+ * AUTH handshake per message.
+ *
+ * Connections are opened lazily with the mail sender's session and credentials and kept open
+ * between batches; a borrowed connection is checked (NOOP) and reopened if the server dropped it.
+ * A send that fails because the connection died is retried once on a fresh connection, a message
+ * the server refuses is reported as failed and the batch carries on. At most {@code pool-size}
+ * batches are on the wire at once, the others wait for a free connection.
+ */
+@Slf4j
+@Component
+public class SmtpTransportPool {
+
+    private final JavaMailSenderImpl mailSender;
+    private final BlockingQueue<Transport> idle;
+    private final List<Transport> all = new ArrayList<>();
+
+    public SmtpTransportPool(JavaMailSenderImpl mailSender,
+                             @Value("${invoiceapp.mail.smtp.pool-size:4}") int poolSize) throws MessagingException {
+        this.mailSender = mailSender;
+        this.idle = new ArrayBlockingQueue<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            Transport transport = mailSender.getSession().getTransport(protocol());
+            all.add(transport);
+            idle.add(transport);
+        }
+        log.info("SMTP transport pool of {} connection(s) to {}:{}", poolSize, mailSender.getHost(), mailSender.getPort());
+    }
+
+    //sends every message on one pooled connection; the result has one entry per message,
+    //null when it was sent, otherwise why it was not
+    public List<MessagingException> sendAll(List<MimeMessage> messages) {
+        Transport transport = borrow();
+        try {
+            MessagingException[] errors = new MessagingException[messages.size()];
+            MessagingException down = ensureConnected(transport);
+            for (int i = 0; i < messages.size(); i++) {
+                //once the server is unreachable the rest of the batch fails without more connects
+                if (down != null) {
+                    errors[i] = down;
+                    continue;
+                }
+                errors[i] = send(transport, messages.get(i));
+                if (errors[i] != null && !transport.isConnected()) {
+                    down = errors[i];
+                }
+            }
+            return Arrays.asList(errors);
+        } finally {
+            idle.add(transport);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        for (Transport transport : all) {
+            try {
+                transport.close();
+            } catch (MessagingException ex) {
+                log.debug("Closing SMTP connection failed: {}", ex.getMessage());
+            }
+        }
+    }
+
+    /* ---- private helpers ---- */
+    private MessagingException send(Transport transport, MimeMessage message) {
+        try {
+            if (message.getSentDate() == null) {
+                message.setSentDate(new Date());
+            }
+            message.saveChanges();
+            transport.sendMessage(message, message.getAllRecipients());
+            return null;
+        } catch (MessagingException ex) {
+            //a refused message leaves the connection usable; a dead connection gets one retry
+            if (transport.isConnected()) {
+                return ex;
+            }
+            log.warn("SMTP connection lost ({}), reconnecting", ex.getMessage());
+        }
+        MessagingException down = ensureConnected(transport);
+        if (down != null) {
+            return down;
+        }
+        try {
+            transport.sendMessage(message, message.getAllRecipients());
+            return null;
+        } catch (MessagingException ex) {
+            return ex;
+        }
+    }
+
+    //isConnected() costs a NOOP round trip, so it is only asked once per batch and after a failure
+    private MessagingException ensureConnected(Transport transport) {
+        if (transport.isConnected()) {
+            return null;
+        }
+        String username = mailSender.getUsername();
+        String password = mailSender.getPassword();
+        try {
+            transport.connect(
+                    mailSender.getHost(),
+                    mailSender.getPort(),
+                    StringUtils.hasLength(username) ? username : null,
+                    StringUtils.hasLength(password) ? password : null);
+            log.debug("Opened SMTP connection to {}:{}", mailSender.getHost(), mailSender.getPort());
+            return null;
+        } catch (MessagingException ex) {
+            log.error("Could not connect to SMTP server {}:{}: {}", mailSender.getHost(), mailSender.getPort(), ex.getMessage());
+            return ex;
+        }
+    }
+
+    private Transport borrow() {
+        try {
+            return idle.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for an SMTP connection", ex);
+        }
+    }
+
+    private String protocol() {
+        return StringUtils.hasLength(mailSender.getProtocol()) ? mailSender.getProtocol() : "smtp";
+    }
+}
@@ -5,7 +5,6 @@ import com.invoiceapp.entity.Role;
 import com.invoiceapp.entity.User;
 import com.invoiceapp.repository.UserRepository;
 import jakarta.persistence.EntityNotFoundException;
-import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
@@ -15,6 +14,7 @@ import org.springframework.data.domain.Sort;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 @Slf4j
@@ -37,6 +37,7 @@ public class UserService {
     }
 
     // For admin view as dropdown
+    @Transactional(readOnly = true)
     public List<User> findAllUsers() {
         List<User> users = userRepository.findAll();
         log.info("Fetched {} users from the database", users.size());
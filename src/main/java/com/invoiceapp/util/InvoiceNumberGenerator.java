@@ -5,6 +5,9 @@ import com.invoiceapp.repository.InvoiceRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+import java.util.stream.IntStream;
+
 @Component
 @RequiredArgsConstructor
 public class InvoiceNumberGenerator {
@@ -13,6 +16,11 @@ public class InvoiceNumberGenerator {
     private static final String PREFIX = "INV-";
 
     public String nextForUser(User user) {
+        return nextForUser(user, 1).get(0);
+    }
+
+    //the next count numbers of a user, from a single lookup (bulk send)
+    public List<String> nextForUser(User user, int count) {
         // ask the repo for the user’s current max
         int next = invoiceRepo
                 .findMaxInvoiceNumberForUser(user)
@@ -20,7 +28,9 @@ public class InvoiceNumberGenerator {
                 .map(n -> n + 1)
                 .orElse(1);
 
-        return String.format("%s%05d", PREFIX, next);
+        return IntStream.range(next, next + count)
+                .mapToObj(n -> String.format("%s%05d", PREFIX, n))
+                .toList();
     }
 
     private int parseSerial(String invNum) {
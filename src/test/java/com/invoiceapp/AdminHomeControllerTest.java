@@ -7,6 +7,7 @@ import com.invoiceapp.entity.Role;
 import com.invoiceapp.entity.User;
 import com.invoiceapp.security.UserProvider;
 import com.invoiceapp.service.DashboardService;
+import com.invoiceapp.service.FxRateService;
 import com.invoiceapp.service.InvoiceService;
 import com.invoiceapp.service.UserService;
 import org.junit.jupiter.api.BeforeEach;
@@ -16,11 +17,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.mock;
@@ -28,6 +31,7 @@ import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(AdminHomeController.class)  // Use WebMvcTest for controller tests
+@TestPropertySource(properties = "invoiceapp.dashboard.timeout=200ms")
 class AdminHomeControllerTest {
 
     @Autowired
@@ -45,6 +49,13 @@ class AdminHomeControllerTest {
     @MockitoBean
     private UserProvider userProvider;
 
+    @MockitoBean
+    private FxRateService fxRateService;
+
+    // never runs anything unless a test stubs it
+    @MockitoBean(name = "dashboardExecutor")
+    private Executor dashboardExecutor;
+
     @InjectMocks
     private AdminHomeController adminHomeController;
 
@@ -78,4 +89,12 @@ class AdminHomeControllerTest {
                 .andExpect(status().is3xxRedirection())
                 .andExpect(redirectedUrl("/admin/dashboard"));
     }
+
+    //the three dashboard loads never finish (executor swallows them) -> 503 after the timeout
+    @Test
+    @WithMockUser(username = "admin@example.com", roles = {"ADMIN"})
+    void testDashboardTimeout() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/admin/dashboard"))
+                .andExpect(status().isServiceUnavailable());
+    }
 }
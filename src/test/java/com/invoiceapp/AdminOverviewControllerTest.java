@@ -0,0 +1,57 @@
+package com.invoiceapp;
+
+import com.invoiceapp.controller.AdminOverviewController;
+import com.invoiceapp.dto.misc.UserOverviewRow;
+import com.invoiceapp.security.UserProvider;
+import com.invoiceapp.service.AdminOverviewService;
+import com.invoiceapp.service.FxRateService;
+import com.invoiceapp.service.FxRates;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(AdminOverviewController.class)
+class AdminOverviewControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private AdminOverviewService overviewService;
+
+    @MockitoBean
+    private FxRateService fxRateService;
+
+    @MockitoBean
+    private UserProvider userProvider;
+
+    @Test
+    @WithMockUser(username = "admin@example.com", roles = {"ADMIN"})
+    void overview_rendersSortedPage() throws Exception {
+        when(fxRateService.current()).thenReturn(FxRates.EMPTY);
+        when(overviewService.overview(any(), any(), any(), any())).thenReturn(new PageImpl<>(
+                List.of(new UserOverviewRow(7L, "someone@example.com", 3, 1, new BigDecimal("12.5"), BigDecimal.ZERO)),
+                PageRequest.of(0, 25), 1));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/admin/overview").param("sort", "overdue"))
+                .andExpect(status().isOk())
+                .andExpect(view().name("admin/overview"))
+                .andExpect(model().attribute("sort", "overdue"))
+                .andExpect(content().string(containsString("someone@example.com")))
+                .andExpect(content().string(containsString("USD 12.50")));
+    }
+}
@@ -0,0 +1,95 @@
+package com.invoiceapp;
+
+import com.invoiceapp.dto.misc.UserOverviewRow;
+import com.invoiceapp.dto.misc.UserStatusCurrencyTotal;
+import com.invoiceapp.entity.Currency;
+import com.invoiceapp.entity.Role;
+import com.invoiceapp.entity.User;
+import com.invoiceapp.repository.InvoiceRollupRepository;
+import com.invoiceapp.repository.UserRepository;
+import com.invoiceapp.service.AdminOverviewService;
+import com.invoiceapp.service.FxRateService;
+import com.invoiceapp.service.FxRates;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static com.invoiceapp.entity.InvoiceStatus.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class AdminOverviewServiceTest {
+
+    private InvoiceRollupRepository rollupRepo;
+    private AdminOverviewService service;
+    private final LocalDate from = LocalDate.of(2025, 1, 1);
+    private final LocalDate to   = LocalDate.of(2025, 12, 31);
+
+    @BeforeEach
+    void setUp() {
+        rollupRepo = mock(InvoiceRollupRepository.class);
+        UserRepository userRepo = mock(UserRepository.class);
+        FxRateService fx = mock(FxRateService.class);
+        service = new AdminOverviewService(rollupRepo, userRepo, fx);
+
+        when(fx.current()).thenReturn(new FxRates(Map.of(Currency.EUR, new BigDecimal("2")), null));
+        when(userRepo.findAll()).thenReturn(List.of(
+                new User(1L, "a@x.com", "p", Role.USER, true),
+                new User(2L, "b@x.com", "p", Role.USER, true),
+                new User(3L, "c@x.com", "p", Role.USER, true)));
+        when(rollupRepo.aggregateByUserStatusAndCurrency(from, to)).thenReturn(List.of(
+                new UserStatusCurrencyTotal(1L, PAID,    Currency.USD, 2L, new BigDecimal("10")),
+                new UserStatusCurrencyTotal(1L, PAID,    Currency.EUR, 1L, new BigDecimal("10")),
+                new UserStatusCurrencyTotal(1L, OVERDUE, Currency.USD, 3L, new BigDecimal("4")),
+                new UserStatusCurrencyTotal(2L, PAID,    Currency.USD, 1L, new BigDecimal("50")),
+                new UserStatusCurrencyTotal(2L, SENT,    Currency.GBP, 1L, new BigDecimal("9")),
+                new UserStatusCurrencyTotal(2L, DRAFT,   Currency.USD, 4L, new BigDecimal("1"))));
+    }
+
+    @Test
+    void overview_foldsOneScanIntoPerUserRows() {
+        Page<UserOverviewRow> page = service.overview(from, to, Currency.USD,
+                PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, "revenue")));
+
+        assertEquals(3, page.getTotalElements());
+        List<UserOverviewRow> rows = page.getContent();
+        // b: 50 USD revenue; a: 10 USD + 10 EUR (=20 USD); c: nothing
+        assertEquals(List.of("b@x.com", "a@x.com", "c@x.com"), rows.stream().map(UserOverviewRow::email).toList());
+        assertEquals(new BigDecimal("30.00"), rows.get(1).revenue());
+        assertEquals(3, rows.get(1).overdue());
+        assertEquals(6, rows.get(1).invoices());
+        // GBP has no rate, so b's outstanding is left out rather than guessed
+        assertEquals(0, rows.get(0).outstanding().signum());
+        assertEquals(0, rows.get(2).invoices());
+        verify(rollupRepo, times(1)).aggregateByUserStatusAndCurrency(from, to);
+    }
+
+    @Test
+    void overview_countsInvoicesBeingSentAsOutstanding() {
+        when(rollupRepo.aggregateByUserStatusAndCurrency(from, to)).thenReturn(List.of(
+                new UserStatusCurrencyTotal(3L, SENDING,     Currency.USD, 2L, new BigDecimal("8")),
+                new UserStatusCurrencyTotal(3L, SEND_FAILED, Currency.USD, 1L, new BigDecimal("5"))));
+
+        UserOverviewRow row = service.overview(from, to, Currency.USD, PageRequest.of(0, 10)).getContent().stream()
+                .filter(r -> r.userId() == 3L).findFirst().orElseThrow();
+
+        assertEquals(3, row.invoices());
+        assertEquals(0, new BigDecimal("8").compareTo(row.outstanding()));
+    }
+
+    @Test
+    void overview_pagesAfterSorting() {
+        Page<UserOverviewRow> page = service.overview(from, to, Currency.USD,
+                PageRequest.of(1, 2, Sort.by(Sort.Direction.ASC, "email")));
+
+        assertEquals(2, page.getTotalPages());
+        assertEquals(List.of("c@x.com"), page.getContent().stream().map(UserOverviewRow::email).toList());
+    }
+}
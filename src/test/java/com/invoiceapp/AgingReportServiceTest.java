@@ -0,0 +1,82 @@
+package com.invoiceapp;
+
+import com.invoiceapp.dto.misc.AgingRow;
+import com.invoiceapp.entity.Currency;
+import com.invoiceapp.entity.InvoiceStatus;
+import com.invoiceapp.entity.User;
+import com.invoiceapp.repository.InvoiceRepository;
+import com.invoiceapp.service.AgingReportService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class AgingReportServiceTest {
+
+    private InvoiceRepository repo;
+    private AgingReportService service;
+    private User user;
+    private final LocalDate asOf = LocalDate.of(2025, 6, 30);
+
+    @BeforeEach
+    void setUp() {
+        repo = mock(InvoiceRepository.class);
+        service = new AgingReportService(repo);
+        user = new User();
+        user.setId(1L);
+        user.setEmail("user@example.com");
+    }
+
+    @Test
+    void report_passesOpenStatusesAndCutOffs() {
+        AgingRow row = row("Acme", Currency.USD, "10", "0", "0", "5");
+        when(repo.aging(user, Set.of(InvoiceStatus.SENT, InvoiceStatus.OVERDUE),
+                LocalDate.of(2025, 5, 31), LocalDate.of(2025, 5, 1), LocalDate.of(2025, 4, 1)))
+                .thenReturn(List.of(row));
+
+        assertEquals(List.of(row), service.report(user, asOf));
+    }
+
+    @Test
+    void totalsByCurrency_neverMixesCurrencies() {
+        Map<Currency, AgingRow> totals = AgingReportService.totalsByCurrency(List.of(
+                row("A", Currency.USD, "10", "1", "0", "0"),
+                row("B", Currency.USD, "5", "0", "2", "3"),
+                row("A", Currency.EUR, "7", "0", "0", "0")));
+
+        assertEquals(2, totals.size());
+        assertEquals(new BigDecimal("21"), totals.get(Currency.USD).total());
+        assertEquals(2L, totals.get(Currency.USD).invoiceCount());
+        assertEquals(new BigDecimal("7"), totals.get(Currency.EUR).total());
+    }
+
+    @Test
+    void writeCsv_streamsRowsAndQuotesNames() {
+        when(repo.streamAging(eq(user), any(), any(), any(), any())).thenReturn(Stream.of(
+                row("Acme, Inc.", Currency.USD, "10.00", "0.00", "0.00", "5.50"),
+                row("Plain", Currency.GEL, "1.00", "2.00", "3.00", "4.00")));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.writeCsv(user, asOf, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals("client,currency,invoices,0-30,31-60,61-90,90+,total", lines[0]);
+        assertEquals("\"Acme, Inc.\",USD,1,10.00,0.00,0.00,5.50,15.50", lines[1]);
+        assertEquals("Plain,GEL,1,1.00,2.00,3.00,4.00,10.00", lines[2]);
+    }
+
+    private static AgingRow row(String client, Currency cur, String a, String b, String c, String d) {
+        return new AgingRow(1L, client, cur, 1L,
+                new BigDecimal(a), new BigDecimal(b), new BigDecimal(c), new BigDecimal(d));
+    }
+}
@@ -10,10 +10,12 @@ import com.invoiceapp.repository.ClientRepository;
 import com.invoiceapp.repository.InvoiceRepository;
 import com.invoiceapp.security.UserProvider;
 import com.invoiceapp.service.ClientService;
+import com.invoiceapp.service.InvoiceRollupService;
 import jakarta.persistence.EntityNotFoundException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.*;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
@@ -29,6 +31,8 @@ class ClientServiceTest {
     private ClientRepository clientRepo;
     private InvoiceRepository invoiceRepo;
     private UserProvider userProvider;
+    private InvoiceRollupService rollupService;
+    private ApplicationEventPublisher events;
     private ClientService service;
 
     private User user;
@@ -39,7 +43,9 @@ class ClientServiceTest {
         clientRepo = mock(ClientRepository.class);
         invoiceRepo = mock(InvoiceRepository.class);
         userProvider = mock(UserProvider.class);
-        service = new ClientService(clientRepo, invoiceRepo, userProvider);
+        rollupService = mock(InvoiceRollupService.class);
+        events = mock(ApplicationEventPublisher.class);
+        service = new ClientService(clientRepo, invoiceRepo, userProvider, rollupService, events);
 
         user = new User();
         user.setId(42L);
@@ -152,6 +158,7 @@ class ClientServiceTest {
 
         service.delete(100L);
 
+        verify(rollupService).removeAllForClient(100L);
         verify(invoiceRepo).deleteAllByClientId(100L);
         verify(clientRepo).delete(existingClient);
     }
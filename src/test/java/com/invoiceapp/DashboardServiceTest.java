@@ -1,15 +1,20 @@
 package com.invoiceapp;
 
 import com.invoiceapp.dto.misc.DashboardStats;
+import com.invoiceapp.dto.misc.StatusCurrencyTotal;
 import com.invoiceapp.entity.Currency;
 import com.invoiceapp.entity.User;
-import com.invoiceapp.repository.InvoiceRepository;
+import com.invoiceapp.repository.InvoiceRollupRepository;
 import com.invoiceapp.service.DashboardService;
+import com.invoiceapp.service.DashboardStatsCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Map;
 
 import static com.invoiceapp.entity.InvoiceStatus.*;
@@ -19,7 +24,7 @@ import static org.mockito.Mockito.*;
 
 class DashboardServiceTest {
 
-    private InvoiceRepository repo;
+    private InvoiceRollupRepository repo;
     private DashboardService service;
     private User user;
     private LocalDate from;
@@ -27,8 +32,8 @@ class DashboardServiceTest {
 
     @BeforeEach
     void setUp() {
-        repo = mock(InvoiceRepository.class);
-        service = new DashboardService(repo);
+        repo = mock(InvoiceRollupRepository.class);
+        service = new DashboardService(repo, new DashboardStatsCache(100, Duration.ofMinutes(1), new SimpleMeterRegistry()));
         user = new User();
         user.setId(1L);
         user.setEmail("user@example.com");
@@ -38,46 +43,17 @@ class DashboardServiceTest {
 
     @Test
     void getStatsFor_mixedValues() {
-        // --- counts ---
-        when(repo.countByStatusAndUserAndArchivedFalseAndIssueDateBetween(DRAFT,   user, from, to)).thenReturn(1L);
-        when(repo.countByStatusAndUserAndArchivedFalseAndIssueDateBetween(SENT,    user, from, to)).thenReturn(2L);
-        when(repo.countByStatusAndUserAndArchivedFalseAndIssueDateBetween(OVERDUE, user, from, to)).thenReturn(3L);
-        when(repo.countByStatusAndUserAndArchivedFalseAndIssueDateBetween(PAID,    user, from, to)).thenReturn(4L);
-
-        // --- overall sums ---
-        when(repo.sumTotalByStatusAndUserAndArchivedFalseAndIssueDateBetween(PAID,    user, from, to)).thenReturn(BigDecimal.valueOf(100));
-        when(repo.sumTotalByStatusAndUserAndArchivedFalseAndIssueDateBetween(SENT,    user, from, to)).thenReturn(BigDecimal.valueOf(50));
-        when(repo.sumTotalByStatusAndUserAndArchivedFalseAndIssueDateBetween(OVERDUE, user, from, to)).thenReturn(BigDecimal.valueOf(20));
-
-        // --- per-currency sums ---
-        // USD
-        when(repo.sumTotalByStatusAndUserAndCurrencyAndArchivedFalseAndIssueDateBetween(PAID,    user, Currency.USD, from, to))
-                .thenReturn(BigDecimal.valueOf(40));
-        when(repo.sumTotalByStatusAndUserAndCurrencyAndArchivedFalseAndIssueDateBetween(SENT,    user, Currency.USD, from, to))
-                .thenReturn(BigDecimal.valueOf(10));
-        when(repo.sumTotalByStatusAndUserAndCurrencyAndArchivedFalseAndIssueDateBetween(OVERDUE, user, Currency.USD, from, to))
-                .thenReturn(BigDecimal.valueOf(5));
-        // EUR (null revenue)
-        when(repo.sumTotalByStatusAndUserAndCurrencyAndArchivedFalseAndIssueDateBetween(PAID,    user, Currency.EUR, from, to))
-                .thenReturn(null);
-        when(repo.sumTotalByStatusAndUserAndCurrencyAndArchivedFalseAndIssueDateBetween(SENT,    user, Currency.EUR, from, to))
-                .thenReturn(BigDecimal.valueOf(2));
-        when(repo.sumTotalByStatusAndUserAndCurrencyAndArchivedFalseAndIssueDateBetween(OVERDUE, user, Currency.EUR, from, to))
-                .thenReturn(null);
-        // GBP (all null)
-        when(repo.sumTotalByStatusAndUserAndCurrencyAndArchivedFalseAndIssueDateBetween(eq(PAID),    eq(user), eq(Currency.GBP), any(), any()))
-                .thenReturn(null);
-        when(repo.sumTotalByStatusAndUserAndCurrencyAndArchivedFalseAndIssueDateBetween(eq(SENT),    eq(user), eq(Currency.GBP), any(), any()))
-                .thenReturn(null);
-        when(repo.sumTotalByStatusAndUserAndCurrencyAndArchivedFalseAndIssueDateBetween(eq(OVERDUE), eq(user), eq(Currency.GBP), any(), any()))
-                .thenReturn(null);
-        // GEL
-        when(repo.sumTotalByStatusAndUserAndCurrencyAndArchivedFalseAndIssueDateBetween(PAID,    user, Currency.GEL, from, to))
-                .thenReturn(BigDecimal.valueOf(1));
-        when(repo.sumTotalByStatusAndUserAndCurrencyAndArchivedFalseAndIssueDateBetween(SENT,    user, Currency.GEL, from, to))
-                .thenReturn(BigDecimal.valueOf(1));
-        when(repo.sumTotalByStatusAndUserAndCurrencyAndArchivedFalseAndIssueDateBetween(OVERDUE, user, Currency.GEL, from, to))
-                .thenReturn(BigDecimal.valueOf(1));
+        // --- one grouped row per (status, currency) ---
+        when(repo.aggregateByStatusAndCurrency(1L, from, to)).thenReturn(List.of(
+                new StatusCurrencyTotal(DRAFT,   Currency.USD, 1L, BigDecimal.valueOf(7)),
+                new StatusCurrencyTotal(SENT,    Currency.USD, 1L, BigDecimal.valueOf(10)),
+                new StatusCurrencyTotal(SENT,    Currency.EUR, 1L, BigDecimal.valueOf(2)),
+                new StatusCurrencyTotal(SENT,    Currency.GEL, 0L, BigDecimal.valueOf(1)),
+                new StatusCurrencyTotal(OVERDUE, Currency.USD, 2L, BigDecimal.valueOf(5)),
+                new StatusCurrencyTotal(OVERDUE, Currency.GEL, 1L, BigDecimal.valueOf(1)),
+                new StatusCurrencyTotal(PAID,    Currency.USD, 3L, BigDecimal.valueOf(40)),
+                new StatusCurrencyTotal(PAID,    Currency.GEL, 1L, BigDecimal.valueOf(1))
+        ));
 
         DashboardStats stats = service.getStatsFor(user, from, to);
 
@@ -89,8 +65,8 @@ class DashboardServiceTest {
         assertEquals(1+2+3+4, stats.getTotalInvoices());
 
         // verify overall sums
-        assertEquals(BigDecimal.valueOf(100), stats.getRevenue());
-        assertEquals(BigDecimal.valueOf(50 + 20), stats.getOutstanding());
+        assertEquals(BigDecimal.valueOf(40 + 1), stats.getRevenue());
+        assertEquals(BigDecimal.valueOf(10 + 2 + 1 + 5 + 1), stats.getOutstanding());
 
         // verify per-currency maps
         Map<String, BigDecimal> revMap = stats.getRevenueByCurrency();
@@ -99,28 +75,42 @@ class DashboardServiceTest {
         // USD
         assertEquals(BigDecimal.valueOf(40), revMap.get("USD"));
         assertEquals(BigDecimal.valueOf(10 + 5), outMap.get("USD"));
-        // EUR null→0
+        // EUR no revenue row→0
         assertEquals(BigDecimal.ZERO, revMap.get("EUR"));
         assertEquals(BigDecimal.valueOf(2), outMap.get("EUR"));
-        // GBP all null→0
+        // GBP no rows→0
         assertEquals(BigDecimal.ZERO, revMap.get("GBP"));
         assertEquals(BigDecimal.ZERO, outMap.get("GBP"));
         // GEL
         assertEquals(BigDecimal.valueOf(1), revMap.get("GEL"));
         assertEquals(BigDecimal.valueOf(1 + 1), outMap.get("GEL"));
+
+        // the whole dashboard is one round trip against the rollup
+        verify(repo, times(1)).aggregateByStatusAndCurrency(1L, from, to);
+        verifyNoMoreInteractions(repo);
+    }
+
+    @Test
+    void getStatsFor_countsInvoicesBeingSentAsSentAndFailedSendsApart() {
+        when(repo.aggregateByStatusAndCurrency(1L, from, to)).thenReturn(List.of(
+                new StatusCurrencyTotal(SENT,        Currency.USD, 1L, BigDecimal.valueOf(10)),
+                new StatusCurrencyTotal(SENDING,     Currency.USD, 2L, BigDecimal.valueOf(6)),
+                new StatusCurrencyTotal(SEND_FAILED, Currency.USD, 3L, BigDecimal.valueOf(9))
+        ));
+
+        DashboardStats stats = service.getStatsFor(user, from, to);
+
+        assertEquals(1 + 2, stats.getSent());
+        assertEquals(3, stats.getSendFailed());
+        assertEquals(1 + 2 + 3, stats.getTotalInvoices());
+        // a failed send never reached the client, so it is not owed yet
+        assertEquals(BigDecimal.valueOf(10 + 6), stats.getOutstanding());
+        assertEquals(BigDecimal.valueOf(10 + 6), stats.getOutstandingByCurrency().get("USD"));
     }
 
     @Test
-    void getStatsFor_allNullSums_fallbacksToZero() {
-        // counts
-        when(repo.countByStatusAndUserAndArchivedFalseAndIssueDateBetween(any(), any(), any(), any()))
-                .thenReturn(0L);
-        // overall sums null
-        when(repo.sumTotalByStatusAndUserAndArchivedFalseAndIssueDateBetween(any(), any(), any(), any()))
-                .thenReturn(null);
-        // per-currency sums null
-        when(repo.sumTotalByStatusAndUserAndCurrencyAndArchivedFalseAndIssueDateBetween(any(), any(), any(), any(), any()))
-                .thenReturn(null);
+    void getStatsFor_noRows_fallbacksToZero() {
+        when(repo.aggregateByStatusAndCurrency(any(), any(), any())).thenReturn(List.of());
 
         DashboardStats stats = service.getStatsFor(user, from, to);
 
@@ -130,6 +120,7 @@ class DashboardServiceTest {
         assertEquals(0, stats.getSent());
         assertEquals(0, stats.getOverdue());
         assertEquals(0, stats.getPaid());
+        assertEquals(0, stats.getSendFailed());
         assertEquals(BigDecimal.ZERO, stats.getRevenue());
         assertEquals(BigDecimal.ZERO, stats.getOutstanding());
 
@@ -0,0 +1,99 @@
+package com.invoiceapp;
+
+import com.invoiceapp.dto.misc.DashboardStats;
+import com.invoiceapp.event.InvoiceChangedEvent;
+import com.invoiceapp.service.DashboardStatsCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class DashboardStatsCacheTest {
+
+    private MeterRegistry registry;
+    private DashboardStatsCache cache;
+    private final LocalDate from = LocalDate.of(2025, 1, 1);
+    private final LocalDate to   = LocalDate.of(2025, 1, 31);
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        cache = new DashboardStatsCache(2, Duration.ofMinutes(1), registry);
+    }
+
+    @Test
+    void get_secondCallIsServedFromCache() {
+        AtomicInteger loads = new AtomicInteger();
+        DashboardStats stats = mock(DashboardStats.class);
+
+        assertSame(stats, cache.get(1L, from, to, () -> { loads.incrementAndGet(); return stats; }));
+        assertSame(stats, cache.get(1L, from, to, () -> { loads.incrementAndGet(); return stats; }));
+
+        assertEquals(1, loads.get());
+        assertEquals(1.0, gets("hit"));
+        assertEquals(1.0, gets("miss"));
+    }
+
+    @Test
+    void expiredEntry_isLoadedAgain() {
+        //e.g. another instance changed the user's invoices; its events never reach this cache
+        cache = new DashboardStatsCache(2, Duration.ZERO, registry);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get(1L, from, to, () -> { loads.incrementAndGet(); return mock(DashboardStats.class); });
+        cache.get(1L, from, to, () -> { loads.incrementAndGet(); return mock(DashboardStats.class); });
+
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void invoiceChanged_dropsOnlyThatUsersEntries() {
+        cache.get(1L, from, to, () -> mock(DashboardStats.class));
+        cache.get(2L, from, to, () -> mock(DashboardStats.class));
+
+        cache.onInvoiceChanged(new InvoiceChangedEvent(1L, 10L, null));
+
+        assertEquals(1, cache.size());
+        AtomicInteger loads = new AtomicInteger();
+        cache.get(1L, from, to, () -> { loads.incrementAndGet(); return mock(DashboardStats.class); });
+        cache.get(2L, from, to, () -> { loads.incrementAndGet(); return mock(DashboardStats.class); });
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void get_overCapacity_evictsLeastRecentlyUsed() {
+        cache.get(1L, from, to, () -> mock(DashboardStats.class));
+        cache.get(2L, from, to, () -> mock(DashboardStats.class));
+        cache.get(1L, from, to, () -> mock(DashboardStats.class)); // touch user 1
+        cache.get(3L, from, to, () -> mock(DashboardStats.class)); // pushes out user 2
+
+        assertEquals(2, cache.size());
+        assertEquals(1.0, registry.get("cache.evictions").functionCounter().count());
+        AtomicInteger loads = new AtomicInteger();
+        cache.get(1L, from, to, () -> { loads.incrementAndGet(); return mock(DashboardStats.class); });
+        assertEquals(0, loads.get());
+    }
+
+    @Test
+    void get_invalidatedWhileLoading_doesNotStoreStaleResult() {
+        cache.get(1L, from, to, () -> {
+            // a commit lands while the stats are being computed
+            cache.invalidate(1L);
+            return mock(DashboardStats.class);
+        });
+
+        assertEquals(0, cache.size());
+    }
+
+    private double gets(String result) {
+        return registry.get("cache.gets").tag("result", result).functionCounter().count();
+    }
+}
@@ -0,0 +1,144 @@
+package com.invoiceapp;
+
+import com.invoiceapp.dto.misc.DashboardStats;
+import com.invoiceapp.dto.misc.DashboardStatsDelta;
+import com.invoiceapp.entity.InvoiceStatus;
+import com.invoiceapp.entity.Role;
+import com.invoiceapp.entity.User;
+import com.invoiceapp.event.InvoiceChangedEvent;
+import com.invoiceapp.service.DashboardService;
+import com.invoiceapp.service.DashboardStreamService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class DashboardStreamServiceTest {
+
+    private DashboardService dashboardService;
+    private DashboardStreamService service;
+    private SimpleMeterRegistry registry;
+    private final List<Runnable> queued = new ArrayList<>();
+
+    private final User user = new User(1L, "owner@test.com", "p", Role.USER, true);
+    private final LocalDate from = LocalDate.of(2025, 1, 1);
+    private final LocalDate to = LocalDate.of(2025, 1, 31);
+
+    @BeforeEach
+    void setUp() {
+        dashboardService = mock(DashboardService.class);
+        registry = new SimpleMeterRegistry();
+        //queued instead of run, so the test decides when the executor gets to the work
+        service = new DashboardStreamService(dashboardService, queued::add, Duration.ofMinutes(1), registry);
+    }
+
+    @Test
+    void subscribe_registersConnectionWithCurrentStatsAsBaseline() {
+        when(dashboardService.getStatsFor(user, from, to)).thenReturn(stats(1, 0, "0"));
+
+        service.subscribe(user, from, to);
+
+        assertEquals(1, service.connections());
+        assertEquals(1.0, registry.get("dashboard.stream.connections").gauge().value());
+        verify(dashboardService).getStatsFor(user, from, to);
+    }
+
+    @Test
+    void changes_ofUsersWithoutStreams_areIgnored() {
+        service.onInvoiceChanged(new InvoiceChangedEvent(99L, 5L, InvoiceStatus.PAID));
+
+        assertTrue(queued.isEmpty());
+        verifyNoInteractions(dashboardService);
+    }
+
+    @Test
+    void burstOfChanges_reloadsOncePerUser() {
+        when(dashboardService.getStatsFor(user, from, to))
+                .thenReturn(stats(2, 0, "0"))
+                .thenReturn(stats(0, 2, "30"));
+        service.subscribe(user, from, to);
+
+        //e.g. the overdue sweep touching several invoices of the same user
+        service.onInvoiceChanged(new InvoiceChangedEvent(1L, 10L, InvoiceStatus.PAID));
+        service.onInvoiceChanged(new InvoiceChangedEvent(1L, 11L, InvoiceStatus.PAID));
+        assertEquals(1, queued.size());
+
+        queued.remove(0).run();
+        verify(dashboardService, times(2)).getStatsFor(user, from, to);
+
+        //the next change after the push schedules a new reload
+        service.onInvoiceChanged(new InvoiceChangedEvent(1L, 12L, InvoiceStatus.SENT));
+        assertEquals(1, queued.size());
+    }
+
+    @Test
+    void heartbeat_isWrittenOnTheExecutorOncePerUser() {
+        when(dashboardService.getStatsFor(user, from, to)).thenReturn(stats(1, 0, "0"));
+        service.subscribe(user, from, to);
+        service.subscribe(user, from, to);
+
+        //one task for both of the user's streams; the scheduler thread writes nothing itself
+        service.heartbeat();
+        assertEquals(1, queued.size());
+
+        //not written yet, e.g. a stalled client: the next interval does not queue another behind it
+        service.heartbeat();
+        assertEquals(1, queued.size());
+
+        queued.remove(0).run();
+        service.heartbeat();
+        assertEquals(1, queued.size());
+    }
+
+    @Test
+    void fullExecutor_skipsTheWriteAndLaterOnesStillGetThrough() {
+        AtomicBoolean full = new AtomicBoolean(true);
+        service = new DashboardStreamService(dashboardService, task -> {
+            if (full.get()) {
+                throw new RejectedExecutionException("full");
+            }
+            queued.add(task);
+        }, Duration.ofMinutes(1), registry);
+        when(dashboardService.getStatsFor(user, from, to)).thenReturn(stats(1, 0, "0"));
+        service.subscribe(user, from, to);
+
+        //nothing runs on the calling thread
+        service.onInvoiceChanged(new InvoiceChangedEvent(1L, 10L, InvoiceStatus.PAID));
+        service.heartbeat();
+        verify(dashboardService, times(1)).getStatsFor(user, from, to);
+
+        full.set(false);
+        service.onInvoiceChanged(new InvoiceChangedEvent(1L, 11L, InvoiceStatus.PAID));
+        service.heartbeat();
+        assertEquals(2, queued.size());
+    }
+
+    @Test
+    void delta_carriesOnlyChangedFields() {
+        DashboardStatsDelta delta = DashboardStatsDelta.between(7L, InvoiceStatus.PAID,
+                stats(2, 0, "0.00"), stats(1, 1, "25.0"));
+
+        assertEquals(7L, delta.invoiceId());
+        assertEquals(Map.of("sent", 1L, "paid", 1L, "revenue", new BigDecimal("25.0"),
+                "revenueByCurrency", Map.of("USD", new BigDecimal("25.0"))), delta.changes());
+        assertTrue(DashboardStatsDelta.between(7L, InvoiceStatus.PAID,
+                stats(1, 1, "25.00"), stats(1, 1, "25.0")).isEmpty());
+    }
+
+    private static DashboardStats stats(long sent, long paid, String revenue) {
+        BigDecimal rev = new BigDecimal(revenue);
+        return new DashboardStats(sent + paid, 0, sent, 0, paid, 0, rev, BigDecimal.ZERO,
+                Map.of("USD", rev), Map.of("USD", BigDecimal.ZERO));
+    }
+}
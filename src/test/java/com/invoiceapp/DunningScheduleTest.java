@@ -0,0 +1,74 @@
+package com.invoiceapp;
+
+import com.invoiceapp.entity.Invoice;
+import com.invoiceapp.service.DunningSchedule;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DunningScheduleTest {
+
+    private static final LocalDate DUE = LocalDate.of(2025, 6, 20);
+
+    private final DunningSchedule schedule =
+            new DunningSchedule(List.of(0, -3), 7, LocalTime.of(8, 0), LocalTime.of(18, 0));
+
+    @Test
+    void walksTheOffsetsThenRepeatsWhileUnpaid() {
+        Invoice inv = invoice(42L);
+        LocalTime slot = schedule.nextAfter(inv, DUE.minusDays(10).atStartOfDay()).toLocalTime();
+
+        assertThat(schedule.nextAfter(inv, DUE.minusDays(10).atStartOfDay())).isEqualTo(DUE.minusDays(3).atTime(slot));
+        assertThat(schedule.nextAfter(inv, DUE.minusDays(3).atTime(slot))).isEqualTo(DUE.atTime(slot));
+        assertThat(schedule.nextAfter(inv, DUE.atTime(slot))).isEqualTo(DUE.plusDays(7).atTime(slot));
+        assertThat(schedule.nextAfter(inv, DUE.plusDays(7).atTime(slot))).isEqualTo(DUE.plusDays(14).atTime(slot));
+    }
+
+    @Test
+    void afterDowntime_jumpsToTheNextPointInsteadOfReplayingMissedOnes() {
+        Invoice inv = invoice(42L);
+        LocalDateTime now = DUE.plusDays(40).atTime(23, 0);
+
+        LocalDateTime next = schedule.nextAfter(inv, now);
+
+        assertThat(next).isAfter(now);
+        assertThat(next.toLocalDate()).isEqualTo(DUE.plusDays(42));
+    }
+
+    @Test
+    void remindersSpreadAcrossTheWindow() {
+        Set<Integer> hours = new HashSet<>();
+        for (long id = 1; id <= 200; id++) {
+            LocalTime at = schedule.nextAfter(invoice(id), DUE.minusDays(10).atStartOfDay()).toLocalTime();
+            assertThat(at).isBetween(LocalTime.of(8, 0), LocalTime.of(18, 0));
+            hours.add(at.getHour());
+        }
+        assertThat(hours).hasSize(10);
+    }
+
+    @Test
+    void noDueDate_noReminder() {
+        assertThat(schedule.nextAfter(new Invoice(), LocalDateTime.now())).isNull();
+    }
+
+    @Test
+    void windowMustEndAfterItStarts() {
+        assertThatThrownBy(() -> new DunningSchedule(List.of(0), 7, LocalTime.of(18, 0), LocalTime.of(8, 0)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Invoice invoice(Long id) {
+        Invoice inv = new Invoice();
+        inv.setId(id);
+        inv.setDueDate(DUE);
+        return inv;
+    }
+}
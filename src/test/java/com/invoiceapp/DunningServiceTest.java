@@ -0,0 +1,138 @@
+package com.invoiceapp;
+
+import com.invoiceapp.entity.*;
+import com.invoiceapp.repository.InvoiceRepository;
+import com.invoiceapp.service.DunningSchedule;
+import com.invoiceapp.service.DunningService;
+import com.invoiceapp.service.EmailService;
+import com.invoiceapp.service.JobLockService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class DunningServiceTest {
+
+    private InvoiceRepository invoiceRepo;
+    private EmailService emailService;
+    private JobLockService jobLocks;
+    private SimpleMeterRegistry registry;
+    private DunningService service;
+    private User user;
+    private Client client;
+
+    @BeforeEach
+    void setUp() {
+        invoiceRepo = mock(InvoiceRepository.class);
+        emailService = mock(EmailService.class);
+        jobLocks = mock(JobLockService.class);
+        TransactionTemplate tx = mock(TransactionTemplate.class);
+        when(tx.execute(any())).thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        when(jobLocks.runExclusively(anyString(), any())).thenAnswer(inv -> {
+            inv.<Consumer<JobLockService.Lease>>getArgument(1).accept(() -> true);
+            return true;
+        });
+
+        registry = new SimpleMeterRegistry();
+        DunningSchedule schedule = new DunningSchedule(List.of(-3, 0), 7, LocalTime.of(8, 0), LocalTime.of(18, 0));
+        service = new DunningService(invoiceRepo, schedule, emailService, jobLocks, tx, 2, registry);
+
+        user = new User(1L, "user@test.com", "pass", Role.USER, true);
+        client = new Client(1L, "Test Client", "client@test.com", "123", user);
+    }
+
+    @Test
+    void poll_sendsDueRemindersAndReschedulesEach() {
+        Invoice upcoming = invoice(1L, InvoiceStatus.SENT, LocalDate.now().plusDays(5));
+        Invoice overdue = invoice(2L, InvoiceStatus.OVERDUE, LocalDate.now().minusDays(5));
+        when(invoiceRepo.findRemindersDue(any(), eq(Limit.of(2))))
+                .thenReturn(List.of(upcoming, overdue), Collections.emptyList());
+
+        service.poll();
+
+        verify(emailService).sendHtml(eq("client@test.com"), eq("Payment reminder: invoice INV-1"), contains("is due on"));
+        verify(emailService).sendHtml(eq("client@test.com"), eq("Overdue Invoice INV-2"), contains("now overdue"));
+        // next point on the cadence: three days before due
+        assertThat(upcoming.getNextReminderAt().toLocalDate()).isEqualTo(LocalDate.now().plusDays(2));
+        assertThat(overdue.getNextReminderAt()).isAfter(LocalDateTime.now());
+        assertThat(registry.get("dunning.reminders").counter().count()).isEqualTo(2.0);
+        // a full batch asks for more, the empty one ends the poll
+        verify(invoiceRepo, times(2)).findRemindersDue(any(), any());
+    }
+
+    @Test
+    void poll_dropsRemindersOfInvoicesNoLongerOwed() {
+        Invoice paid = invoice(1L, InvoiceStatus.PAID, LocalDate.now());
+        Invoice clicked = invoice(2L, InvoiceStatus.SENT, LocalDate.now());
+        clicked.setPaymentIntentAt(LocalDateTime.now().minusHours(1));
+        when(invoiceRepo.findRemindersDue(any(), any())).thenReturn(List.of(paid, clicked), Collections.emptyList());
+
+        service.poll();
+
+        verify(emailService, never()).sendHtml(any(), any(), any());
+        assertThat(paid.getNextReminderAt()).isNull();
+        assertThat(clicked.getNextReminderAt()).isNull();
+    }
+
+    @Test
+    void poll_leavesDueRemindersWhileTheOutboxIsBackedUp() {
+        when(emailService.isBackedUp()).thenReturn(true);
+
+        service.poll();
+
+        verify(invoiceRepo, never()).findRemindersDue(any(), any());
+    }
+
+    @Test
+    void backfill_schedulesUnpaidInvoicesWithoutAReminder() {
+        Invoice a = invoice(5L, InvoiceStatus.SENT, LocalDate.now().plusDays(10));
+        Invoice b = invoice(9L, InvoiceStatus.OVERDUE, LocalDate.now().minusDays(2));
+        Invoice c = invoice(12L, InvoiceStatus.SENT, LocalDate.now().plusDays(1));
+        when(invoiceRepo.findUnscheduledAfterId(any(), eq(0L), any())).thenReturn(List.of(a, b));
+        when(invoiceRepo.findUnscheduledAfterId(any(), eq(9L), any())).thenReturn(List.of(c));
+
+        service.backfill();
+
+        assertThat(List.of(a, b, c)).allMatch(i -> i.getNextReminderAt() != null && i.getNextReminderAt().isAfter(LocalDateTime.now()));
+        verify(invoiceRepo, times(2)).findUnscheduledAfterId(any(), anyLong(), any());
+        verify(jobLocks).runExclusively(eq("dunning-backfill"), any());
+    }
+
+    @Test
+    void backfill_lockHeldByAnotherNode_doesNothing() {
+        when(jobLocks.runExclusively(eq("dunning-backfill"), any())).thenReturn(false);
+
+        service.backfill();
+
+        verify(invoiceRepo, never()).findUnscheduledAfterId(any(), anyLong(), any());
+    }
+
+    private Invoice invoice(Long id, InvoiceStatus status, LocalDate due) {
+        Invoice inv = new Invoice();
+        inv.setId(id);
+        inv.setUser(user);
+        inv.setClient(client);
+        inv.setStatus(status);
+        inv.setInvoiceNumber("INV-" + id);
+        inv.setDueDate(due);
+        inv.setNextReminderAt(LocalDateTime.now().minusMinutes(1));
+        return inv;
+    }
+}
@@ -1,23 +1,38 @@
 package com.invoiceapp;
 
+import com.invoiceapp.entity.OutboxEmail;
+import com.invoiceapp.entity.OutboxStatus;
+import com.invoiceapp.event.EmailQueuedEvent;
+import com.invoiceapp.repository.OutboxEmailRepository;
 import com.invoiceapp.service.EmailService;
+import com.invoiceapp.service.SmtpTransportPool;
+import jakarta.mail.MessagingException;
 import jakarta.mail.Session;
 import jakarta.mail.internet.MimeMessage;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.test.util.ReflectionTestUtils;
 import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.*;
 
 
 class EmailServiceTest {
 
     private JavaMailSender mailSender;
+    private OutboxEmailRepository outboxRepo;
+    private ApplicationEventPublisher events;
+    private SmtpTransportPool transportPool;
     private EmailService emailService;
-    private MimeMessage mimeMessage;
 
     @Value("${invoiceapp.mail.from}")
     private String from = "no-reply@invoiceapp.com";  // Default value for tests
@@ -25,25 +40,70 @@ class EmailServiceTest {
     @BeforeEach
     void setUp() throws NoSuchFieldException, IllegalAccessException {
         mailSender   = mock(JavaMailSender.class);
-        emailService = new EmailService(mailSender);
+        outboxRepo   = mock(OutboxEmailRepository.class);
+        events       = mock(ApplicationEventPublisher.class);
+        transportPool = mock(SmtpTransportPool.class);
+        emailService = new EmailService(mailSender, outboxRepo, events, transportPool);
 
         // Using reflection to inject the 'from' value into the private field
         Field field = emailService.getClass().getDeclaredField("from");
         field.setAccessible(true);  // Make the private field accessible
         field.set(emailService, from);  // Set the 'from' value using reflection
 
-        mimeMessage  = new MimeMessage((Session) null);
-        when(mailSender.createMimeMessage()).thenReturn(mimeMessage);
+        when(mailSender.createMimeMessage()).thenAnswer(inv -> new MimeMessage((Session) null));
     }
 
     @Test
-    void sendMime_whenMailSenderThrows_wrapsException() {
-        when(mailSender.createMimeMessage()).thenReturn(mimeMessage);
-        doThrow(new RuntimeException("SMTP down")).when(mailSender).send(any(MimeMessage.class));
+    void sendHtml_writesToOutboxWithoutTouchingSmtp() {
+        when(outboxRepo.save(any(OutboxEmail.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        emailService.sendHtml("client@user.com", "Subject", "<b>Body</b>");
+
+        ArgumentCaptor<OutboxEmail> saved = ArgumentCaptor.forClass(OutboxEmail.class);
+        verify(outboxRepo).save(saved.capture());
+        assertEquals("client@user.com", saved.getValue().getRecipient());
+        assertEquals(OutboxStatus.PENDING, saved.getValue().getStatus());
+        verify(events).publishEvent(any(EmailQueuedEvent.class));
+        verifyNoInteractions(mailSender);
+    }
+
+    @Test
+    void isBackedUp_onceThePendingBacklogReachesTheLimit() {
+        ReflectionTestUtils.setField(emailService, "maxPending", 100L);
+        when(outboxRepo.countByStatus(OutboxStatus.PENDING)).thenReturn(99L, 100L);
+
+        assertFalse(emailService.isBackedUp());
+        assertTrue(emailService.isBackedUp());
+    }
+
+    @Test
+    void deliver_whenSmtpRefuses_wrapsException() {
+        when(transportPool.sendAll(anyList()))
+                .thenReturn(Collections.singletonList(new MessagingException("SMTP down")));
 
         RuntimeException ex = assertThrows(RuntimeException.class, () ->
-                emailService.sendHtml("fail@user.com","Subject","<b>Body</b>")
+                emailService.deliver(new OutboxEmail("fail@user.com", "Subject", "<b>Body</b>", null, null, null))
         );
         assertTrue(ex.getMessage().contains("mail send failed"));
     }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void deliverBatch_sendsAllMessagesInOnePoolCallAndReportsEachOutcome() throws Exception {
+        when(transportPool.sendAll(anyList()))
+                .thenReturn(Arrays.asList(null, new MessagingException("mailbox full"), null));
+
+        List<RuntimeException> errors = emailService.deliverBatch(List.of(
+                new OutboxEmail("a@user.com", "Invoice A", "<b>A</b>", null, null, null),
+                new OutboxEmail("b@user.com", "Invoice B", "<b>B</b>", null, null, null),
+                new OutboxEmail("c@user.com", "Invoice C", "plain", "%PDF".getBytes(), "c.pdf", "application/pdf")));
+
+        ArgumentCaptor<List<MimeMessage>> sent = ArgumentCaptor.forClass(List.class);
+        verify(transportPool).sendAll(sent.capture());
+        assertEquals(3, sent.getValue().size());
+        assertEquals("b@user.com", sent.getValue().get(1).getAllRecipients()[0].toString());
+        assertNull(errors.get(0));
+        assertTrue(errors.get(1).getCause() instanceof MessagingException);
+        assertNull(errors.get(2));
+    }
 }
@@ -0,0 +1,99 @@
+package com.invoiceapp;
+
+import com.invoiceapp.dto.misc.ConsolidatedTotals;
+import com.invoiceapp.dto.misc.DashboardStats;
+import com.invoiceapp.entity.Currency;
+import com.invoiceapp.entity.FxRate;
+import com.invoiceapp.repository.FxRateRepository;
+import com.invoiceapp.service.FxRateService;
+import com.invoiceapp.service.FxRates;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class FxRateServiceTest {
+
+    private FxRateRepository repo;
+    private FxRateService service;
+
+    @BeforeEach
+    void setUp() {
+        repo = mock(FxRateRepository.class);
+        service = new FxRateService(repo, new TransactionTemplate(mock(PlatformTransactionManager.class)), "");
+    }
+
+    @Test
+    void consolidate_convertsPerCurrencySumsIntoBase() {
+        service.update(Map.of(Currency.EUR, new BigDecimal("1.10"), Currency.GEL, new BigDecimal("0.40")));
+
+        ConsolidatedTotals totals = service.consolidate(stats(
+                Map.of("USD", new BigDecimal("100"), "EUR", new BigDecimal("10"), "GBP", BigDecimal.ZERO, "GEL", BigDecimal.ZERO),
+                Map.of("USD", BigDecimal.ZERO, "EUR", BigDecimal.ZERO, "GBP", BigDecimal.ZERO, "GEL", new BigDecimal("50"))),
+                Currency.EUR);
+
+        // 100 USD = 90.91 EUR, 10 EUR stays 10
+        assertEquals(new BigDecimal("100.91"), totals.revenue());
+        // 50 GEL = 20 USD = 18.18 EUR
+        assertEquals(new BigDecimal("18.18"), totals.outstanding());
+        assertTrue(totals.complete());
+    }
+
+    @Test
+    void consolidate_missingRate_isReportedNotGuessed() {
+        ConsolidatedTotals totals = service.consolidate(stats(
+                Map.of("USD", new BigDecimal("5"), "EUR", BigDecimal.ZERO, "GBP", new BigDecimal("7"), "GEL", BigDecimal.ZERO),
+                Map.of("USD", BigDecimal.ZERO, "EUR", BigDecimal.ZERO, "GBP", BigDecimal.ZERO, "GEL", BigDecimal.ZERO)),
+                Currency.USD);
+
+        assertEquals(new BigDecimal("5"), totals.revenue());
+        assertEquals(Set.of(Currency.GBP), totals.missingRates());
+    }
+
+    @Test
+    void update_swapsSnapshotAndKeepsOtherRates() {
+        service.update(Map.of(Currency.EUR, new BigDecimal("1.10")));
+        FxRates before = service.current();
+
+        service.update(Map.of(Currency.GBP, new BigDecimal("1.25")));
+
+        assertNotSame(before, service.current());
+        assertEquals(new BigDecimal("1.10"), service.current().usdPerUnit().get(Currency.EUR));
+        assertEquals(new BigDecimal("1.25"), service.current().usdPerUnit().get(Currency.GBP));
+        // the old snapshot is untouched
+        assertFalse(before.has(Currency.GBP));
+        verify(repo, times(2)).save(any(FxRate.class));
+    }
+
+    @Test
+    void update_nonPositiveRate_throws() {
+        assertThrows(IllegalArgumentException.class, () -> service.update(Map.of(Currency.EUR, BigDecimal.ZERO)));
+        verifyNoInteractions(repo);
+    }
+
+    @Test
+    void importFile_readsCurrencyRatePairs(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("rates.properties");
+        Files.writeString(file, "EUR=1.08\ngel = 0.37\n");
+
+        service.importFile(file);
+
+        assertEquals(new BigDecimal("1.08"), service.current().usdPerUnit().get(Currency.EUR));
+        assertEquals(new BigDecimal("0.37"), service.current().usdPerUnit().get(Currency.GEL));
+    }
+
+    private static DashboardStats stats(Map<String, BigDecimal> rev, Map<String, BigDecimal> out) {
+        return new DashboardStats(0, 0, 0, 0, 0, 0, BigDecimal.ZERO, BigDecimal.ZERO, rev, out);
+    }
+}
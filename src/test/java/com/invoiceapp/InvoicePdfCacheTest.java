@@ -0,0 +1,205 @@
+package com.invoiceapp;
+
+import com.invoiceapp.entity.Invoice;
+import com.invoiceapp.entity.InvoiceStatus;
+import com.invoiceapp.service.InvoicePdfCache;
+import com.invoiceapp.service.InvoicePdfService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.Resource;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class InvoicePdfCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private InvoicePdfService pdfService;
+    private SimpleMeterRegistry registry;
+    private InvoicePdfCache cache;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        pdfService = mock(InvoicePdfService.class);
+        registry = new SimpleMeterRegistry();
+        cache = new InvoicePdfCache(pdfService, dir, DataSize.ofBytes(10), registry);
+    }
+
+    private Invoice invoice(Long id, String fingerprint, byte[] pdf) {
+        Invoice inv = new Invoice();
+        inv.setId(id);
+        inv.setStatus(InvoiceStatus.SENT);
+        when(pdfService.fingerprint(inv)).thenReturn(fingerprint);
+        renders(inv, pdf);
+        return inv;
+    }
+
+    private void renders(Invoice inv, byte[] pdf) {
+        doAnswer(a -> {
+            a.<OutputStream>getArgument(1).write(pdf);
+            return null;
+        }).when(pdfService).generate(eq(inv), any(OutputStream.class));
+    }
+
+    @Test
+    void secondDownload_isServedFromTheFileWithoutRendering() throws IOException {
+        Invoice inv = invoice(1L, "aa", new byte[]{1, 2, 3});
+
+        Path first = cache.invoice(inv);
+        Path second = cache.invoice(inv);
+
+        assertThat(second).isEqualTo(first);
+        assertThat(Files.readAllBytes(second)).containsExactly(1, 2, 3);
+        verify(pdfService, times(1)).generate(eq(inv), any(OutputStream.class));
+        assertThat(registry.get("pdf.cache.hits").counter().count()).isEqualTo(1.0);
+        assertThat(registry.get("pdf.cache.misses").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void missedDownload_isWrittenToTheClientAndCachedInOnePass() {
+        Invoice inv = invoice(1L, "aa", new byte[]{1, 2, 3});
+        assertThat(cache.invoiceDownload(inv)).isEmpty();
+
+        ByteArrayOutputStream client = new ByteArrayOutputStream();
+        cache.writeInvoice(inv, client);
+
+        assertThat(client.toByteArray()).containsExactly(1, 2, 3);
+        assertThat(cache.invoiceDownload(inv)).isPresent();
+        assertThat(cache.size()).isEqualTo(3);
+        verify(pdfService, times(1)).generate(eq(inv), any(OutputStream.class));
+    }
+
+    @Test
+    void failedStreamedRender_leavesNothingBehind() {
+        Invoice inv = invoice(1L, "aa", new byte[0]);
+        doAnswer(a -> {
+            a.<OutputStream>getArgument(1).write(new byte[]{1});
+            throw new RuntimeException("Failed to generate PDF");
+        }).when(pdfService).generate(eq(inv), any(OutputStream.class));
+
+        assertThatThrownBy(() -> cache.writeInvoice(inv, new ByteArrayOutputStream()))
+                .hasMessage("Failed to generate PDF");
+
+        assertThat(dir).isEmptyDirectory();
+        assertThat(cache.invoiceDownload(inv)).isEmpty();
+    }
+
+    @Test
+    void changedInvoice_replacesTheOldRendering() {
+        Invoice inv = invoice(1L, "aa", new byte[]{1, 2, 3});
+        Path old = cache.invoice(inv);
+
+        // e.g. marked PAID: prints differently, so it fingerprints differently
+        when(pdfService.fingerprint(inv)).thenReturn("bb");
+        renders(inv, new byte[]{4, 5});
+        Path current = cache.invoice(inv);
+
+        assertThat(current).isNotEqualTo(old);
+        assertThat(old).doesNotExist();
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    void overMaxSize_evictsTheLeastRecentlyUsed() {
+        Invoice a = invoice(1L, "aa", new byte[4]);
+        Invoice b = invoice(2L, "bb", new byte[4]);
+        Invoice c = invoice(3L, "cc", new byte[4]);
+        Path fileA = cache.invoice(a);
+        Path fileB = cache.invoice(b);
+        cache.invoice(a); // a is now more recent than b
+
+        cache.invoice(c);
+
+        assertThat(fileA).exists();
+        assertThat(fileB).doesNotExist();
+        assertThat(cache.size()).isEqualTo(8);
+        assertThat(registry.get("pdf.cache.evictions").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void fileDeletedBeforeTheDownloadOpensIt_isRenderedAgain() throws IOException {
+        Invoice inv = invoice(1L, "aa", new byte[]{1, 2, 3});
+        cache.invoice(inv);
+        Resource download = cache.invoiceDownload(inv).orElseThrow();
+
+        // e.g. evicted for another request's rendering before the response is written
+        Files.delete(cache.invoice(inv));
+
+        assertThat(download.contentLength()).isEqualTo(3);
+        try (InputStream in = download.getInputStream()) {
+            assertThat(in.readAllBytes()).containsExactly(1, 2, 3);
+        }
+        verify(pdfService, times(2)).generate(eq(inv), any(OutputStream.class));
+    }
+
+    @Test
+    void download_isAFileResourceWhoseChannelFollowsARerender() throws IOException {
+        Invoice inv = invoice(1L, "aa", new byte[]{1, 2, 3});
+        cache.invoice(inv);
+        Resource download = cache.invoiceDownload(inv).orElseThrow();
+        assertThat(download.isFile()).isTrue();
+
+        Files.delete(cache.invoice(inv));
+
+        try (ReadableByteChannel channel = download.readableChannel()) {
+            assertThat(channel).isInstanceOf(FileChannel.class);
+            assertThat(((FileChannel) channel).size()).isEqualTo(3);
+        }
+        assertThat(download.getFile()).exists();
+    }
+
+    @Test
+    void openDownload_staysReadableWhenTheFileIsReplaced() throws IOException {
+        Invoice inv = invoice(1L, "aa", new byte[]{1, 2, 3});
+        cache.invoice(inv);
+        try (InputStream in = cache.invoiceDownload(inv).orElseThrow().getInputStream()) {
+            when(pdfService.fingerprint(inv)).thenReturn("bb");
+            renders(inv, new byte[]{4, 5});
+            cache.invoice(inv); // drops the "aa" rendering
+
+            assertThat(in.readAllBytes()).containsExactly(1, 2, 3);
+        }
+    }
+
+    @Test
+    void failedRender_leavesNothingBehind() {
+        Invoice inv = invoice(1L, "aa", new byte[0]);
+        doThrow(new RuntimeException("Failed to generate PDF")).when(pdfService).generate(eq(inv), any(OutputStream.class));
+
+        assertThatThrownBy(() -> cache.invoice(inv)).hasMessage("Failed to generate PDF");
+
+        assertThat(dir).isEmptyDirectory();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void restart_picksUpTheFilesAlreadyOnDisk() throws IOException {
+        Invoice inv = invoice(1L, "aa", new byte[]{1, 2, 3});
+        cache.invoice(inv);
+        Files.write(dir.resolve("invoice-9-zz.pdf.tmp"), new byte[]{9}); // a write cut short
+
+        InvoicePdfCache restarted = new InvoicePdfCache(pdfService, dir, DataSize.ofBytes(10), new SimpleMeterRegistry());
+        restarted.invoice(inv);
+
+        verify(pdfService, times(1)).generate(eq(inv), any(OutputStream.class));
+        assertThat(restarted.size()).isEqualTo(3);
+        assertThat(dir.resolve("invoice-9-zz.pdf.tmp")).doesNotExist();
+    }
+}
@@ -0,0 +1,103 @@
+package com.invoiceapp;
+
+import com.invoiceapp.dto.invoice.InvoiceItemRow;
+import com.invoiceapp.entity.Currency;
+import com.invoiceapp.entity.Invoice;
+import com.invoiceapp.entity.InvoiceStatus;
+import com.invoiceapp.repository.InvoiceItemRepository;
+import com.invoiceapp.service.InvoicePdfService;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.parser.PdfTextExtractor;
+import org.hibernate.collection.spi.PersistentBag;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class InvoicePdfLargeDocumentTest {
+
+    private static final int ITEMS = 450;
+
+    private InvoiceItemRepository itemRepo;
+    private InvoicePdfService pdfService;
+    private Invoice invoice;
+
+    @BeforeEach
+    void setUp() {
+        itemRepo = mock(InvoiceItemRepository.class);
+        pdfService = new InvoicePdfService(itemRepo, 100, 100);
+
+        invoice = new Invoice();
+        invoice.setId(7L);
+        invoice.setInvoiceNumber("INV-7");
+        invoice.setStatus(InvoiceStatus.SENT);
+        invoice.setIssueDate(LocalDate.now());
+        invoice.setDueDate(LocalDate.now().plusDays(30));
+        invoice.setCurrency(Currency.USD);
+        invoice.setItems(new PersistentBag()); // not loaded, as on an invoice fresh from the database
+
+        when(itemRepo.countByInvoiceId(7L)).thenReturn((long) ITEMS);
+        when(itemRepo.findRowsAfter(eq(7L), anyLong(), eq(Limit.of(100)))).thenAnswer(a -> {
+            long after = a.getArgument(1);
+            return LongStream.rangeClosed(after + 1, Math.min(after + 100, ITEMS))
+                    .mapToObj(id -> new InvoiceItemRow(id, "Usage line " + id, 1, BigDecimal.valueOf(2)))
+                    .toList();
+        });
+    }
+
+    @Test
+    void largeInvoice_isPrintedFromPagesWithTheHeaderOnEveryPage() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        pdfService.generate(invoice, out);
+
+        PdfReader reader = new PdfReader(out.toByteArray());
+        PdfTextExtractor text = new PdfTextExtractor(reader);
+        assertThat(reader.getNumberOfPages()).isGreaterThan(1);
+        for (int page = 1; page <= reader.getNumberOfPages(); page++) {
+            // once per page: flushing the finished rows must not repeat it mid-page
+            assertThat(text.getTextFromPage(page).split("Description", -1)).hasSize(2);
+        }
+        String last = text.getTextFromPage(reader.getNumberOfPages());
+        assertThat(last).contains("Usage line 450").contains("USD 900.00");
+
+        // keyset pages after the last id printed; the short fifth page ends it
+        for (long after : new long[]{0, 100, 200, 300, 400}) {
+            verify(itemRepo).findRowsAfter(7L, after, Limit.of(100));
+        }
+        verify(itemRepo, times(5)).findRowsAfter(anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void largeReceipt_keepsTheHeaderAndTotalOnItsPages() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        pdfService.generateReceipt(invoice, out);
+
+        PdfReader reader = new PdfReader(out.toByteArray());
+        PdfTextExtractor text = new PdfTextExtractor(reader);
+        for (int page = 1; page <= reader.getNumberOfPages(); page++) {
+            assertThat(text.getTextFromPage(page).split("Description", -1)).hasSize(2);
+        }
+        assertThat(text.getTextFromPage(reader.getNumberOfPages())).contains("Usage line 450").contains("TOTAL 900.00");
+    }
+
+    @Test
+    void largeInvoice_fingerprintReadsNoItems() {
+        String before = pdfService.fingerprint(invoice);
+        String receipt = pdfService.receiptFingerprint(invoice);
+        verifyNoInteractions(itemRepo);
+
+        invoice.setItemsRevision(1); // the lines were written
+        assertThat(pdfService.fingerprint(invoice)).isNotEqualTo(before);
+        assertThat(pdfService.receiptFingerprint(invoice)).isNotEqualTo(receipt);
+    }
+}
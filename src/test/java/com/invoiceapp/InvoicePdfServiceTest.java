@@ -11,6 +11,7 @@ import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.Arrays;
@@ -68,6 +69,17 @@ public class InvoicePdfServiceTest {
         // but it's difficult to test without reading the actual content of the PDF.
     }
 
+    @Test
+    public void testGeneratePdfToStream() {
+        // Render into a caller-owned stream
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        invoicePdfService.generate(invoice, out);
+
+        // Check that a whole PDF went into the stream
+        assertArrayEquals("%PDF".getBytes(), Arrays.copyOf(out.toByteArray(), 4), "Stream should start with a PDF header");
+        assertTrue(out.size() > 0, "Generated PDF should not be empty");
+    }
+
     @Test
     public void testGenerateReceipt() {
         // Generate the receipt PDF
@@ -0,0 +1,214 @@
+package com.invoiceapp;
+
+import com.invoiceapp.entity.*;
+import com.invoiceapp.event.InvoiceChangedEvent;
+import com.invoiceapp.event.InvoiceSendQueuedEvent;
+import com.invoiceapp.repository.InvoiceRepository;
+import com.invoiceapp.service.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class InvoiceSendWorkerTest {
+
+    private InvoiceRepository invoiceRepo;
+    private InvoicePdfCache pdfCache;
+    private EmailService emailService;
+    private InvoiceRollupService rollupService;
+    private MetricSnapshotBuffer metricBuffer;
+    private DunningSchedule dunningSchedule;
+    private ApplicationEventPublisher events;
+    private SimpleMeterRegistry registry;
+    private InvoiceSendWorker worker;
+    private final Map<Long, Invoice> invoices = new HashMap<>();
+    private Client client;
+    private Invoice invoice;
+
+    @BeforeEach
+    void setUp() {
+        invoiceRepo = mock(InvoiceRepository.class);
+        pdfCache = mock(InvoicePdfCache.class);
+        emailService = mock(EmailService.class);
+        rollupService = mock(InvoiceRollupService.class);
+        metricBuffer = mock(MetricSnapshotBuffer.class);
+        dunningSchedule = mock(DunningSchedule.class);
+        events = mock(ApplicationEventPublisher.class);
+        TransactionTemplate tx = mock(TransactionTemplate.class);
+        when(tx.execute(any())).thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        doAnswer(inv -> {
+            inv.<Consumer<Object>>getArgument(0).accept(null);
+            return null;
+        }).when(tx).executeWithoutResult(any());
+
+        when(invoiceRepo.findWithItemsByIdIn(anyCollection())).thenAnswer(inv -> byIds(inv.getArgument(0)));
+        when(invoiceRepo.findAllById(anyIterable())).thenAnswer(inv -> byIds(inv.getArgument(0)));
+
+        registry = new SimpleMeterRegistry();
+        worker = new InvoiceSendWorker(invoiceRepo, pdfCache, emailService, rollupService, metricBuffer,
+                dunningSchedule, events, tx, Runnable::run, Duration.ofMinutes(5), 100, 2, registry);
+
+        User user = new User(1L, "user@test.com", "pass", Role.USER, true);
+        client = new Client(1L, "Test Client", "client@test.com", "123", user);
+        invoice = sending(10L);
+    }
+
+    //a SENDING invoice the repository serves and lets any worker claim
+    private Invoice sending(Long id) {
+        Invoice inv = new Invoice();
+        inv.setId(id);
+        inv.setUser(client.getUser());
+        inv.setClient(client);
+        inv.setItems(new ArrayList<>());
+        inv.setStatus(InvoiceStatus.SENDING);
+        inv.setInvoiceNumber("INV-" + id);
+        inv.setPaymentToken("token-" + id);
+        inv.setDueDate(LocalDate.now().plusDays(30));
+        inv.setSendLeaseUntil(LocalDateTime.now());
+        invoices.put(id, inv);
+        when(invoiceRepo.claimSend(eq(id), any(), any())).thenReturn(1);
+        when(invoiceRepo.releaseSend(eq(id), any())).thenReturn(1);
+        return inv;
+    }
+
+    @Test
+    void queuedSend_rendersQueuesTheEmailAndMarksSent() {
+        byte[] pdf = {1, 2, 3};
+        when(pdfCache.invoiceBytes(invoice)).thenReturn(pdf);
+        LocalDateTime firstReminder = LocalDate.now().plusDays(27).atTime(9, 30);
+        when(dunningSchedule.nextAfter(eq(invoice), any())).thenReturn(firstReminder);
+
+        worker.onSendQueued(new InvoiceSendQueuedEvent(List.of(10L)));
+
+        verify(emailService).sendInvoice(eq("client@test.com"), eq("Invoice INV-10"),
+                contains("/public/confirm-payment/token-10"), eq(pdf), eq("INV-10.pdf"));
+        assertThat(invoice.getStatus()).isEqualTo(InvoiceStatus.SENT);
+        assertThat(invoice.getSendLeaseUntil()).isNull();
+        assertThat(invoice.getNextReminderAt()).isEqualTo(firstReminder); // dunning starts with the send
+        verify(metricBuffer).add(argThat(m -> m.getStatus() == InvoiceStatus.SENT));
+        verify(events).publishEvent(new InvoiceChangedEvent(1L, 10L, InvoiceStatus.SENT));
+        assertThat(registry.get("invoice.send").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void failedRender_marksSendFailedWithoutEmail() {
+        when(pdfCache.invoiceBytes(invoice)).thenThrow(new IllegalStateException("font missing"));
+
+        worker.process(10L);
+
+        assertThat(invoice.getStatus()).isEqualTo(InvoiceStatus.SEND_FAILED);
+        verify(emailService, never()).sendInvoice(any(), any(), any(), any(), any());
+        verify(metricBuffer, never()).add(any());
+        verify(events).publishEvent(new InvoiceChangedEvent(1L, 10L, InvoiceStatus.SEND_FAILED));
+        assertThat(invoice.getSendError()).isEqualTo("font missing");
+        assertThat(registry.get("invoice.send.failures").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void bulkSend_goesOutInBatchesAndOneFailureSparesTheRest() {
+        Invoice second = sending(11L);
+        Invoice broken = sending(12L);
+        when(pdfCache.invoiceBytes(any())).thenReturn(new byte[]{1});
+        when(pdfCache.invoiceBytes(broken)).thenThrow(new IllegalStateException("bad item"));
+
+        worker.onSendQueued(new InvoiceSendQueuedEvent(List.of(10L, 11L, 12L)));
+
+        assertThat(invoice.getStatus()).isEqualTo(InvoiceStatus.SENT);
+        assertThat(second.getStatus()).isEqualTo(InvoiceStatus.SENT);
+        assertThat(broken.getStatus()).isEqualTo(InvoiceStatus.SEND_FAILED);
+        assertThat(broken.getSendError()).isEqualTo("bad item");
+        verify(emailService, times(2)).sendInvoice(any(), any(), any(), any(), any());
+        // batches of two: [10, 11] and [12], each loaded with its items in one query
+        verify(invoiceRepo).findWithItemsByIdIn(List.of(10L, 11L));
+        verify(invoiceRepo).findWithItemsByIdIn(List.of(12L));
+        assertThat(registry.get("invoice.send").timer().count()).isEqualTo(2);
+        assertThat(registry.get("invoice.send.render").timer().count()).isEqualTo(3);
+    }
+
+    @Test
+    void failedQueueing_marksTheWholeBatchFailed() {
+        Invoice second = sending(11L);
+        when(pdfCache.invoiceBytes(any())).thenReturn(new byte[]{1});
+        doThrow(new IllegalStateException("outbox unavailable")).when(emailService)
+                .sendInvoice(any(), eq("Invoice INV-11"), any(), any(), any());
+
+        worker.processBatch(List.of(10L, 11L));
+
+        // the real transaction rolls back; the failure pass marks both
+        assertThat(second.getStatus()).isEqualTo(InvoiceStatus.SEND_FAILED);
+        assertThat(second.getSendError()).isEqualTo("outbox unavailable");
+    }
+
+    @Test
+    void invoiceClaimedElsewhere_isNotSentAgain() {
+        when(invoiceRepo.claimSend(eq(10L), any(), any())).thenReturn(0);
+
+        worker.process(10L);
+
+        verifyNoInteractions(pdfCache, emailService);
+        assertThat(invoice.getStatus()).isEqualTo(InvoiceStatus.SENDING);
+    }
+
+    @Test
+    void leaseTakenOverWhileRendering_isLeftToTheNewWorker() {
+        Invoice second = sending(11L);
+        when(pdfCache.invoiceBytes(any())).thenReturn(new byte[]{1});
+        // the lease on 11 ran out during the render and another worker claimed it
+        when(invoiceRepo.releaseSend(eq(11L), any())).thenReturn(0);
+
+        worker.processBatch(List.of(10L, 11L));
+
+        assertThat(invoice.getStatus()).isEqualTo(InvoiceStatus.SENT);
+        assertThat(second.getStatus()).isEqualTo(InvoiceStatus.SENDING);
+        verify(emailService, times(1)).sendInvoice(any(), any(), any(), any(), any());
+        verify(emailService, never()).sendInvoice(any(), eq("Invoice INV-11"), any(), any(), any());
+    }
+
+    @Test
+    void outcomeIsRecordedAgainstTheLeaseThisWorkerSet() {
+        when(pdfCache.invoiceBytes(invoice)).thenReturn(new byte[]{1});
+        ArgumentCaptor<LocalDateTime> claimedUntil = ArgumentCaptor.forClass(LocalDateTime.class);
+
+        worker.process(10L);
+
+        verify(invoiceRepo).claimSend(eq(10L), any(), claimedUntil.capture());
+        verify(invoiceRepo).releaseSend(10L, claimedUntil.getValue());
+    }
+
+    private List<Invoice> byIds(Iterable<Long> ids) {
+        List<Invoice> found = new ArrayList<>();
+        ids.forEach(id -> found.add(invoices.get(id)));
+        return found;
+    }
+
+    @Test
+    void poll_picksUpSendsWaitingOrAbandoned() {
+        when(invoiceRepo.findSendDueIds(any(), eq(Limit.of(100)))).thenReturn(List.of(10L));
+        when(pdfCache.invoiceBytes(invoice)).thenReturn(new byte[]{1});
+
+        worker.poll();
+
+        assertThat(invoice.getStatus()).isEqualTo(InvoiceStatus.SENT);
+    }
+}
@@ -1,14 +1,20 @@
 package com.invoiceapp; // Ensure correct package
 
+import com.invoiceapp.dto.invoice.BulkSendProgress;
+import com.invoiceapp.dto.invoice.BulkSendResult;
 import com.invoiceapp.dto.invoice.InvoiceItemRequest;
 import com.invoiceapp.dto.invoice.InvoiceRequest;
 import com.invoiceapp.dto.invoice.InvoiceResponse;
+import com.invoiceapp.dto.invoice.InvoiceStatusResponse;
 import com.invoiceapp.dto.invoice.RecordPaymentForm;
 import com.invoiceapp.entity.*;
+import com.invoiceapp.event.InvoiceChangedEvent;
+import com.invoiceapp.event.InvoiceSendQueuedEvent;
 import com.invoiceapp.repository.*;
 import com.invoiceapp.security.UserProvider;
-import com.invoiceapp.service.EmailService;
-import com.invoiceapp.service.InvoicePdfService;
+import com.invoiceapp.service.DunningSchedule;
+import com.invoiceapp.service.InvoiceRollupService;
+import com.invoiceapp.service.MetricSnapshotBuffer;
 import com.invoiceapp.service.InvoiceService;
 import com.invoiceapp.util.InvoiceNumberGenerator;
 import jakarta.persistence.EntityNotFoundException;
@@ -17,11 +23,13 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.*;
 
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -35,11 +43,12 @@ class InvoiceServiceTest {
 
     @Mock InvoiceRepository invoiceRepo;
     @Mock ClientRepository clientRepo;
-    @Mock InvoiceMetricRepository metricRepo;
+    @Mock MetricSnapshotBuffer metricBuffer;
     @Mock InvoiceNumberGenerator numberGenerator;
-    @Mock InvoicePdfService pdfService;
-    @Mock EmailService emailService;
     @Mock UserProvider userProvider;
+    @Mock InvoiceRollupService rollupService;
+    @Mock DunningSchedule dunningSchedule;
+    @Mock ApplicationEventPublisher events;
     // No need to mock InvoiceMapper if using static methods
 
     @InjectMocks
@@ -193,41 +202,44 @@ class InvoiceServiceTest {
 
     // --- SEND Tests ---
     @Test
-    void send_DraftInvoice_ShouldUpdateStatusSendEmailAndSnapshot() {
+    void send_DraftInvoice_ShouldMarkSendingAndHandOffToTheWorker() {
         String generatedNumber = "INV-NEW-123";
-        byte[] pdfBytes = {1, 2, 3};
         when(numberGenerator.nextForUser(fakeUser)).thenReturn(generatedNumber);
-        when(pdfService.generate(draftInvoice)).thenReturn(pdfBytes); // Use the actual draftInvoice instance
 
         InvoiceResponse response = service.send(10L);
 
         // Assertions on the response DTO
-        assertThat(response.status()).isEqualTo(InvoiceStatus.SENT);
+        assertThat(response.status()).isEqualTo(InvoiceStatus.SENDING);
         assertThat(response.invoiceNumber()).isEqualTo(generatedNumber);
         assertThat(response.issueDate()).isEqualTo(LocalDate.now());
 
-        // Assertions on the entity state (captured or verified via repo save)
-        assertThat(draftInvoice.getStatus()).isEqualTo(InvoiceStatus.SENT);
+        // Assertions on the entity state
+        assertThat(draftInvoice.getStatus()).isEqualTo(InvoiceStatus.SENDING);
         assertThat(draftInvoice.getInvoiceNumber()).isEqualTo(generatedNumber);
-        assertThat(draftInvoice.getIssueDate()).isEqualTo(LocalDate.now());
         assertThat(draftInvoice.getPaymentToken()).isNotNull().hasSizeGreaterThan(10); // Check token generated
+        assertThat(draftInvoice.getSendLeaseUntil()).isBeforeOrEqualTo(LocalDateTime.now()); // claimable right away
+
+        // PDF, email, snapshot and dunning are the worker's job after commit
+        verify(events).publishEvent(new InvoiceSendQueuedEvent(List.of(10L)));
+        verify(events).publishEvent(new InvoiceChangedEvent(1L, 10L, InvoiceStatus.SENDING));
+        verify(rollupService).remove(draftInvoice);
+        verify(rollupService).add(draftInvoice);
+        verifyNoInteractions(metricBuffer, dunningSchedule);
+    }
 
-        // Verify interactions
-        verify(invoiceRepo).findById(10L); // Ensure it was fetched
-        // verify(invoiceRepo).save(draftInvoice); // Verify save if needed
-        verify(numberGenerator).nextForUser(fakeUser);
-        verify(pdfService).generate(draftInvoice);
-        verify(emailService).sendInvoice(
-                eq(fakeClient.getEmail()),
-                contains(generatedNumber), // Subject contains invoice number
-                contains(fakeClient.getName()), // Body contains client name
-                eq(pdfBytes),
-                eq(generatedNumber + ".pdf")
-        );
-        verify(metricRepo).save(argThat(metric -> // Verify metric details
-                metric.getStatus() == InvoiceStatus.SENT &&
-                        metric.getSnapshotDate().equals(LocalDate.now())
-        ));
+    @Test
+    void send_FailedSend_ShouldRetryKeepingNumberAndToken() {
+        draftInvoice.setStatus(InvoiceStatus.SEND_FAILED);
+        draftInvoice.setInvoiceNumber("INV-OLD");
+        draftInvoice.setPaymentToken("token-1");
+
+        InvoiceResponse response = service.send(10L);
+
+        assertThat(response.status()).isEqualTo(InvoiceStatus.SENDING);
+        assertThat(draftInvoice.getInvoiceNumber()).isEqualTo("INV-OLD");
+        assertThat(draftInvoice.getPaymentToken()).isEqualTo("token-1");
+        verify(numberGenerator, never()).nextForUser(any());
+        verify(events).publishEvent(new InvoiceSendQueuedEvent(List.of(10L)));
     }
 
     @Test
@@ -242,8 +254,51 @@ class InvoiceServiceTest {
                 .isInstanceOf(IllegalStateException.class)
                 .hasMessageContaining("Only DRAFT can be sent");
 
-        verify(emailService, never()).sendInvoice(any(), any(), any(), any(), any());
-        verify(metricRepo, never()).save(any());
+        verify(events, never()).publishEvent(any(InvoiceSendQueuedEvent.class));
+        verify(metricBuffer, never()).add(any());
+    }
+
+    @Test
+    void sendAll_QueuesSendableInvoicesWithNumbersFromOneLookup() {
+        Invoice secondDraft = new Invoice();
+        secondDraft.setId(13L);
+        secondDraft.setUser(fakeUser);
+        secondDraft.setClient(fakeClient);
+        secondDraft.setItems(new ArrayList<>());
+        secondDraft.setDueDate(LocalDate.now().plusDays(10));
+        when(invoiceRepo.findAllById(List.of(10L, 11L, 13L, 999L)))
+                .thenReturn(List.of(draftInvoice, sentInvoice, secondDraft));
+        when(numberGenerator.nextForUser(fakeUser, 2)).thenReturn(List.of("INV-00007", "INV-00008"));
+
+        BulkSendResult result = service.sendAll(List.of(10L, 11L, 13L, 999L));
+
+        assertThat(result.queued()).containsExactly(10L, 13L);
+        assertThat(result.skipped()).containsOnlyKeys(11L, 999L);
+        assertThat(result.skipped().get(11L)).isEqualTo("is SENT");
+        assertThat(draftInvoice.getInvoiceNumber()).isEqualTo("INV-00007");
+        assertThat(secondDraft.getInvoiceNumber()).isEqualTo("INV-00008");
+        assertThat(List.of(draftInvoice, secondDraft)).allMatch(inv -> inv.getStatus() == InvoiceStatus.SENDING);
+        assertThat(sentInvoice.getStatus()).isEqualTo(InvoiceStatus.SENT);
+        verify(numberGenerator, never()).nextForUser(any());
+        // one hand-off for the whole run, one dashboard refresh per owner
+        verify(events).publishEvent(new InvoiceSendQueuedEvent(List.of(10L, 13L)));
+        verify(events).publishEvent(new InvoiceChangedEvent(1L, null, InvoiceStatus.SENDING));
+    }
+
+    @Test
+    void sendProgress_CountsStagesAndListsFailures() {
+        when(invoiceRepo.findStatuses(List.of(1L, 2L, 3L, 4L))).thenReturn(List.of(
+                new InvoiceStatusResponse(1L, "INV-1", InvoiceStatus.SENT, null),
+                new InvoiceStatusResponse(2L, "INV-2", InvoiceStatus.SENDING, null),
+                new InvoiceStatusResponse(3L, "INV-3", InvoiceStatus.SEND_FAILED, "font missing"),
+                new InvoiceStatusResponse(4L, "INV-4", InvoiceStatus.OVERDUE, null)));
+
+        BulkSendProgress progress = service.sendProgress(List.of(1L, 2L, 3L, 4L));
+
+        assertThat(progress.sending()).isEqualTo(1);
+        assertThat(progress.sent()).isEqualTo(2);
+        assertThat(progress.failed()).isEqualTo(1);
+        assertThat(progress.failures()).extracting(InvoiceStatusResponse::sendError).containsExactly("font missing");
     }
 
     @Test
@@ -251,7 +306,7 @@ class InvoiceServiceTest {
         assertThatThrownBy(() -> service.send(999L))
                 .isInstanceOf(EntityNotFoundException.class); // From getEntity()
 
-        verify(emailService, never()).sendInvoice(any(), any(), any(), any(), any());
+        verify(events, never()).publishEvent(any(InvoiceSendQueuedEvent.class));
     }
 
     // --- MARK PAID Tests ---
@@ -262,6 +317,7 @@ class InvoiceServiceTest {
         form.setPaymentMethod("Credit Card");
         form.setTransactionId("TX123");
 
+        sentInvoice.setNextReminderAt(LocalDateTime.now().plusDays(2));
         InvoiceResponse response = service.markPaid(11L, form); // Mark the SENT invoice as paid
 
         assertThat(response.status()).isEqualTo(InvoiceStatus.PAID);
@@ -269,8 +325,14 @@ class InvoiceServiceTest {
         assertThat(sentInvoice.getPaymentDate()).isEqualTo(form.getPaymentDate());
         assertThat(sentInvoice.getPaymentMethod()).isEqualTo(form.getPaymentMethod());
         assertThat(sentInvoice.getTransactionId()).isEqualTo(form.getTransactionId());
-
-        verify(metricRepo).save(argThat(metric -> metric.getStatus() == InvoiceStatus.PAID));
+        assertThat(sentInvoice.getNextReminderAt()).isNull(); // no reminders once paid
+
+        verify(metricBuffer).add(argThat(metric -> metric.getStatus() == InvoiceStatus.PAID));
+        // the invoice leaves its SENT rollup bucket and joins the PAID one
+        InOrder rollup = inOrder(rollupService);
+        rollup.verify(rollupService).remove(sentInvoice);
+        rollup.verify(rollupService).add(sentInvoice);
+        verify(events).publishEvent(new InvoiceChangedEvent(1L, 11L, InvoiceStatus.PAID));
         // verify(invoiceRepo).save(sentInvoice); // Optional: verify save call
     }
 
@@ -294,7 +356,7 @@ class InvoiceServiceTest {
         assertThat(sentInvoice.getTransactionId()).isEqualTo(form.getTransactionId());
 
 
-        verify(metricRepo).save(argThat(metric -> metric.getStatus() == InvoiceStatus.PAID));
+        verify(metricBuffer).add(argThat(metric -> metric.getStatus() == InvoiceStatus.PAID));
     }
 
 
@@ -304,7 +366,7 @@ class InvoiceServiceTest {
         assertThatThrownBy(() -> service.markPaid(10L, form)) // Try marking DRAFT invoice
                 .isInstanceOf(IllegalStateException.class)
                 .hasMessageContaining("Only SENT/OVERDUE can be paid");
-        verify(metricRepo, never()).save(any());
+        verify(metricBuffer, never()).add(any());
     }
 
     @Test
@@ -313,12 +375,40 @@ class InvoiceServiceTest {
         assertThatThrownBy(() -> service.markPaid(12L, form)) // Try marking PAID invoice again
                 .isInstanceOf(IllegalStateException.class)
                 .hasMessageContaining("Only SENT/OVERDUE can be paid");
-        verify(metricRepo, never()).save(any());
+        verify(metricBuffer, never()).add(any());
     }
 
 
     // --- UPDATE Tests ---
     // Add tests for update: successful update, attempt to update non-draft, client not found during update
+    @Test
+    void update_DraftInvoice_ShouldBumpItemsRevision() {
+        InvoiceRequest req = new InvoiceRequest(
+                1L,
+                List.of(new InvoiceItemRequest("Service", 2, BigDecimal.TEN)),
+                LocalDate.now().plusDays(30), Currency.USD, "Client", "Me", "Bank", "IBAN");
+
+        service.update(10L, req);
+
+        // cached PDFs are keyed on the revision, so a write of the lines must move it
+        assertThat(draftInvoice.getItemsRevision()).isEqualTo(1);
+        assertThat(draftInvoice.getItems()).hasSize(1);
+    }
+
+    @Test
+    void update_ByAnotherUser_ShouldRefreshBothOwnersStats() {
+        User editor = new User(2L, "editor@example.com", "hashedpass", Role.USER, true);
+        when(userProvider.getCurrentUser()).thenReturn(editor);
+        InvoiceRequest req = new InvoiceRequest(
+                1L, List.of(), LocalDate.now().plusDays(30), Currency.USD, "Client", "Me", "Bank", "IBAN");
+
+        service.update(10L, req);
+
+        // the invoice left user 1's stats and joined user 2's
+        assertThat(draftInvoice.getUser()).isEqualTo(editor);
+        verify(events).publishEvent(new InvoiceChangedEvent(2L, 10L, InvoiceStatus.DRAFT));
+        verify(events).publishEvent(new InvoiceChangedEvent(1L, 10L, InvoiceStatus.DRAFT));
+    }
 
     // --- DELETE/ARCHIVE Tests ---
     @Test
@@ -338,47 +428,40 @@ class InvoiceServiceTest {
     }
 
     @Test
-    void delete_NonExistentInvoice_ShouldThrowException() {
-        assertThatThrownBy(() -> service.delete(999L))
-                .isInstanceOf(EntityNotFoundException.class);
+    void archive_SendingInvoice_ShouldThrowException() {
+        sentInvoice.setStatus(InvoiceStatus.SENDING);
+
+        assertThatThrownBy(() -> service.archive(11L))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("being sent");
+
+        assertThat(sentInvoice.isArchived()).isFalse();
+        verify(rollupService, never()).remove(any(Invoice.class));
     }
 
-    // --- MARK OVERDUE Test ---
     @Test
-    void markOverdue_ShouldTransitionSentPastDueInvoices() {
-        // Arrange: Prepare invoices - one past due, one future due, one already overdue
-        Invoice sentPastDue = new Invoice();
-        sentPastDue.setId(20L); sentPastDue.setUser(fakeUser); sentPastDue.setClient(fakeClient);
-        sentPastDue.setStatus(InvoiceStatus.SENT); sentPastDue.setDueDate(LocalDate.now().minusDays(1));
-        sentPastDue.setItems(new ArrayList<>()); // Needed for snapshot
-
-        Invoice sentFutureDue = new Invoice();
-        sentFutureDue.setId(21L); sentFutureDue.setUser(fakeUser); sentFutureDue.setClient(fakeClient);
-        sentFutureDue.setStatus(InvoiceStatus.SENT); sentFutureDue.setDueDate(LocalDate.now().plusDays(1));
-
-        Invoice alreadyOverdue = new Invoice();
-        alreadyOverdue.setId(22L); alreadyOverdue.setUser(fakeUser); alreadyOverdue.setClient(fakeClient);
-        alreadyOverdue.setStatus(InvoiceStatus.OVERDUE); alreadyOverdue.setDueDate(LocalDate.now().minusDays(10));
-
-
-        // Mock repository to return only the active SENT invoices
-        when(invoiceRepo.findActive(InvoiceStatus.SENT)).thenReturn(List.of(sentPastDue, sentFutureDue));
-
-        // Act
-        int count = service.markOverdue();
-
-        // Assert
-        assertThat(count).isEqualTo(1); // Only one should have been transitioned
-        assertThat(sentPastDue.getStatus()).isEqualTo(InvoiceStatus.OVERDUE); // This one changed
-        assertThat(sentFutureDue.getStatus()).isEqualTo(InvoiceStatus.SENT); // This one didn't
-        assertThat(alreadyOverdue.getStatus()).isEqualTo(InvoiceStatus.OVERDUE); // Unaffected
-
-        // Verify metric snapshot was called only for the transitioned invoice
-        verify(metricRepo, times(1)).save(argThat(m -> m.getStatus() == InvoiceStatus.OVERDUE));
-        // Verify save call if needed
-        // verify(invoiceRepo).save(sentPastDue);
+    void deleteDraft_DraftInvoice_ShouldRemoveFromRollupAndDelete() {
+        service.deleteDraft(10L);
+
+        verify(rollupService).remove(draftInvoice);
+        verify(invoiceRepo).delete(draftInvoice);
+    }
+
+    @Test
+    void deleteDraft_SentInvoice_ShouldThrowException() {
+        assertThatThrownBy(() -> service.deleteDraft(11L))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Only draft invoices can be deleted");
+
+        verify(invoiceRepo, never()).delete(any());
+        verify(rollupService, never()).remove(any(Invoice.class));
     }
 
+    @Test
+    void delete_NonExistentInvoice_ShouldThrowException() {
+        assertThatThrownBy(() -> service.delete(999L))
+                .isInstanceOf(EntityNotFoundException.class);
+    }
 
     // --- REVERT PAYMENT Tests ---
     @Test
@@ -403,7 +486,7 @@ class InvoiceServiceTest {
 
 
         // verify(invoiceRepo).save(paidInvoice); // Verify save
-        verify(metricRepo, never()).save(any()); // Should not snapshot on revert
+        verify(metricBuffer, never()).add(any()); // Should not snapshot on revert
     }
 
     @Test
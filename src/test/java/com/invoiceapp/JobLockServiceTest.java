@@ -0,0 +1,83 @@
+package com.invoiceapp;
+
+import com.invoiceapp.repository.JobLockRepository;
+import com.invoiceapp.service.JobLockService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class JobLockServiceTest {
+
+    private JobLockRepository lockRepo;
+    private JobLockService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        lockRepo = mock(JobLockRepository.class);
+        TransactionTemplate tx = mock(TransactionTemplate.class);
+        when(tx.execute(any())).thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        doAnswer(inv -> {
+            inv.<Consumer<Object>>getArgument(0).accept(null);
+            return null;
+        }).when(tx).executeWithoutResult(any());
+        service = new JobLockService(lockRepo, tx, Duration.ofMillis(90), "node-a");
+    }
+
+    @Test
+    void runExclusively_runsAndReleasesWhenLeaseIsFree() {
+        when(lockRepo.acquire("job", "node-a", 90L)).thenReturn(1);
+        AtomicBoolean ran = new AtomicBoolean();
+
+        assertTrue(service.runExclusively("job", lease -> ran.set(lease.isHeld())));
+
+        assertTrue(ran.get());
+        verify(lockRepo).ensureExists(eq("job"), any());
+        verify(lockRepo).release("job", "node-a");
+    }
+
+    @Test
+    void runExclusively_skipsWhenAnotherNodeHoldsTheLease() {
+        when(lockRepo.acquire("job", "node-a", 90L)).thenReturn(0);
+        AtomicBoolean ran = new AtomicBoolean();
+
+        assertFalse(service.runExclusively("job", lease -> ran.set(true)));
+
+        assertFalse(ran.get());
+        verify(lockRepo, never()).release(any(), any());
+    }
+
+    @Test
+    void heartbeat_renewsLeaseAndReportsWhenItIsLost() throws InterruptedException {
+        when(lockRepo.acquire("job", "node-a", 90L)).thenReturn(1);
+        when(lockRepo.extend("job", "node-a", 90L)).thenReturn(1).thenReturn(0);
+        CountDownLatch lost = new CountDownLatch(1);
+
+        service.runExclusively("job", lease -> {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (lease.isHeld() && System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+            if (!lease.isHeld()) {
+                lost.countDown();
+            }
+        });
+
+        assertTrue(lost.await(0, TimeUnit.SECONDS));
+        verify(lockRepo, atLeast(2)).extend("job", "node-a", 90L);
+        // a lost lease belongs to someone else now, so it is not released
+        verify(lockRepo, never()).release(any(), any());
+    }
+}
@@ -0,0 +1,67 @@
+package com.invoiceapp;
+
+import com.invoiceapp.service.MailRateLimiter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MailRateLimiterTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void domainBurst_thenTheDomainWaitsForItsRate() {
+        MailRateLimiter limiter = new MailRateLimiter(1000, 1000, 1, 2, registry);
+
+        assertEquals(Duration.ZERO, limiter.tryAcquire("a@gmail.com"));
+        assertEquals(Duration.ZERO, limiter.tryAcquire("b@GMAIL.com"));
+        Duration wait = limiter.tryAcquire("c@gmail.com");
+
+        // one token a second: the next one is at most a second away
+        assertTrue(wait.compareTo(Duration.ZERO) > 0 && wait.compareTo(Duration.ofSeconds(1)) <= 0);
+        assertEquals(Duration.ZERO, limiter.tryAcquire("d@yahoo.com"));
+        assertEquals(1.0, registry.get("mail.ratelimit.throttled").tag("scope", "domain").counter().count());
+        assertEquals(2.0, registry.get("mail.ratelimit.domains").gauge().value());
+    }
+
+    @Test
+    void globalLimit_appliesAcrossDomainsAndReturnsTheDomainToken() {
+        MailRateLimiter limiter = new MailRateLimiter(1, 1, 1, 1, registry);
+
+        assertEquals(Duration.ZERO, limiter.tryAcquire("a@one.com"));
+        assertTrue(limiter.tryAcquire("b@two.com").compareTo(Duration.ZERO) > 0);
+        assertEquals(1.0, registry.get("mail.ratelimit.throttled").tag("scope", "global").counter().count());
+
+        // two.com kept its token, so only the global bucket is empty
+        assertTrue(limiter.tryAcquire("c@two.com").compareTo(Duration.ZERO) > 0);
+        assertEquals(2.0, registry.get("mail.ratelimit.throttled").tag("scope", "global").counter().count());
+        assertEquals(0.0, registry.get("mail.ratelimit.throttled").tag("scope", "domain").counter().count());
+    }
+
+    @Test
+    void tokensRefillOverTime() throws InterruptedException {
+        MailRateLimiter limiter = new MailRateLimiter(1000, 1000, 100, 1, registry);
+
+        assertEquals(Duration.ZERO, limiter.tryAcquire("a@gmail.com"));
+        assertNotEquals(Duration.ZERO, limiter.tryAcquire("a@gmail.com"));
+        Thread.sleep(30);
+
+        assertEquals(Duration.ZERO, limiter.tryAcquire("a@gmail.com"));
+    }
+
+    @Test
+    void idleDomains_areEvicted() throws InterruptedException {
+        // refills in 100ms: slow enough that the first check sees the bucket in use
+        MailRateLimiter limiter = new MailRateLimiter(1000, 1000, 10, 1, registry);
+        limiter.tryAcquire("a@gmail.com");
+        limiter.evictIdle();
+        assertEquals(1.0, registry.get("mail.ratelimit.domains").gauge().value());
+
+        Thread.sleep(150);
+        limiter.evictIdle();
+        assertEquals(0.0, registry.get("mail.ratelimit.domains").gauge().value());
+    }
+}
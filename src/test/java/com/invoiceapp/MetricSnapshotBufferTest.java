@@ -0,0 +1,92 @@
+package com.invoiceapp;
+
+import com.invoiceapp.entity.InvoiceMetric;
+import com.invoiceapp.entity.InvoiceStatus;
+import com.invoiceapp.repository.InvoiceMetricRepository;
+import com.invoiceapp.service.MetricSnapshotBuffer;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class MetricSnapshotBufferTest {
+
+    private InvoiceMetricRepository repo;
+    private EntityManager entityManager;
+    private MetricSnapshotBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        repo = mock(InvoiceMetricRepository.class);
+        entityManager = mock(EntityManager.class);
+        buffer = new MetricSnapshotBuffer(repo, entityManager, 3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        TransactionSynchronizationManager.unbindResourceIfPossible(buffer);
+    }
+
+    @Test
+    void add_withoutTransaction_savesImmediately() {
+        InvoiceMetric m = metric();
+        buffer.add(m);
+        verify(repo).save(m);
+    }
+
+    @Test
+    void add_inTransaction_writesOneBatchBeforeCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        buffer.add(metric());
+        buffer.add(metric());
+        verifyNoInteractions(repo);
+
+        commit();
+
+        verify(repo).saveAll(argThat((List<InvoiceMetric> l) -> l.size() == 2));
+        assertNull(TransactionSynchronizationManager.getResource(buffer));
+    }
+
+    @Test
+    void add_overLimit_flushesEarlyAndStaysBounded() {
+        TransactionSynchronizationManager.initSynchronization();
+        for (int i = 0; i < 4; i++) {
+            buffer.add(metric());
+        }
+        // first three went out as soon as the buffer filled up, and left the persistence context
+        verify(repo, times(1)).saveAll(anyList());
+        verify(repo).flush();
+        verify(entityManager, times(3)).detach(any(InvoiceMetric.class));
+
+        commit();
+
+        // the last one is written with the commit, which ends the persistence context anyway
+        verify(repo, times(2)).saveAll(anyList());
+        verify(repo, times(1)).flush();
+        verify(entityManager, times(3)).detach(any());
+    }
+
+    private void commit() {
+        List<TransactionSynchronization> syncs = TransactionSynchronizationManager.getSynchronizations();
+        syncs.forEach(s -> s.beforeCommit(false));
+        syncs.forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+    }
+
+    private static InvoiceMetric metric() {
+        return new InvoiceMetric(LocalDate.of(2025, 1, 1), InvoiceStatus.PAID, BigDecimal.TEN);
+    }
+}
@@ -0,0 +1,76 @@
+package com.invoiceapp;
+
+import com.invoiceapp.dto.misc.MetricBucket;
+import com.invoiceapp.dto.misc.MetricTrend;
+import com.invoiceapp.dto.misc.TrendUnit;
+import com.invoiceapp.repository.InvoiceMetricRepository;
+import com.invoiceapp.service.MetricTrendService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static com.invoiceapp.entity.InvoiceStatus.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class MetricTrendServiceTest {
+
+    private InvoiceMetricRepository repo;
+    private MetricTrendService service;
+
+    @BeforeEach
+    void setUp() {
+        repo = mock(InvoiceMetricRepository.class);
+        service = new MetricTrendService(repo);
+    }
+
+    @Test
+    void trend_byWeek_fillsGapsAndAlignsColumns() {
+        // 2025-03-03 and 2025-03-17 are Mondays; the week of the 10th has no snapshots
+        LocalDate from = LocalDate.of(2025, 3, 5);
+        LocalDate to   = LocalDate.of(2025, 3, 18);
+        when(repo.trendByWeek(from, to)).thenReturn(List.of(
+                row(LocalDate.of(2025, 3, 3), "PAID", 2, "11.00"),
+                row(LocalDate.of(2025, 3, 17), "PAID", 1, "5.00"),
+                row(LocalDate.of(2025, 3, 17), "OVERDUE", 3, "7.50")
+        ));
+
+        MetricTrend trend = service.trend(TrendUnit.WEEK, from, to);
+
+        assertEquals(List.of(LocalDate.of(2025, 3, 3), LocalDate.of(2025, 3, 10), LocalDate.of(2025, 3, 17)),
+                trend.buckets());
+        assertArrayEquals(new long[]{2, 0, 1}, trend.series().get(PAID).count());
+        assertArrayEquals(new BigDecimal[]{new BigDecimal("11.00"), BigDecimal.ZERO, new BigDecimal("5.00")},
+                trend.series().get(PAID).amount());
+        assertArrayEquals(new long[]{0, 0, 3}, trend.series().get(OVERDUE).count());
+        assertArrayEquals(new long[]{0, 0, 0}, trend.series().get(DRAFT).count());
+        verify(repo).trendByWeek(from, to);
+        verifyNoMoreInteractions(repo);
+    }
+
+    @Test
+    void trend_tooManyBuckets_throwsWithoutQuerying() {
+        LocalDate to = LocalDate.of(2025, 1, 1);
+        assertThrows(IllegalArgumentException.class,
+                () -> service.trend(TrendUnit.DAY, to.minusYears(10), to));
+        verifyNoInteractions(repo);
+    }
+
+    @Test
+    void trend_fromAfterTo_throws() {
+        LocalDate d = LocalDate.of(2025, 1, 1);
+        assertThrows(IllegalArgumentException.class, () -> service.trend(TrendUnit.MONTH, d, d.minusDays(1)));
+    }
+
+    private static MetricBucket row(LocalDate bucket, String status, long cnt, String total) {
+        return new MetricBucket() {
+            public LocalDate getBucket() { return bucket; }
+            public String getStatus() { return status; }
+            public Long getCnt() { return cnt; }
+            public BigDecimal getTotal() { return new BigDecimal(total); }
+        };
+    }
+}
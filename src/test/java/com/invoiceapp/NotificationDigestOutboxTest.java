@@ -0,0 +1,80 @@
+package com.invoiceapp;
+
+import com.invoiceapp.entity.OutboxEmail;
+import com.invoiceapp.event.EmailQueuedEvent;
+import com.invoiceapp.repository.OutboxEmailRepository;
+import com.invoiceapp.service.EmailService;
+import com.invoiceapp.service.NotificationDigest;
+import com.invoiceapp.service.SmtpTransportPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//runs the digest against a real transaction manager, so a flush from afterCommit has to open its own
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.datasource.url=jdbc:h2:mem:digest;MODE=MySQL;DATABASE_TO_LOWER=TRUE",
+        "invoiceapp.mail.from=noreply@test.com",
+        "invoiceapp.notify.digest.window=1h",
+        "invoiceapp.notify.digest.max-lines=2"
+})
+@Import({NotificationDigest.class, EmailService.class, NotificationDigestOutboxTest.QueuedEvents.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class NotificationDigestOutboxTest {
+
+    @Autowired private NotificationDigest digest;
+    @Autowired private OutboxEmailRepository outboxRepo;
+    @Autowired private PlatformTransactionManager txManager;
+    @Autowired private QueuedEvents queuedEvents;
+
+    @MockitoBean private JavaMailSender mailSender;
+    @MockitoBean private SmtpTransportPool transportPool;
+
+    @AfterEach
+    void cleanUp() {
+        outboxRepo.deleteAll();
+    }
+
+    @Test
+    void groupFilledInsideATransaction_isWrittenToTheOutbox() {
+        new TransactionTemplate(txManager).executeWithoutResult(status -> {
+            digest.add("user@test.com", "Client overdue invoices", "INV-1");
+            digest.add("user@test.com", "Client overdue invoices", "INV-2");
+        });
+
+        List<OutboxEmail> outbox = outboxRepo.findAll();
+        assertThat(outbox).hasSize(1);
+        assertThat(outbox.get(0).getRecipient()).isEqualTo("user@test.com");
+        assertThat(queuedEvents.ids).containsExactly(outbox.get(0).getId());
+    }
+
+    @TestConfiguration
+    static class QueuedEvents {
+
+        final List<Long> ids = new CopyOnWriteArrayList<>();
+
+        @TransactionalEventListener
+        void onEmailQueued(EmailQueuedEvent event) {
+            ids.add(event.outboxId());
+        }
+    }
+}
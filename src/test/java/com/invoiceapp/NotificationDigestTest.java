@@ -0,0 +1,121 @@
+package com.invoiceapp;
+
+import com.invoiceapp.service.EmailService;
+import com.invoiceapp.service.NotificationDigest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class NotificationDigestTest {
+
+    private EmailService emailService;
+    private PlatformTransactionManager txManager;
+
+    @BeforeEach
+    void setUp() {
+        emailService = mock(EmailService.class);
+        txManager = mock(PlatformTransactionManager.class);
+    }
+
+    @Test
+    void linesForOneRecipient_areSentAsOneDigest() {
+        NotificationDigest digest = new NotificationDigest(emailService, txManager, Duration.ZERO, 500);
+        digest.add("user@test.com", "Client overdue invoices", "invoice <strong>INV-1</strong>");
+        digest.add("user@test.com", "Client overdue invoices", "invoice <strong>INV-2</strong>");
+        digest.add("other@test.com", "Client overdue invoices", "invoice <strong>INV-3</strong>");
+
+        digest.flushDue();
+
+        ArgumentCaptor<String> body = ArgumentCaptor.forClass(String.class);
+        verify(emailService).sendHtml(eq("user@test.com"), eq("Client overdue invoices (2)"), body.capture());
+        assertTrue(body.getValue().contains("<li>invoice <strong>INV-1</strong></li>"));
+        assertTrue(body.getValue().contains("<li>invoice <strong>INV-2</strong></li>"));
+        verify(emailService).sendHtml(eq("other@test.com"), eq("Client overdue invoices"), any());
+        assertEquals(0, digest.openGroups());
+    }
+
+    @Test
+    void openWindow_holdsLinesUntilFlushed() {
+        NotificationDigest digest = new NotificationDigest(emailService, txManager, Duration.ofHours(1), 500);
+        digest.add("owner@test.com", "Client clicked payment link", "INV-1");
+        digest.add("user@test.com", "Client overdue invoices", "INV-2");
+
+        digest.flushDue();
+        verifyNoInteractions(emailService);
+
+        digest.flushTopic("Client overdue invoices");
+        verify(emailService).sendHtml(eq("user@test.com"), any(), any());
+        assertEquals(1, digest.openGroups());
+
+        digest.flushAll();
+        verify(emailService).sendHtml(eq("owner@test.com"), any(), any());
+        assertEquals(0, digest.openGroups());
+    }
+
+    @Test
+    void fullGroup_isSentRightAway() {
+        NotificationDigest digest = new NotificationDigest(emailService, txManager, Duration.ofHours(1), 2);
+        digest.add("user@test.com", "Client overdue invoices", "INV-1");
+        verifyNoInteractions(emailService);
+
+        digest.add("user@test.com", "Client overdue invoices", "INV-2");
+
+        verify(emailService).sendHtml(eq("user@test.com"), eq("Client overdue invoices (2)"), any());
+        assertEquals(0, digest.openGroups());
+    }
+
+    @Test
+    void singleLine_isSentAsPlainMessage() {
+        NotificationDigest digest = new NotificationDigest(emailService, txManager, Duration.ZERO, 500);
+        digest.add("owner@test.com", "Client clicked payment link", "Client Acme clicked the link for INV-7.");
+
+        digest.flushAll();
+
+        ArgumentCaptor<String> body = ArgumentCaptor.forClass(String.class);
+        verify(emailService).sendHtml(eq("owner@test.com"), eq("Client clicked payment link"), body.capture());
+        assertTrue(body.getValue().contains("Client Acme clicked the link for INV-7."));
+        assertFalse(body.getValue().contains("<ul>"));
+    }
+
+    @Test
+    void linesAddedWhileFlushing_areNeverLost() throws InterruptedException {
+        AtomicInteger sent = new AtomicInteger();
+        doAnswer(a -> {
+            String subject = a.getArgument(1);
+            sent.addAndGet(subject.contains("(") ? Integer.parseInt(subject.replaceAll("\\D", "")) : 1);
+            return null;
+        }).when(emailService).sendHtml(any(), any(), any());
+        NotificationDigest digest = new NotificationDigest(emailService, txManager, Duration.ZERO, 50);
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 3; t++) {
+            pool.execute(() -> {
+                for (int i = 0; i < 2_000; i++) {
+                    digest.add("user@test.com", "Topic", "line " + i);
+                }
+            });
+        }
+        pool.execute(() -> {
+            for (int i = 0; i < 2_000; i++) {
+                digest.flushTopic("Topic");
+            }
+        });
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        digest.flushAll();
+
+        assertEquals(6_000, sent.get());
+    }
+}
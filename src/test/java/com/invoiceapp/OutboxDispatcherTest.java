@@ -0,0 +1,240 @@
+package com.invoiceapp;
+
+import com.invoiceapp.entity.OutboxEmail;
+import com.invoiceapp.entity.OutboxStatus;
+import com.invoiceapp.event.EmailQueuedEvent;
+import com.invoiceapp.repository.OutboxEmailRepository;
+import com.invoiceapp.service.EmailService;
+import com.invoiceapp.service.MailRateLimiter;
+import com.invoiceapp.service.OutboxDispatcher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class OutboxDispatcherTest {
+
+    private OutboxEmailRepository outboxRepo;
+    private EmailService emailService;
+    private MailRateLimiter rateLimiter;
+    private OutboxDispatcher dispatcher;
+    private SimpleMeterRegistry registry;
+    private TransactionTemplate tx;
+    private OutboxEmail email;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        outboxRepo = mock(OutboxEmailRepository.class);
+        emailService = mock(EmailService.class);
+        rateLimiter = mock(MailRateLimiter.class);
+        when(rateLimiter.tryAcquire(any())).thenReturn(Duration.ZERO);
+        tx = mock(TransactionTemplate.class);
+        when(tx.execute(any())).thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        doAnswer(inv -> {
+            inv.<Consumer<Object>>getArgument(0).accept(null);
+            return null;
+        }).when(tx).executeWithoutResult(any());
+
+        registry = new SimpleMeterRegistry();
+        dispatcher = new OutboxDispatcher(outboxRepo, emailService, rateLimiter, tx, Runnable::run,
+                3, Duration.ofSeconds(30), Duration.ofMinutes(1), Duration.ofMinutes(5), 100, 2,
+                Duration.ofMillis(50), registry);
+
+        email = new OutboxEmail("client@test.com", "Invoice INV-1", "<b>hi</b>", null, null, null);
+        when(outboxRepo.claim(eq(1L), anyCollection(), any(), any())).thenReturn(1);
+        when(outboxRepo.findById(1L)).thenReturn(Optional.of(email));
+        // every email of a batch is sent unless a test says otherwise
+        when(emailService.deliverBatch(anyList())).thenAnswer(inv ->
+                Arrays.asList(new RuntimeException[inv.<List<?>>getArgument(0).size()]));
+    }
+
+    @Test
+    void queuedEmail_isSentAfterCommit() {
+        dispatcher.onEmailQueued(new EmailQueuedEvent(1L));
+
+        verify(emailService).deliverBatch(List.of(email));
+        assertEquals(OutboxStatus.SENT, email.getStatus());
+        assertEquals(1, email.getAttempts());
+        assertEquals(1.0, registry.get("mail.outbox.sent").counter().count());
+    }
+
+    @Test
+    void emailsQueuedTogether_areSentInBatches() {
+        List<Runnable> tasks = new ArrayList<>();
+        OutboxDispatcher deferred = new OutboxDispatcher(outboxRepo, emailService, rateLimiter, tx, tasks::add,
+                3, Duration.ofSeconds(30), Duration.ofMinutes(1), Duration.ofMinutes(5), 100, 2,
+                Duration.ofMillis(50), registry);
+        OutboxEmail second = claimable(2L);
+        OutboxEmail third = claimable(3L);
+
+        // one bulk transaction commits three emails before any worker runs
+        for (long id = 1; id <= 3; id++) {
+            deferred.onEmailQueued(new EmailQueuedEvent(id));
+        }
+        tasks.forEach(Runnable::run);
+
+        verify(emailService).deliverBatch(List.of(email, second));
+        verify(emailService).deliverBatch(List.of(third));
+        verify(emailService, times(2)).deliverBatch(anyList());
+    }
+
+    @Test
+    void emailTheExecutorRejects_isLeftToThePoll() {
+        List<Runnable> tasks = new ArrayList<>();
+        AtomicBoolean queueFull = new AtomicBoolean(true);
+        OutboxDispatcher full = new OutboxDispatcher(outboxRepo, emailService, rateLimiter, tx, task -> {
+            if (queueFull.get()) {
+                throw new RejectedExecutionException("mail queue full");
+            }
+            tasks.add(task);
+        }, 3, Duration.ofSeconds(30), Duration.ofMinutes(1), Duration.ofMinutes(5), 100, 2,
+                Duration.ofMillis(50), registry);
+        OutboxEmail second = claimable(2L);
+
+        full.onEmailQueued(new EmailQueuedEvent(1L));
+        queueFull.set(false);
+        full.onEmailQueued(new EmailQueuedEvent(2L));
+        tasks.forEach(Runnable::run);
+
+        // email 1 is not kept in memory; it is still PENDING for the poll
+        verify(emailService).deliverBatch(List.of(second));
+        verify(emailService, times(1)).deliverBatch(anyList());
+        assertEquals(OutboxStatus.PENDING, email.getStatus());
+    }
+
+    @Test
+    void emailClaimedElsewhere_isNotSent() {
+        when(outboxRepo.claim(eq(1L), anyCollection(), any(), any())).thenReturn(0);
+
+        dispatcher.attempt(1L);
+
+        verifyNoInteractions(emailService);
+    }
+
+    @Test
+    void failedSend_isRetriedWithDoublingBackoffThenDeadLettered() {
+        when(emailService.deliverBatch(List.of(email))).thenReturn(Collections.singletonList(
+                new RuntimeException("mail send failed", new IllegalStateException("SMTP down"))));
+
+        LocalDateTime before = LocalDateTime.now();
+        dispatcher.attempt(1L);
+        assertEquals(OutboxStatus.PENDING, email.getStatus());
+        assertFalse(email.getNextAttemptAt().isBefore(before.plusSeconds(30)));
+        assertEquals("IllegalStateException: SMTP down", email.getLastError());
+
+        dispatcher.attempt(1L);
+        // 30s doubled, still under the one minute cap
+        assertFalse(email.getNextAttemptAt().isBefore(before.plusSeconds(60)));
+        assertEquals(OutboxStatus.PENDING, email.getStatus());
+
+        dispatcher.attempt(1L);
+        assertEquals(OutboxStatus.DEAD, email.getStatus());
+        assertEquals(3, email.getAttempts());
+        assertEquals(3.0, registry.get("mail.outbox.failures").counter().count());
+        assertEquals(1.0, registry.get("mail.outbox.dead").counter().count());
+    }
+
+    @Test
+    void poll_dispatchesDueEmailsAndRefreshesDepth() {
+        when(outboxRepo.findDueIds(anyCollection(), any(), eq(Limit.of(100)))).thenReturn(List.of(1L));
+        when(outboxRepo.countByStatus(OutboxStatus.PENDING)).thenReturn(7L);
+        when(outboxRepo.countByStatus(OutboxStatus.DEAD)).thenReturn(2L);
+
+        dispatcher.poll();
+
+        verify(emailService).deliverBatch(List.of(email));
+        assertEquals(7.0, registry.get("mail.outbox.depth").tag("status", "pending").gauge().value());
+        assertEquals(2.0, registry.get("mail.outbox.depth").tag("status", "dead").gauge().value());
+    }
+
+    @Test
+    void poll_sendsDueEmailsInBatchesAndRecordsEachOutcome() {
+        OutboxEmail second = new OutboxEmail("b@test.com", "Invoice INV-2", "hi", null, null, null);
+        OutboxEmail third = new OutboxEmail("c@test.com", "Invoice INV-3", "hi", null, null, null);
+        when(outboxRepo.claim(anyLong(), anyCollection(), any(), any())).thenReturn(1);
+        when(outboxRepo.findById(2L)).thenReturn(Optional.of(second));
+        when(outboxRepo.findById(3L)).thenReturn(Optional.of(third));
+        when(outboxRepo.findDueIds(anyCollection(), any(), eq(Limit.of(100)))).thenReturn(List.of(1L, 2L, 3L));
+        when(emailService.deliverBatch(List.of(email, second))).thenReturn(
+                Arrays.asList(null, new RuntimeException("mail send failed", new IllegalStateException("mailbox full"))));
+
+        dispatcher.poll();
+
+        // batch size 2: the first two emails share one delivery, the third gets its own
+        verify(emailService, times(2)).deliverBatch(anyList());
+        verify(emailService).deliverBatch(List.of(third));
+        assertEquals(OutboxStatus.SENT, email.getStatus());
+        assertEquals(OutboxStatus.PENDING, second.getStatus());
+        assertEquals("IllegalStateException: mailbox full", second.getLastError());
+        assertEquals(OutboxStatus.SENT, third.getStatus());
+        assertEquals(2, registry.get("mail.outbox.send").timer().count());
+    }
+
+    @Test
+    void shortRateLimitWait_pausesThenSends() {
+        when(rateLimiter.tryAcquire("client@test.com")).thenReturn(Duration.ofMillis(10), Duration.ZERO);
+
+        dispatcher.attempt(1L);
+
+        verify(emailService).deliverBatch(List.of(email));
+        assertEquals(OutboxStatus.SENT, email.getStatus());
+        assertEquals(1, registry.get("mail.outbox.wait").timer().count());
+    }
+
+    @Test
+    void longRateLimitWait_putsEmailBackWithoutCountingAnAttempt() {
+        when(rateLimiter.tryAcquire("client@test.com")).thenReturn(Duration.ofSeconds(20));
+
+        LocalDateTime before = LocalDateTime.now();
+        dispatcher.attempt(1L);
+
+        verify(emailService, never()).deliverBatch(anyList());
+        assertEquals(OutboxStatus.PENDING, email.getStatus());
+        assertEquals(0, email.getAttempts());
+        assertFalse(email.getNextAttemptAt().isBefore(before.plusSeconds(20)));
+        assertEquals(1.0, registry.get("mail.outbox.deferred").counter().count());
+    }
+
+    @Test
+    void throttledDomain_doesNotHoldBackTheRestOfTheBatch() {
+        OutboxEmail other = new OutboxEmail("b@other.com", "Invoice INV-2", "hi", null, null, null);
+        when(outboxRepo.claim(anyLong(), anyCollection(), any(), any())).thenReturn(1);
+        when(outboxRepo.findById(2L)).thenReturn(Optional.of(other));
+        when(rateLimiter.tryAcquire("client@test.com")).thenReturn(Duration.ofMinutes(1));
+
+        dispatcher.attemptBatch(List.of(1L, 2L));
+
+        verify(emailService).deliverBatch(List.of(other));
+        assertEquals(OutboxStatus.SENT, other.getStatus());
+        assertEquals(OutboxStatus.PENDING, email.getStatus());
+    }
+
+    private OutboxEmail claimable(Long id) {
+        OutboxEmail e = new OutboxEmail("client" + id + "@test.com", "Invoice INV-" + id, "<b>hi</b>", null, null, null);
+        when(outboxRepo.claim(eq(id), anyCollection(), any(), any())).thenReturn(1);
+        when(outboxRepo.findById(id)).thenReturn(Optional.of(e));
+        return e;
+    }
+}
@@ -6,8 +6,9 @@ import com.invoiceapp.entity.Invoice;
 import com.invoiceapp.entity.InvoiceStatus;
 import com.invoiceapp.entity.Role;
 import com.invoiceapp.entity.User;
+import com.invoiceapp.event.InvoiceChangedEvent;
 import com.invoiceapp.repository.InvoiceRepository;
-import com.invoiceapp.service.EmailService;
+import com.invoiceapp.service.NotificationDigest;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -15,6 +16,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.security.web.csrf.CsrfToken;
 import org.springframework.security.web.csrf.DefaultCsrfToken;
@@ -26,6 +29,8 @@ import java.util.UUID;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.equalToIgnoringWhiteSpace;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.never;
@@ -35,6 +40,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 
 @WebMvcTest(PaymentConfirmationController.class)
 @AutoConfigureMockMvc(addFilters = false)
+@RecordApplicationEvents
 public class PaymentConfirmationControllerTest {
 
     @Autowired
@@ -43,7 +49,10 @@ public class PaymentConfirmationControllerTest {
     @MockitoBean
     private InvoiceRepository invoiceRepository;
     @MockitoBean
-    private EmailService emailService;
+    private NotificationDigest notificationDigest;
+
+    @Autowired
+    private ApplicationEvents events;
 
     private Invoice testInvoice;
     private String validToken;
@@ -86,8 +95,24 @@ public class PaymentConfirmationControllerTest {
                         "We already recorded your payment. Thank you!"
                 )));
 
-        // Verify no email was sent
-        verify(emailService, never()).simpleNotify(any(), any(), any());
+        // Verify no notification was queued
+        verify(notificationDigest, never()).add(any(), any(), any());
+    }
+
+    @Test
+    void confirm_validToken_recordsIntentAndNotifies() throws Exception {
+        CsrfToken dummyToken = new DefaultCsrfToken("X-CSRF-TOKEN", "_csrf", "dummy");
+
+        mockMvc.perform(get("/public/confirm-payment/{token}", validToken)
+                        .requestAttr(CsrfToken.class.getName(), dummyToken))
+                .andExpect(status().isOk());
+
+        // Intent is stored and the owner's dashboard is told about it
+        assertThat(testInvoice.getPaymentIntentAt()).isNotNull();
+        verify(invoiceRepository).save(testInvoice);
+        verify(notificationDigest).add(eq("owner@invoiceapp.local"), eq("Client clicked payment link"), contains("INV-123"));
+        assertThat(events.stream(InvoiceChangedEvent.class))
+                .containsExactly(new InvoiceChangedEvent(1L, 1L, InvoiceStatus.SENT));
     }
 
     @Test
@@ -102,7 +127,7 @@ public class PaymentConfirmationControllerTest {
                         "Invalid or expired link."
                 )));
 
-        // Verify no email was sent
-        verify(emailService, never()).simpleNotify(any(), any(), any());
+        // Verify no notification was queued
+        verify(notificationDigest, never()).add(any(), any(), any());
     }
 }
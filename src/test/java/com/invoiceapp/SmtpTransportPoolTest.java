@@ -0,0 +1,213 @@
+package com.invoiceapp;
+
+import com.invoiceapp.service.SmtpTransportPool;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMessageHelper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//runs against a minimal in-process SMTP server, so connection reuse and reconnects are real
+@Slf4j
+class SmtpTransportPoolTest {
+
+    private FakeSmtpServer server;
+    private JavaMailSenderImpl mailSender;
+    private SmtpTransportPool pool;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new FakeSmtpServer();
+        mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(server.port());
+        pool = new SmtpTransportPool(mailSender, 2);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        pool.close();
+        server.close();
+    }
+
+    @Test
+    void batches_reuseThePooledConnections() throws Exception {
+        int count = 200;
+
+        long began = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            mailSender.send(message("client" + i + "@test.com"));
+        }
+        double perMessageRate = count / seconds(began);
+        assertEquals(count, server.connections.get());
+
+        server.connections.set(0);
+        began = System.nanoTime();
+        for (int from = 0; from < count; from += 50) {
+            List<MimeMessage> batch = new ArrayList<>();
+            for (int i = from; i < from + 50; i++) {
+                batch.add(message("client" + i + "@test.com"));
+            }
+            assertTrue(pool.sendAll(batch).stream().allMatch(e -> e == null));
+        }
+        double pooledRate = count / seconds(began);
+
+        log.info("SMTP throughput: {} msg/s with a connection per message, {} msg/s pooled",
+                Math.round(perMessageRate), Math.round(pooledRate));
+        // one connection per pooled transport, however many batches
+        assertEquals(2, server.connections.get());
+        assertEquals(2 * count, server.messages.get());
+    }
+
+    @Test
+    void droppedConnection_isReopenedAndTheMessageResent() throws Exception {
+        server.dropAfter = 3;
+
+        List<MessagingException> errors = pool.sendAll(messages(10));
+
+        assertTrue(errors.stream().allMatch(e -> e == null));
+        assertEquals(10, server.messages.get());
+        assertEquals(4, server.connections.get());
+    }
+
+    @Test
+    void refusedMessage_failsAloneAndKeepsTheConnection() throws Exception {
+        List<MimeMessage> batch = messages(2);
+        batch.add(1, message("refuse@test.com"));
+
+        List<MessagingException> errors = pool.sendAll(batch);
+
+        assertNull(errors.get(0));
+        assertNotNull(errors.get(1));
+        assertNull(errors.get(2));
+        assertEquals(2, server.messages.get());
+        assertEquals(1, server.connections.get());
+    }
+
+    @Test
+    void unreachableServer_failsTheWholeBatch() throws Exception {
+        server.close();
+
+        List<MessagingException> errors = pool.sendAll(messages(3));
+
+        assertEquals(3, errors.size());
+        assertTrue(errors.stream().allMatch(e -> e != null));
+    }
+
+    private List<MimeMessage> messages(int count) throws MessagingException {
+        List<MimeMessage> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            messages.add(message("client" + i + "@test.com"));
+        }
+        return messages;
+    }
+
+    private MimeMessage message(String to) throws MessagingException {
+        MimeMessage msg = mailSender.createMimeMessage();
+        MimeMessageHelper h = new MimeMessageHelper(msg, true);
+        h.setFrom("invoices@invoiceapp.local");
+        h.setTo(to);
+        h.setSubject("Invoice INV-1");
+        h.setText("<b>Your invoice</b>", true);
+        return msg;
+    }
+
+    private static double seconds(long since) {
+        return (System.nanoTime() - since) / 1e9;
+    }
+
+    //accepts everything except recipients starting with "refuse"; can drop a connection after n messages
+    private static class FakeSmtpServer {
+        private final ServerSocket socket = new ServerSocket(0);
+        private final Thread acceptor;
+        final AtomicInteger connections = new AtomicInteger();
+        final AtomicInteger messages = new AtomicInteger();
+        volatile int dropAfter = Integer.MAX_VALUE;
+
+        FakeSmtpServer() throws IOException {
+            acceptor = new Thread(() -> {
+                while (!socket.isClosed()) {
+                    try {
+                        Socket client = socket.accept();
+                        connections.incrementAndGet();
+                        Thread session = new Thread(() -> serve(client));
+                        session.setDaemon(true);
+                        session.start();
+                    } catch (IOException closed) {
+                        return;
+                    }
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int port() {
+            return socket.getLocalPort();
+        }
+
+        //close() returns before a blocked accept() gives up the port, so wait for the acceptor
+        void close() throws IOException {
+            socket.close();
+            try {
+                acceptor.join(1000);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void serve(Socket client) {
+            try (client;
+                 BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.US_ASCII));
+                 PrintWriter out = new PrintWriter(client.getOutputStream(), true, StandardCharsets.US_ASCII)) {
+                reply(out, "220 localhost ESMTP");
+                int delivered = 0;
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String command = line.toUpperCase();
+                    if (command.startsWith("RCPT") && command.contains("<REFUSE")) {
+                        reply(out, "550 no such user");
+                    } else if (command.startsWith("DATA")) {
+                        reply(out, "354 end with .");
+                        while (!".".equals(in.readLine())) {
+                            //message content
+                        }
+                        messages.incrementAndGet();
+                        reply(out, "250 queued");
+                        if (++delivered >= dropAfter) {
+                            return;
+                        }
+                    } else if (command.startsWith("QUIT")) {
+                        reply(out, "221 bye");
+                        return;
+                    } else {
+                        reply(out, "250 OK");
+                    }
+                }
+            } catch (IOException ignored) {
+                //client went away
+            }
+        }
+
+        private static void reply(PrintWriter out, String line) {
+            out.print(line + "\r\n");
+            out.flush();
+        }
+    }
+}